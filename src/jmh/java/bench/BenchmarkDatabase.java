@@ -0,0 +1,144 @@
+package bench;
+
+import db.ConnectionPool;
+import db.DatabaseBridge;
+import db.DatabaseConfig;
+import db.DatabaseOperation;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The embedded database every benchmark runs against, created and seeded with synthetic data once per JVM (JMH forks
+ * a fresh JVM per benchmark, so each one starts from the same data).
+ * <br><br>
+ * The data: productsPerType tracks (R), locomotives (L), controllers (C) and rolling stock (S), as many track packs
+ * (P) holding 5 tracks each, and as many train sets (M) holding a locomotive, a controller, 3 rolling stock and 2
+ * track packs, so every train set is a nested boxed set. One customer with an address places the benchmark orders.
+ */
+public final class BenchmarkDatabase {
+    public static final int PRODUCTS_PER_TYPE = 500;
+    public static final int CUSTOMER_ID = 1;
+
+    private static boolean seeded = false;
+
+    private BenchmarkDatabase() { }
+
+    /**
+     * Starts the embedded database and seeds it, the first time it is called in this JVM
+     */
+    public static synchronized void start() throws SQLException {
+        if (seeded) return;
+
+        if (System.getProperty("db.profile") == null) {
+            System.setProperty("db.profile", DatabaseConfig.PROFILE_EMBEDDED);
+        }
+        DatabaseBridge db = DatabaseBridge.instance();
+        DatabaseOperation.setConnection(db);
+        if (!DatabaseConfig.PROFILE_EMBEDDED.equals(db.getConfig().getProfile())) {
+            throw new IllegalStateException("Benchmarks seed and write to the database, run them on the embedded profile");
+        }
+
+        try (ConnectionPool.Lease lease = db.lease()) {
+            lease.getConnection().setAutoCommit(false);
+            seed(lease);
+            lease.getConnection().commit();
+            lease.getConnection().setAutoCommit(true);
+        }
+        seeded = true;
+    }
+
+    public static String trackCode(int i) { return String.format("R%05d", i); }
+    public static String locomotiveCode(int i) { return String.format("L%05d", i); }
+    public static String controllerCode(int i) { return String.format("C%05d", i); }
+    public static String rollingStockCode(int i) { return String.format("S%05d", i); }
+    public static String trackPackCode(int i) { return String.format("P%05d", i); }
+    public static String trainSetCode(int i) { return String.format("M%05d", i); }
+
+    private static void seed(ConnectionPool.Lease lease) throws SQLException {
+        int n = PRODUCTS_PER_TYPE;
+
+        try (PreparedStatement product = lease.prepareStatement("INSERT INTO Product VALUES (?,?,?,?)", 0);
+             PreparedStatement component = lease.prepareStatement("INSERT INTO Component VALUES (?,?,?,?)", 0);
+             PreparedStatement track = lease.prepareStatement("INSERT INTO Track VALUES (?,?)", 0);
+             PreparedStatement locomotive = lease.prepareStatement("INSERT INTO Locomotive VALUES (?,?)", 0);
+             PreparedStatement controller = lease.prepareStatement("INSERT INTO Controller VALUES (?,?)", 0);
+             PreparedStatement content = lease.prepareStatement("INSERT INTO BoxedSetContent VALUES (?,?,?)", 0)) {
+            for (int i = 0; i < n; i++) {
+                addProduct(product, trackCode(i), "Track " + i, 12.5);
+                addComponent(component, trackCode(i), "Hornby", "OOGAUGE");
+                track.setString(1, trackCode(i));
+                track.setString(2, i % 2 == 0 ? "STRAIGHT" : "SECOND_RADIUS");
+                track.addBatch();
+
+                addProduct(product, locomotiveCode(i), "Locomotive " + i, 149.99);
+                addComponent(component, locomotiveCode(i), "Bachmann", "OOGAUGE");
+                locomotive.setString(1, locomotiveCode(i));
+                locomotive.setString(2, "DCC_READY");
+                locomotive.addBatch();
+
+                addProduct(product, controllerCode(i), "Controller " + i, 59.0);
+                addComponent(component, controllerCode(i), "Gaugemaster", "NONE");
+                controller.setString(1, controllerCode(i));
+                controller.setString(2, "ANALOG");
+                controller.addBatch();
+
+                addProduct(product, rollingStockCode(i), "Carriage " + i, 24.0);
+                addComponent(component, rollingStockCode(i), "Peco", "OOGAUGE");
+
+                addProduct(product, trackPackCode(i), "Track Pack " + i, 55.0);
+                for (int t = 0; t < 5; t++) {
+                    addContent(content, trackPackCode(i), trackCode((i + t) % n), 2);
+                }
+
+                addProduct(product, trainSetCode(i), "Train Set " + i, 299.0);
+                addContent(content, trainSetCode(i), locomotiveCode(i), 1);
+                addContent(content, trainSetCode(i), controllerCode(i), 1);
+                for (int s = 0; s < 3; s++) {
+                    addContent(content, trainSetCode(i), rollingStockCode((i + s) % n), 1);
+                }
+                addContent(content, trainSetCode(i), trackPackCode(i), 1);
+                addContent(content, trainSetCode(i), trackPackCode((i + 1) % n), 1);
+            }
+
+            // parents before children, the foreign keys are checked per statement
+            product.executeBatch();
+            component.executeBatch();
+            track.executeBatch();
+            locomotive.executeBatch();
+            controller.executeBatch();
+            content.executeBatch();
+        }
+
+        try (Statement statement = lease.getConnection().createStatement()) {
+            statement.executeUpdate("INSERT INTO Address VALUES ('1', 'Benchmark Road', 'Sheffield', 'S1 4DP')");
+            statement.executeUpdate("INSERT INTO Person VALUES (" + CUSTOMER_ID + ", 'Bench', 'Mark', "
+                    + "'bench@example.com', 'unused', '1', 'S1 4DP', NULL)");
+            statement.executeUpdate("INSERT INTO Role VALUES (" + CUSTOMER_ID + ", 'USER')");
+        }
+    }
+
+    private static void addProduct(PreparedStatement product, String code, String name, double price) throws SQLException {
+        product.setString(1, code);
+        product.setString(2, name);
+        product.setInt(3, 1_000_000);
+        product.setDouble(4, price);
+        product.addBatch();
+    }
+
+    private static void addComponent(PreparedStatement component, String code, String brand, String gauge) throws SQLException {
+        component.setString(1, code);
+        component.setString(2, brand);
+        component.setString(3, "7-9");
+        component.setString(4, gauge);
+        component.addBatch();
+    }
+
+    private static void addContent(PreparedStatement content, String set, String item, int quantity) throws SQLException {
+        content.setString(1, set);
+        content.setString(2, item);
+        content.setInt(3, quantity);
+        content.addBatch();
+    }
+}
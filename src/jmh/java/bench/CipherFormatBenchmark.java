@@ -0,0 +1,62 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import utils.CipherEngine;
+import utils.Crypto;
+
+import java.security.InvalidKeyException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The two formats bank details are stored in, on what they hold: a 16 digit card number and a 3 digit security code
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CipherFormatBenchmark {
+    private static final String cardNumber = "4929123456781234";
+    private static final String securityCode = "123";
+
+    @Param({"CBC", "GCM"})
+    private CipherEngine.Format format;
+
+    private CipherEngine engine;
+    private CipherEngine wrongKey;
+    private String[] encryptedCard;
+
+    @Setup(Level.Trial)
+    public void setUp() throws InvalidKeyException {
+        byte[] key = Crypto.deriveEncryptionKey("correct horse battery staple");
+        engine = new CipherEngine(key, format);
+        wrongKey = new CipherEngine(Crypto.deriveEncryptionKey("Tr0ub4dor&3"), format);
+        encryptedCard = engine.encryptAll(cardNumber, securityCode);
+    }
+
+    /**
+     * What BankDetail.createPaymentInfo does per card
+     */
+    @Benchmark
+    public String[] encryptCard() throws InvalidKeyException {
+        return engine.encryptAll(cardNumber, securityCode);
+    }
+
+    /**
+     * What BankDetail.getBankDetailsById does per row
+     */
+    @Benchmark
+    public String[] decryptCard() throws InvalidKeyException {
+        return engine.decryptAll(encryptedCard);
+    }
+
+    /**
+     * Finding out a card is not under a key, as BankDetailReencryption does for people it has no key for; GCM
+     * always knows, CBC lets about one in 256 through as garbage
+     */
+    @Benchmark
+    public String decryptWrongKey() {
+        return wrongKey.decryptOrNull(encryptedCard[0]);
+    }
+}
@@ -0,0 +1,69 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import utils.CipherEngine;
+import utils.Crypto;
+
+import java.security.InvalidKeyException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The password hashing and the bank detail encryption, none of these touch the database
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CryptoBenchmark {
+    private static final String password = "correct horse battery staple";
+    private static final String cardNumber = "4929123456781234";
+    private static final String securityCode = "123";
+
+    private byte[] key;
+    private String encrypted;
+    private String[] encryptedCard;
+    private String hash;
+
+    @Setup(Level.Trial)
+    public void setUp() throws InvalidKeyException {
+        key = Crypto.deriveEncryptionKey(password);
+        encrypted = Crypto.encryptString(cardNumber, key);
+        encryptedCard = new String[]{encrypted, Crypto.encryptString(securityCode, key)};
+        hash = Crypto.hashString(password);
+    }
+
+    @Benchmark
+    public String encryptString() throws InvalidKeyException {
+        return Crypto.encryptString(cardNumber, key);
+    }
+
+    @Benchmark
+    public String decryptString() throws InvalidKeyException {
+        return Crypto.decryptString(encrypted, key);
+    }
+
+    /**
+     * What BankDetail.getBankDetailsById does per row
+     */
+    @Benchmark
+    public String[] decryptCard() throws InvalidKeyException {
+        return CipherEngine.forKey(key).decryptAll(encryptedCard);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public byte[] deriveEncryptionKey() {
+        return Crypto.deriveEncryptionKey(password);
+    }
+
+    /**
+     * bcrypt at cost 12, the login path
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public boolean verifyString() {
+        return Crypto.verifyString(password, hash);
+    }
+}
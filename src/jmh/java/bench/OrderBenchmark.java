@@ -0,0 +1,99 @@
+package bench;
+
+import db.ConnectionPool;
+import db.DatabaseBridge;
+import entity.order.Order;
+import entity.product.Product;
+import entity.product.ProductCatalog;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Placing an order of N lines, and pricing one in memory
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderBenchmark {
+    @Param({"1", "10", "100"})
+    public int lines;
+
+    private List<Product> products;
+    private Order pricedOrder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        BenchmarkDatabase.start();
+        DatabaseBridge db = DatabaseBridge.instance();
+        try {
+            db.openConnection();
+            products = new ArrayList<>(ProductCatalog.loadAll()).subList(0, lines);
+        } finally {
+            db.closeConnection();
+        }
+        pricedOrder = newOrder();
+    }
+
+    /**
+     * Orders with a higher id than this were placed by createOrder() during the current iteration
+     */
+    private int lastOrderId;
+
+    @Setup(Level.Iteration)
+    public void markOrders() throws SQLException {
+        try (ConnectionPool.Lease lease = DatabaseBridge.instance().lease();
+             PreparedStatement query = lease.getConnection().prepareStatement("SELECT COALESCE(MAX(orderId), 0) FROM `Order`")) {
+            ResultSet rs = query.executeQuery();
+            rs.next();
+            lastOrderId = rs.getInt(1);
+        }
+    }
+
+    /**
+     * Deletes what createOrder() inserted, so every iteration writes to tables of the same size
+     */
+    @TearDown(Level.Iteration)
+    public void deleteOrders() throws SQLException {
+        try (ConnectionPool.Lease lease = DatabaseBridge.instance().lease();
+             PreparedStatement lines = lease.getConnection().prepareStatement("DELETE FROM OrderLine WHERE orderId > ?");
+             PreparedStatement orders = lease.getConnection().prepareStatement("DELETE FROM `Order` WHERE orderId > ?")) {
+            lines.setInt(1, lastOrderId);
+            lines.executeUpdate();
+            orders.setInt(1, lastOrderId);
+            orders.executeUpdate();
+        }
+    }
+
+    private Order newOrder() {
+        Order order = new Order(BenchmarkDatabase.CUSTOMER_ID);
+        for (Product product : products) {
+            order.addItem(product, 2);
+        }
+        return order;
+    }
+
+    /**
+     * Inserts the header and every line in one transaction, createOrder() opens and closes its own connection
+     */
+    @Benchmark
+    public Order createOrder() throws SQLException {
+        Order order = newOrder();
+        Order.createOrder(order);
+        return order;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Double getTotalCost() {
+        return pricedOrder.getTotalCost();
+    }
+}
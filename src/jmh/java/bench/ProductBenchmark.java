@@ -0,0 +1,56 @@
+package bench;
+
+import db.DatabaseBridge;
+import entity.product.BoxedSet;
+import entity.product.Product;
+import entity.product.ProductCatalog;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading products: one by code, the whole catalog, and a nested boxed set
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductBenchmark {
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        BenchmarkDatabase.start();
+        DatabaseBridge.instance().openConnection();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        DatabaseBridge.instance().closeConnection();
+    }
+
+    @Benchmark
+    public Product getProductByID() throws SQLException {
+        int i = ThreadLocalRandom.current().nextInt(BenchmarkDatabase.PRODUCTS_PER_TYPE);
+        return Product.getProductByID(BenchmarkDatabase.locomotiveCode(i));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Product> loadCatalog() throws SQLException {
+        return ProductCatalog.loadAll();
+    }
+
+    /**
+     * A train set holding two track packs, starting from a product that only has its Product row loaded
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public BoxedSet getNestedBoxedSet() throws SQLException {
+        int i = ThreadLocalRandom.current().nextInt(BenchmarkDatabase.PRODUCTS_PER_TYPE);
+        return Product.getProductByID(BenchmarkDatabase.trainSetCode(i)).getBoxedSet();
+    }
+}
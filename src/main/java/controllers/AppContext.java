@@ -1,5 +1,6 @@
 package controllers;
 
+import entity.order.Order;
 import entity.user.Person;
 
 import javax.swing.*;
@@ -37,32 +38,58 @@ public class AppContext {
         return window;
     }
 
-    private static Person currentUser;
+    /**
+     * Who is signed in at the kiosk and what they are buying. The app has a single session, shared by the EDT and
+     * the DatabaseWorker threads, but a thread can be given its own with setThreadSession() so that many kiosks can be
+     * simulated in one JVM (see tools.LoadDriver).
+     */
+    public static final class Session {
+        private Person currentUser;
+        private byte[] encryptionKey;
+        Order currentOrder;
+    }
+
+    private static final Session appSession = new Session();
+    private static final ThreadLocal<Session> threadSession = new ThreadLocal<>();
+
+    /**
+     * @param session The session the calling thread uses from now on instead of the app's, or null to use the app's again
+     */
+    public static void setThreadSession(Session session) {
+        if (session == null) {
+            threadSession.remove();
+        } else {
+            threadSession.set(session);
+        }
+    }
 
-    public static boolean queueStoreReload;
+    static Session session() {
+        Session session = threadSession.get();
+        return session != null ? session : appSession;
+    }
 
-    private static byte[] encryptionKey;
     public static byte[] getEncryptionKey() {
-        return encryptionKey;
+        return session().encryptionKey;
     }
 
     public static void setEncryptionKey(byte[] key) {
-        encryptionKey = key;
+        session().encryptionKey = key;
     }
 
     public static Person getCurrentUser() {
-        return currentUser;
+        return session().currentUser;
     }
 
     public static void setCurrentUser(Person user) {
-        currentUser = user;
+        session().currentUser = user;
     }
 
     /**
      * Clear all app state
      */
     public static void logOut() {
-        encryptionKey = null;
-        currentUser = null;
+        Session session = session();
+        session.encryptionKey = null;
+        session.currentUser = null;
     }
 }
@@ -0,0 +1,185 @@
+package controllers;
+
+import db.DatabaseBridge;
+import entity.Address;
+import entity.user.Person;
+import utils.Crypto;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Logs people in and registers them on a few background threads of its own, so neither the EDT nor the
+ * DatabaseWorker threads wait on bcrypt (cost 12) and PBKDF2 (65536 iterations), each a few hundred milliseconds of
+ * CPU. Deriving the encryption key starts straight away, alongside looking up and verifying the password hash.
+ * <br><br>
+ * The work is bounded: there are auth.workers threads (half the cores, 2 to 4, by default) running below normal
+ * priority, and at most auth.maxPending logins and registrations are accepted at once (8 by default), further ones
+ * fail immediately with a BusyException instead of queueing up behind them. Both are system properties.
+ * <br><br>
+ * Nothing is put in AppContext, the caller installs the Authenticated result itself, on the EDT for the screens.
+ */
+public final class AuthenticationService {
+    /**
+     * Too many logins and registrations are in progress already, try again in a moment
+     */
+    public static class BusyException extends RuntimeException {
+        public BusyException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Someone who is logged in
+     * @param user Their profile, with their bank details decrypted
+     * @param encryptionKey The key their bank details are encrypted with, for AppContext.setEncryptionKey
+     */
+    public record Authenticated(Person user, byte[] encryptionKey) { }
+
+    private static final int WORKER_THREADS = Integer.getInteger("auth.workers",
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)));
+    private static final int MAX_PENDING = Integer.getInteger("auth.maxPending", 8);
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    // unbounded, but admission below keeps it at two tasks per accepted request at most
+    private static final ExecutorService executor = new ThreadPoolExecutor(WORKER_THREADS, WORKER_THREADS,
+            0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "AuthenticationWorker-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        // hashing must not take the CPU away from the EDT or the database workers
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+    private static final Semaphore admission = new Semaphore(MAX_PENDING);
+
+    /**
+     * This class should not be instantiated
+     */
+    private AuthenticationService() { }
+
+    /**
+     * Checks the password and loads the user, see the class description
+     * @param email email input
+     * @param password password input
+     * @return A future completed with the user, with null if the email or password is wrong, or exceptionally with
+     * a BusyException or the SQLException that stopped it
+     */
+    public static CompletableFuture<Authenticated> login(String email, String password) {
+        return admit(() -> {
+            // the key is only needed if the password is right, which is the usual case, so it is not waited for
+            CompletableFuture<byte[]> key = CompletableFuture.supplyAsync(() -> Crypto.deriveEncryptionKey(password), executor);
+            CompletableFuture<Boolean> verified = CompletableFuture.supplyAsync(() -> {
+                String hash = unchecked(() -> LoginController.getPasswordHash(email));
+                return hash != null && Crypto.verifyString(password, hash);
+            }, executor);
+
+            return verified.thenCombine(key, (match, encryptionKey) -> match
+                    ? new Authenticated(unchecked(() -> loadUser(email, encryptionKey)), encryptionKey)
+                    : null);
+        });
+    }
+
+    /**
+     * Creates the address (unless it exists) and the account, then logs the new user in
+     * @param forename forename input
+     * @param surname surname input
+     * @param email email input, must not belong to anyone yet
+     * @param password password input, hashed for the account and used to derive the encryption key
+     * @param address address input
+     * @return A future completed with the new user, with null if the email is taken, or exceptionally with a
+     * BusyException or the SQLException that stopped it
+     */
+    public static CompletableFuture<Authenticated> register(String forename, String surname, String email,
+                                                            String password, Address address) {
+        return admit(() -> {
+            CompletableFuture<byte[]> key = CompletableFuture.supplyAsync(() -> Crypto.deriveEncryptionKey(password), executor);
+            CompletableFuture<String> hash = CompletableFuture.supplyAsync(() -> Crypto.hashString(password), executor);
+
+            return hash.thenCombine(key, (passwordHash, encryptionKey) -> {
+                Person person = new Person(forename, surname, email, passwordHash,
+                        address.getHouseNumber(), address.getPostcode());
+                boolean created = unchecked(() -> {
+                    // a session of its own, as in loadUser, so nothing here reads the screens' session off the EDT
+                    AppContext.setThreadSession(new AppContext.Session());
+                    DatabaseBridge db = DatabaseBridge.instance();
+                    try {
+                        db.openConnection();
+                        Address.CreateAddress(address);
+                        return Person.createPerson(person);
+                    } finally {
+                        db.closeConnection();
+                        AppContext.setThreadSession(null);
+                    }
+                });
+                return created ? new Authenticated(person, encryptionKey) : null;
+            });
+        });
+    }
+
+    /**
+     * @return Logins and registrations that can be accepted right now
+     */
+    public static int availablePermits() {
+        return admission.availablePermits();
+    }
+
+    private static CompletableFuture<Authenticated> admit(Supplier<CompletableFuture<Authenticated>> request) {
+        if (!admission.tryAcquire()) {
+            return CompletableFuture.failedFuture(new BusyException("The kiosk is busy, please try again in a moment"));
+        }
+        CompletableFuture<Authenticated> result;
+        try {
+            result = request.get();
+        } catch (RuntimeException e) {
+            admission.release();
+            throw e;
+        }
+        return result.handle((authenticated, e) -> {
+            admission.release();
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                LoginController.logError("Authentication failed", cause);
+                throw e instanceof CompletionException completion ? completion : new CompletionException(cause);
+            }
+            return authenticated;
+        });
+    }
+
+    /**
+     * Loads the user with their bank details, which needs their key in the session of the loading thread; a session
+     * of its own, so whatever session the worker would otherwise share is left alone
+     */
+    private static Person loadUser(String email, byte[] encryptionKey) throws SQLException {
+        AppContext.setThreadSession(new AppContext.Session());
+        AppContext.setEncryptionKey(encryptionKey);
+        DatabaseBridge db = DatabaseBridge.instance();
+        try {
+            db.openConnection();
+            return Person.getPersonByEmail(email);
+        } finally {
+            db.closeConnection();
+            AppContext.setThreadSession(null);
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlWork<T> {
+        T run() throws SQLException;
+    }
+
+    private static <T> T unchecked(SqlWork<T> work) {
+        try {
+            return work.run();
+        } catch (SQLException e) {
+            throw new CompletionException(e);
+        }
+    }
+}
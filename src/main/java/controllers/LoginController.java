@@ -29,35 +29,55 @@ public final class LoginController {
     }
 
     /**
-     * Authenticates user and fetches the user's profile
+     * Authenticates user and fetches the user's profile, on the calling thread. The screens use
+     * AuthenticationService.login instead, which keeps this work off the EDT.
      * @param email email input
      * @param password password input
      * @return Person instance of the user if password is correct, otherwise return null
      */
     public static Person authenticateUser(String email, String password) {
         DatabaseBridge db = DatabaseBridge.instance();
+        String hash;
         try {
-            db.openConnection();
-            PreparedStatement q = db.prepareStatement("SELECT password FROM Person WHERE email = ?");
-            q.setString(1, email);
-
-            ResultSet rs = q.executeQuery();
-            if (!rs.next()) {
-                return null;
-            }
-
-            boolean pwdMatch = Crypto.verifyString(password, rs.getString("password"));
+            hash = getPasswordHash(email);
+        } catch (SQLException e) {
+            logError("Failed to fetch user", e);
+            return null;
+        }
+        // bcrypt takes a few hundred milliseconds, no connection is held meanwhile
+        if (hash == null || !Crypto.verifyString(password, hash)) {
+            return null;
+        }
 
-            if (pwdMatch) {
-                return Person.getPersonByEmail(email);
-            }
+        try {
+            db.openConnection();
+            return Person.getPersonByEmail(email);
         } catch (SQLException e) {
             logError("Failed to fetch user", e);
             return null;
         } finally {
             db.closeConnection();
         }
+    }
 
-        return null;
+    /**
+     * Looks up the bcrypt hash of a user's password, with a connection of its own that is closed again before
+     * returning, leaving the thread without one
+     * @param email email input
+     * @return The hash, or null if nobody has that email
+     * @throws SQLException If the lookup failed
+     */
+    static String getPasswordHash(String email) throws SQLException {
+        DatabaseBridge db = DatabaseBridge.instance();
+        try {
+            db.openConnection();
+            try (PreparedStatement q = db.prepareStatement("SELECT password FROM Person WHERE email = ?")) {
+                q.setString(1, email);
+                ResultSet rs = q.executeQuery();
+                return rs.next() ? rs.getString("password") : null;
+            }
+        } finally {
+            db.closeConnection();
+        }
     }
 }
@@ -9,10 +9,15 @@ import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 
 public final class OrderController {
-    public static Order currentOrder;
+    /**
+     * @return The basket of whoever is signed in, see AppContext
+     */
+    public static Order getCurrentOrder() {
+        return AppContext.session().currentOrder;
+    }
 
     public static void newOrder() {
-        currentOrder = new Order(AppContext.getCurrentUser().getId());
+        AppContext.session().currentOrder = new Order(AppContext.getCurrentUser().getId());
     }
 
     public static boolean checkout() {
@@ -33,6 +38,7 @@ public final class OrderController {
             return false;
         }
 
+        Order currentOrder = getCurrentOrder();
         try {
             currentOrder.setStatus(Order.OrderStatus.CONFIRMED);
             Order.createOrder(currentOrder);
@@ -0,0 +1,320 @@
+package db;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Maintainers: Sam Taseff
+ * <br>
+ * A bounded pool of physical database connections. Connections are handed out as {@link Lease}s, one per unit of work,
+ * and go back into the pool when the lease is closed instead of being torn down, so only the first lease on a cold
+ * pool pays for the TCP and authentication handshake.
+ * <br><br>
+ * This class is thread-safe, every thread may hold its own lease at the same time (up to the pool size).
+ */
+public final class ConnectionPool {
+    /**
+     * A point-in-time snapshot of the pool counters
+     */
+    public static final class Stats {
+        private final int active;
+        private final int idle;
+        private final int maxSize;
+        private final long leaseCount;
+        private final long totalWaitNanos;
+        private final long maxWaitNanos;
+        private final long totalLeaseNanos;
+        private final long maxLeaseNanos;
+        private final long connectionsOpened;
+        private final long statementCacheHits;
+        private final long statementCacheMisses;
+
+        private Stats(int active, int idle, int maxSize, long leaseCount, long totalWaitNanos, long maxWaitNanos,
+                      long totalLeaseNanos, long maxLeaseNanos, long connectionsOpened,
+                      long statementCacheHits, long statementCacheMisses) {
+            this.active = active;
+            this.idle = idle;
+            this.maxSize = maxSize;
+            this.leaseCount = leaseCount;
+            this.totalWaitNanos = totalWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+            this.totalLeaseNanos = totalLeaseNanos;
+            this.maxLeaseNanos = maxLeaseNanos;
+            this.connectionsOpened = connectionsOpened;
+            this.statementCacheHits = statementCacheHits;
+            this.statementCacheMisses = statementCacheMisses;
+        }
+
+        public int getActive() { return active; }
+        public int getIdle() { return idle; }
+        public int getMaxSize() { return maxSize; }
+        public long getLeaseCount() { return leaseCount; }
+        public long getConnectionsOpened() { return connectionsOpened; }
+        public double getAverageWaitMillis() {
+            return leaseCount == 0 ? 0 : (totalWaitNanos / (double) leaseCount) / 1_000_000.0;
+        }
+        public double getMaxWaitMillis() { return maxWaitNanos / 1_000_000.0; }
+        public double getAverageLeaseMillis() {
+            return leaseCount == 0 ? 0 : (totalLeaseNanos / (double) leaseCount) / 1_000_000.0;
+        }
+        public double getMaxLeaseMillis() { return maxLeaseNanos / 1_000_000.0; }
+        public long getStatementCacheHits() { return statementCacheHits; }
+        public long getStatementCacheMisses() { return statementCacheMisses; }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "[Pool -> { Active: %d, Idle: %d, Max: %d, Leases: %d, Opened: %d, Wait avg/max: %.2f/%.2fms, Lease avg/max: %.2f/%.2fms, Statement cache hit/miss: %d/%d }]",
+                    active, idle, maxSize, leaseCount, connectionsOpened,
+                    getAverageWaitMillis(), getMaxWaitMillis(), getAverageLeaseMillis(), getMaxLeaseMillis(),
+                    statementCacheHits, statementCacheMisses
+            );
+        }
+    }
+
+    /**
+     * A physical connection owned by the pool, along with the statements cached on it
+     */
+    private static final class PooledConnection {
+        private final Connection connection;
+        private final StatementCache statements;
+        private long lastUsed = System.nanoTime();
+
+        private PooledConnection(Connection connection, StatementCache statements) {
+            this.connection = connection;
+            this.statements = statements;
+        }
+    }
+
+    /**
+     * Exclusive use of one pooled connection, close it to hand the connection back to the pool.
+     * <br>
+     * Never close the underlying connection yourself.
+     */
+    public final class Lease implements AutoCloseable {
+        private final PooledConnection pooled;
+        private final long leasedAt = System.nanoTime();
+        private boolean released = false;
+
+        private Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        public Connection getConnection() {
+            if (released) {
+                throw new IllegalStateException("This lease has already been returned to the pool");
+            }
+            return pooled.connection;
+        }
+
+        /**
+         * Prepares a statement through this connection's statement cache, closing the returned statement hands it
+         * back to the cache
+         * @param sql The SQL you wish to execute on the database
+         * @param opts Any modifications you wish to make to the output of executing the query
+         * @return Your statement ready for you to add the parameters and execute it
+         * @throws SQLException Concerning something to do with your query or update
+         */
+        public PreparedStatement prepareStatement(String sql, int opts) throws SQLException {
+            getConnection();
+            return pooled.statements.prepare(sql, opts);
+        }
+
+        /**
+         * Returns the connection to the pool, calling this more than once does nothing
+         */
+        @Override
+        public void close() {
+            if (released) return;
+            released = true;
+            release(this);
+        }
+    }
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int maxSize;
+    private final long leaseTimeoutMillis;
+    private final long validationIntervalNanos;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private volatile boolean shutdown = false;
+
+    private final AtomicLong leaseCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong totalLeaseNanos = new AtomicLong();
+    private final AtomicLong maxLeaseNanos = new AtomicLong();
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+
+    /**
+     * @param url Full JDBC URL including any connector options
+     * @param username Database user
+     * @param password Database password
+     * @param maxSize The most physical connections this pool will ever hold open at once
+     * @param leaseTimeoutMillis How long to wait for a free connection before giving up
+     * @param validationIntervalMillis Idle connections older than this are checked with isValid() before being handed out
+     * @param statementCacheSize How many prepared statements each connection keeps open for reuse
+     */
+    public ConnectionPool(String url, String username, String password, int maxSize,
+                          long leaseTimeoutMillis, long validationIntervalMillis, int statementCacheSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.leaseTimeoutMillis = leaseTimeoutMillis;
+        this.validationIntervalNanos = TimeUnit.MILLISECONDS.toNanos(validationIntervalMillis);
+        this.validationTimeoutSeconds = 2;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Takes a connection from the pool, opening a new one if none are idle. Blocks while the pool is exhausted.
+     * @return A lease that must be closed once the unit of work is done
+     * @throws SQLException If no connection could be opened, or none became free before the lease timeout
+     */
+    public Lease lease() throws SQLException {
+        if (shutdown) {
+            throw new SQLTransientConnectionException("The connection pool has been shut down");
+        }
+
+        long waitStart = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(leaseTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLTransientConnectionException(
+                        "Timed out after " + leaseTimeoutMillis + "ms waiting for a database connection " + getStats());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted whilst waiting for a database connection", e);
+        }
+
+        try {
+            PooledConnection pooled = takeValidIdleConnection();
+            if (pooled == null) {
+                Connection connection = DriverManager.getConnection(url, username, password);
+                pooled = new PooledConnection(
+                        connection,
+                        new StatementCache(connection, statementCacheSize, statementCacheHits, statementCacheMisses)
+                );
+                connectionsOpened.incrementAndGet();
+            }
+
+            long waited = System.nanoTime() - waitStart;
+            leaseCount.incrementAndGet();
+            totalWaitNanos.addAndGet(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+            active.incrementAndGet();
+
+            return new Lease(pooled);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private PooledConnection takeValidIdleConnection() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (System.nanoTime() - pooled.lastUsed < validationIntervalNanos) {
+                return pooled;
+            }
+            try {
+                if (pooled.connection.isValid(validationTimeoutSeconds)) {
+                    return pooled;
+                }
+            } catch (SQLException ignored) {
+                // treated as invalid below
+            }
+            DatabaseBridge.databaseLog("Discarding stale pooled connection");
+            closeQuietly(pooled);
+        }
+        return null;
+    }
+
+    private void release(Lease lease) {
+        PooledConnection pooled = lease.pooled;
+        long held = System.nanoTime() - lease.leasedAt;
+        totalLeaseNanos.addAndGet(held);
+        maxLeaseNanos.accumulateAndGet(held, Math::max);
+        active.decrementAndGet();
+
+        try {
+            pooled.statements.reclaimAll();
+
+            boolean reusable = !shutdown && !pooled.connection.isClosed();
+            if (reusable && !pooled.connection.getAutoCommit()) {
+                // a unit of work left a transaction open, never leak it into the next lease
+                pooled.connection.rollback();
+                pooled.connection.setAutoCommit(true);
+            }
+
+            if (reusable) {
+                pooled.lastUsed = System.nanoTime();
+                idle.offerFirst(pooled);
+            } else {
+                closeQuietly(pooled);
+            }
+        } catch (SQLException e) {
+            DatabaseBridge.databaseError("Failed to reset pooled connection, discarding it", e);
+            closeQuietly(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void closeQuietly(PooledConnection pooled) {
+        pooled.statements.closeAll();
+        try {
+            pooled.connection.close();
+        } catch (SQLException e) {
+            DatabaseBridge.databaseError("Failed to close pooled connection gracefully", e);
+        }
+    }
+
+    /**
+     * Closes every idle connection and refuses new leases, connections that are still leased are closed when returned
+     */
+    public void shutdown() {
+        shutdown = true;
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            closeQuietly(pooled);
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(
+                active.get(),
+                idle.size(),
+                maxSize,
+                leaseCount.get(),
+                totalWaitNanos.get(),
+                maxWaitNanos.get(),
+                totalLeaseNanos.get(),
+                maxLeaseNanos.get(),
+                connectionsOpened.get(),
+                statementCacheHits.get(),
+                statementCacheMisses.get()
+        );
+    }
+}
@@ -1,15 +1,20 @@
 package db;
 
 import java.sql.*;
-import java.util.Arrays;
-import java.util.Enumeration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Maintainers: Sam Taseff
  * <br>
  * This is a singleton class (meaning you cannot instantiate it, you may only get a reference using the Instance() method)
- * that manages the single db connection and also dispatches prepared statements to operations
+ * that manages the db connection pool and also dispatches prepared statements to operations
+ * <br><br>
+ * openConnection() leases a pooled connection and binds it to the calling thread until closeConnection() hands it back,
+ * so every thread works on its own connection and several threads can use the database at the same time. The calls
+ * nest: a method that opens and closes a connection inside someone else's unit of work keeps using theirs, and only
+ * the outermost closeConnection() hands it back.
  */
 public final class DatabaseBridge {
     // Nested types
@@ -19,21 +24,27 @@ public final class DatabaseBridge {
         }
     }
 
-    // static members
-    private static final String DB_URL = "jdbc:mysql://stusql.dcs.shef.ac.uk:3306/team005";
+    /**
+     * The lease bound to a thread and how many openConnection() calls on that thread have not been closed yet
+     */
+    private static final class Binding {
+        private final ConnectionPool.Lease lease;
+        private int depth = 1;
 
-    // ensure you only use URL options specific to the MySQL connector
-    // https://dev.mysql.com/doc/connectors/en/connector-j-reference-configuration-properties.html
-    private static final List<String> DB_OPTS = Arrays.asList(
-            "connectTimeout=90"     // Measured in milliseconds
-    );
-    private static final String DB_USERNAME = "team005";
-    private static final String DB_PASSWORD = "Uajee5tha";
+        private Binding(ConnectionPool.Lease lease) {
+            this.lease = lease;
+        }
+    }
 
+    // static members
     private static DatabaseBridge Instance;
+    private static final List<Runnable> closeHooks = new CopyOnWriteArrayList<>();
 
     // Instance members
-    private Connection connection = null;
+    private final DatabaseConfig config;
+    private final ConnectionPool pool;
+    private final QueryStats queryStats;
+    private final ThreadLocal<Binding> currentBinding = new ThreadLocal<>();
 
     // Static methods
     /**
@@ -76,26 +87,33 @@ public final class DatabaseBridge {
     }
 
     /**
-     * Checks if the MySQL connector is functioning properly and detected by Java
+     * Checks if a JDBC driver that accepts the url is on the classpath and detected by Java
+     * @param url The JDBC url that will be connected to
      * @return A bool if it was successful
      */
-    public static Boolean isDriverLoaded()  {
-        Enumeration<Driver> list = DriverManager.getDrivers();
-        while (list.hasMoreElements()) {
-            Driver driver = list.nextElement();
-            if (driver.toString().contains("mysql")) {
-                return true;
-            }
+    public static Boolean isDriverLoaded(String url)  {
+        try {
+            DriverManager.getDriver(url);
+            return true;
+        } catch (SQLException e) {
+            return false;
         }
+    }
 
-        return false;
+    /**
+     * Registers something to run on a thread each time that thread hands its connection back with closeConnection(),
+     * i.e. at the end of every unit of work. Used to drop state that must not outlive one (see entity.IdentityMap).
+     * @param hook Runs on the thread that closed its connection
+     */
+    public static void addCloseHook(Runnable hook) {
+        closeHooks.add(hook);
     }
 
     /**
      * Gets a handle to the database connection
      * @return A reference
      */
-    public static DatabaseBridge instance() {
+    public static synchronized DatabaseBridge instance() {
         if (Instance == null) {
             Instance = new DatabaseBridge();
         }
@@ -108,36 +126,107 @@ public final class DatabaseBridge {
      * It is correct that this constructor is private, do not instantiate this class, use the Instance() method
      */
     private DatabaseBridge() {
-        databaseLog("Initialized");
-        if (isDriverLoaded()) {
-            databaseLog("Found MySQL DB driver");
+        config = DatabaseConfig.load();
+        databaseLog("Initialized", "(" + config + ")");
+        if (isDriverLoaded(config.getUrl())) {
+            databaseLog("Found DB driver for the", config.getProfile(), "profile");
         } else {
             databaseError(
                     "(Initialization)",
-                    new NoDatabaseConnectorException("MySQL DB driver not found")
+                    new NoDatabaseConnectorException("No DB driver found for " + config.getUrl())
             );
         }
+
+        pool = new ConnectionPool(
+                config.getUrl(),
+                config.getUsername(),
+                config.getPassword(),
+                config.getPoolSize(),
+                config.getLeaseTimeoutMillis(),
+                config.getValidationIntervalMillis(),
+                config.getStatementCacheSize()
+        );
+
+        queryStats = config.isStatsEnabled()
+                ? new QueryStats(config.getSlowQueryMillis(), config.getStatsDumpIntervalSeconds())
+                : null;
+
+        Runtime.getRuntime().addShutdownHook(new Thread(pool::shutdown, "DatabaseBridge-shutdown"));
+
+        createSchema();
+    }
+
+    /**
+     * Runs the configured schema script, if any (the embedded profile has one), before anything else can use the pool
+     */
+    private void createSchema() {
+        String script;
+        try {
+            script = config.readSchemaScript();
+        } catch (java.io.IOException e) {
+            databaseError("(Initialization) Could not read the schema script", e);
+            return;
+        }
+        if (script == null) return;
+
+        try (ConnectionPool.Lease lease = pool.lease();
+             Statement statement = lease.getConnection().createStatement()) {
+            int count = 0;
+            for (String sql : splitScript(script)) {
+                statement.execute(sql);
+                count++;
+            }
+            databaseLog("Created schema,", String.valueOf(count), "statements");
+        } catch (SQLException e) {
+            databaseError("(Initialization) Failed to create the schema", e);
+        }
+    }
+
+    /**
+     * Splits a script into statements on semicolons at the end of a line, skipping "--" comment lines
+     */
+    private static List<String> splitScript(String script) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String line : script.split("\\R")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("--")) continue;
+
+            current.append(line).append('\n');
+            if (trimmed.endsWith(";")) {
+                String sql = current.toString().trim();
+                statements.add(sql.substring(0, sql.length() - 1));
+                current.setLength(0);
+            }
+        }
+        if (!current.toString().isBlank()) {
+            statements.add(current.toString().trim());
+        }
+        return statements;
     }
 
     /**
-     * Opens a connection to the database, will time out after a certain number of milliseconds
+     * @return The configuration the pool was created with
+     */
+    public DatabaseConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Leases a connection from the pool and binds it to the calling thread, if this thread already holds one then that
+     * connection keeps being used until the matching closeConnection(). Cheap unless the pool has to open a brand-new
+     * physical connection.
      * @throws SQLException Concerning a failed connection attempt to the database
      */
     public void openConnection() throws SQLException {
-        StringBuilder connectionOpts = new StringBuilder("?");
-        for (String opt : DB_OPTS) {
-            connectionOpts.append(opt);
-            connectionOpts.append("&");
+        Binding binding = currentBinding.get();
+        if (binding != null) {
+            binding.depth++;
+            return;
         }
 
         try {
-            connection = DriverManager.getConnection(
-                    DB_URL + connectionOpts.toString(),
-                    DB_USERNAME,
-                    DB_PASSWORD
-            );
-            databaseLog("Opened connection");
-
+            currentBinding.set(new Binding(pool.lease()));
         } catch (java.sql.SQLRecoverableException e) { // The superclass of the MySQL connector's communication exception
             databaseError("Failed to open connection, you may not be connected to the VPN", e);
         } catch (SQLException e) {
@@ -147,31 +236,93 @@ public final class DatabaseBridge {
     }
 
     /**
-     * Gracefully closes the database connection, to use this class again, you must call openConnection() once more
+     * Ends the unit of work started by the matching openConnection(); the outermost one hands this thread's connection
+     * back to the pool, to use this class again, you must call openConnection() once more
      */
     public void closeConnection() {
-        if (connection != null) {
-            try {
-                connection.close();
-                databaseLog("Connection closed successfully");
-            } catch (SQLException e) {
-                databaseError("Failed to close connection gracefully", e);
-            } finally {
-                connection = null;
-            }
+        Binding binding = currentBinding.get();
+        if (binding != null && --binding.depth == 0) {
+            release(binding);
+        }
+    }
+
+    private void release(Binding binding) {
+        currentBinding.remove();
+        binding.lease.close();
+        for (Runnable hook : closeHooks) {
+            hook.run();
         }
     }
 
+    /**
+     * @return Whether the calling thread currently holds a connection from openConnection()
+     */
+    public boolean isConnectionOpen() {
+        return currentBinding.get() != null;
+    }
+
+    /**
+     * Leases a connection that is NOT bound to the calling thread, for work that needs more than one connection
+     * at once or wants to manage its own connection, close the lease (try-with-resources) to return it
+     * @return A lease on a pooled connection
+     * @throws SQLException Concerning a failed connection attempt to the database
+     */
+    public ConnectionPool.Lease lease() throws SQLException {
+        return pool.lease();
+    }
+
+    /**
+     * @return A snapshot of the connection pool counters (active/idle connections, wait and lease times)
+     */
+    public ConnectionPool.Stats getPoolStats() {
+        return pool.getStats();
+    }
+
+    /**
+     * @return The timings of every statement prepared through this class, or null if db.stats.enabled is false
+     */
+    public QueryStats getQueryStats() {
+        return queryStats;
+    }
+
+    /**
+     * Closes every pooled connection, this happens automatically when the JVM exits
+     */
+    public void shutdown() {
+        Binding binding = currentBinding.get();
+        if (binding != null) {
+            release(binding);
+        }
+        if (queryStats != null) {
+            queryStats.shutdown();
+        }
+        pool.shutdown();
+    }
+
+    private Connection currentConnection() {
+        return currentLease().getConnection();
+    }
+
+    private ConnectionPool.Lease currentLease() {
+        Binding binding = currentBinding.get();
+        if (binding == null) {
+            NullPointerException e = new NullPointerException("No connection is open on thread [" + Thread.currentThread().getName() + "]");
+            databaseError("A connection has not been opened yet, please call `openConnection()` before this method", e);
+            throw e;
+        }
+        return binding.lease;
+    }
+
     public void setAutoCommit(Boolean t) throws SQLException {
-        connection.setAutoCommit(t);
+        currentConnection().setAutoCommit(t);
         databaseLog("AutoCommit:", t.toString());
     }
     public void commit() throws SQLException {
-        connection.commit();
+        currentConnection().commit();
     }
     public void rollback() throws SQLException {
         databaseLog("Transaction failure, rolling back...");
-        connection.rollback();
+        currentConnection().rollback();
     }
 
     /**
@@ -185,19 +336,17 @@ public final class DatabaseBridge {
     }
 
     /**
-     *
+     * Statements come from a per-connection LRU cache keyed on the SQL and opts, so please close them when you are
+     * done (try-with-resources) - that hands them back to the cache rather than throwing away the parsed statement.
+     * Any you do not close are reclaimed when closeConnection() is called. Their executions are timed, see QueryStats.
      * @param sql The SQL you wish to execute on the database
      * @param opts Any modifications you wish to make to the output of executing the query
      * @return Your statement ready for you to add the parameters and execute it
      * @throws SQLException Concerning something to do with your query or update
      */
     public PreparedStatement prepareStatement(String sql, int opts) throws SQLException {
-        try {
-            return connection.prepareStatement(sql, opts);
-        } catch (NullPointerException e) {
-            databaseError("A connection has not been opened yet, please call `openConnection()` before this method", e);
-            throw e;
-        }
+        PreparedStatement statement = currentLease().prepareStatement(sql, opts);
+        return queryStats == null ? statement : queryStats.wrap(statement, sql);
     }
 
     // I think it's better to use prepared statements everywhere
@@ -0,0 +1,206 @@
+package db;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Maintainers: Sam Taseff
+ * <br>
+ * Where the database is and how the pool talks to it. Every setting can be given, from lowest to highest precedence:
+ * <ol>
+ *     <li>the defaults of the chosen profile</li>
+ *     <li>a database.properties file on the classpath</li>
+ *     <li>a properties file named by -Ddb.config=path (or TRAINSTORE_DB_CONFIG)</li>
+ *     <li>environment variables, db.pool.size is TRAINSTORE_DB_POOL_SIZE and so on</li>
+ *     <li>system properties, e.g. -Ddb.url=...</li>
+ * </ol>
+ * There are two profiles (db.profile): "remote", the department's MySQL server and the default, and "embedded", a
+ * private in-memory H2 database in MySQL mode with the schema (db/schema.sql) created on start-up, for running load
+ * tests and benchmarks on one machine.
+ */
+public final class DatabaseConfig {
+    public static final String PROFILE_REMOTE = "remote";
+    public static final String PROFILE_EMBEDDED = "embedded";
+
+    private static final String ENV_PREFIX = "TRAINSTORE_";
+    private static final String CLASSPATH_FILE = "/database.properties";
+    private static final String EMBEDDED_SCHEMA = "/db/schema.sql";
+
+    private final String profile;
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int poolSize;
+    private final long leaseTimeoutMillis;
+    private final long validationIntervalMillis;
+    private final int statementCacheSize;
+    private final String schemaScript;
+    private final boolean statsEnabled;
+    private final long slowQueryMillis;
+    private final long statsDumpIntervalSeconds;
+
+    private DatabaseConfig(Properties settings) {
+        this.profile = settings.getProperty("db.profile");
+        this.username = settings.getProperty("db.username");
+        this.password = settings.getProperty("db.password");
+        this.poolSize = Integer.parseInt(settings.getProperty("db.pool.size"));
+        this.leaseTimeoutMillis = Long.parseLong(settings.getProperty("db.pool.leaseTimeout"));
+        this.validationIntervalMillis = Long.parseLong(settings.getProperty("db.pool.validationInterval"));
+        this.statementCacheSize = Integer.parseInt(settings.getProperty("db.statementCacheSize"));
+        this.schemaScript = emptyToNull(settings.getProperty("db.schema"));
+        this.statsEnabled = Boolean.parseBoolean(settings.getProperty("db.stats.enabled"));
+        this.slowQueryMillis = Long.parseLong(settings.getProperty("db.stats.slowQueryMillis"));
+        this.statsDumpIntervalSeconds = Long.parseLong(settings.getProperty("db.stats.dumpInterval"));
+
+        // ensure you only use URL options specific to the driver of the url, for MySQL see
+        // https://dev.mysql.com/doc/connectors/en/connector-j-reference-configuration-properties.html
+        String options = settings.getProperty("db.options", "").trim();
+        String baseUrl = settings.getProperty("db.url");
+        this.url = options.isEmpty() ? baseUrl : baseUrl + "?" + String.join("&", options.split("\\s*,\\s*"));
+    }
+
+    /**
+     * Reads the configuration from every source, see the class description
+     * @return The configuration to connect with
+     * @throws IllegalArgumentException If the profile is unknown or a number cannot be parsed
+     */
+    public static DatabaseConfig load() {
+        Properties overrides = new Properties();
+        readClasspath(overrides, CLASSPATH_FILE);
+
+        String file = System.getProperty("db.config", System.getenv(ENV_PREFIX + "DB_CONFIG"));
+        if (file != null) {
+            try (Reader reader = Files.newBufferedReader(Path.of(file), StandardCharsets.UTF_8)) {
+                overrides.load(reader);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Could not read database configuration " + file, e);
+            }
+        }
+
+        for (Map.Entry<String, String> env : System.getenv().entrySet()) {
+            if (env.getKey().startsWith(ENV_PREFIX + "DB_") && !env.getKey().equals(ENV_PREFIX + "DB_CONFIG")) {
+                overrides.setProperty(envToKey(env.getKey()), env.getValue());
+            }
+        }
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith("db.") && !key.equals("db.config")) {
+                overrides.setProperty(key, System.getProperty(key));
+            }
+        }
+
+        String profile = overrides.getProperty("db.profile", PROFILE_REMOTE);
+        Properties settings = defaults(profile);
+        settings.putAll(overrides);
+        return new DatabaseConfig(settings);
+    }
+
+    private static Properties defaults(String profile) {
+        Properties defaults = new Properties();
+        defaults.setProperty("db.profile", profile);
+        defaults.setProperty("db.pool.size", "8");
+        defaults.setProperty("db.pool.leaseTimeout", "30000");          // Measured in milliseconds
+        defaults.setProperty("db.pool.validationInterval", "30000");    // Measured in milliseconds
+        defaults.setProperty("db.statementCacheSize", "64");            // Per pooled connection
+        defaults.setProperty("db.stats.enabled", "true");               // Time every statement, see QueryStats
+        defaults.setProperty("db.stats.slowQueryMillis", "250");        // Slower executions are logged
+        defaults.setProperty("db.stats.dumpInterval", "300");           // Measured in seconds, 0 never logs a summary
+
+        switch (profile) {
+            case PROFILE_REMOTE -> {
+                defaults.setProperty("db.url", "jdbc:mysql://stusql.dcs.shef.ac.uk:3306/team005");
+                defaults.setProperty("db.username", "team005");
+                defaults.setProperty("db.password", "Uajee5tha");
+                defaults.setProperty("db.options", String.join(",",
+                        "connectTimeout=90",                // Measured in milliseconds
+                        "rewriteBatchedStatements=true"     // addBatch()/executeBatch() goes to the server as one multi-row statement
+                ));
+            }
+            case PROFILE_EMBEDDED -> {
+                // kept alive for as long as the JVM runs, identifiers are case-insensitive like on the MySQL server
+                defaults.setProperty("db.url", "jdbc:h2:mem:trainstore;MODE=MySQL;DATABASE_TO_LOWER=TRUE;"
+                        + "CASE_INSENSITIVE_IDENTIFIERS=TRUE;DB_CLOSE_DELAY=-1");
+                defaults.setProperty("db.username", "sa");
+                defaults.setProperty("db.password", "");
+                defaults.setProperty("db.schema", "classpath:" + EMBEDDED_SCHEMA);
+            }
+            default -> throw new IllegalArgumentException("Unknown database profile [" + profile + "], expected "
+                    + PROFILE_REMOTE + " or " + PROFILE_EMBEDDED);
+        }
+        return defaults;
+    }
+
+    private static void readClasspath(Properties into, String resource) {
+        try (InputStream in = DatabaseConfig.class.getResourceAsStream(resource)) {
+            if (in != null) {
+                into.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read database configuration " + resource, e);
+        }
+    }
+
+    /**
+     * TRAINSTORE_DB_POOL_SIZE -> db.pool.size, camel case keys are matched case-insensitively and with or without
+     * underscores between their words (TRAINSTORE_DB_STATEMENTCACHESIZE or TRAINSTORE_DB_STATEMENT_CACHE_SIZE)
+     */
+    private static String envToKey(String name) {
+        String key = "db." + name.substring((ENV_PREFIX + "DB_").length()).toLowerCase(Locale.ROOT).replace('_', '.');
+        for (String known : new String[]{"db.pool.leaseTimeout", "db.pool.validationInterval", "db.statementCacheSize",
+                "db.stats.slowQueryMillis", "db.stats.dumpInterval"}) {
+            if (known.toLowerCase(Locale.ROOT).replace(".", "").equals(key.replace(".", ""))) {
+                return known;
+            }
+        }
+        return key;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isBlank() ? null : value;
+    }
+
+    /**
+     * @return The SQL script creating the schema, or null if the database is expected to have one already
+     * @throws IOException If the script is configured but cannot be read
+     */
+    public String readSchemaScript() throws IOException {
+        if (schemaScript == null) {
+            return null;
+        }
+        if (schemaScript.startsWith("classpath:")) {
+            String resource = schemaScript.substring("classpath:".length());
+            try (InputStream in = DatabaseConfig.class.getResourceAsStream(resource)) {
+                if (in == null) {
+                    throw new IOException("Schema script " + schemaScript + " not found");
+                }
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+        return Files.readString(Path.of(schemaScript), StandardCharsets.UTF_8);
+    }
+
+    public String getProfile() { return profile; }
+    public String getUrl() { return url; }
+    public String getUsername() { return username; }
+    public String getPassword() { return password; }
+    public int getPoolSize() { return poolSize; }
+    public long getLeaseTimeoutMillis() { return leaseTimeoutMillis; }
+    public long getValidationIntervalMillis() { return validationIntervalMillis; }
+    public int getStatementCacheSize() { return statementCacheSize; }
+    public boolean isStatsEnabled() { return statsEnabled; }
+    public long getSlowQueryMillis() { return slowQueryMillis; }
+    public long getStatsDumpIntervalSeconds() { return statsDumpIntervalSeconds; }
+
+    @Override
+    public String toString() {
+        // never print the password
+        return "profile=" + profile + ", url=" + url + ", username=" + username + ", poolSize=" + poolSize;
+    }
+}
@@ -0,0 +1,88 @@
+package db;
+
+import javax.swing.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Maintainers: Sam Taseff
+ * <br>
+ * Runs database work on a small pool of background threads so the Swing event dispatch thread (EDT) never blocks on
+ * JDBC. Each task gets its own connection (openConnection() before, closeConnection() after, on the worker thread),
+ * and its result or failure is handed back on the EDT, where it is safe to update components.
+ * <br><br>
+ * Tasks must not touch Swing components, read whatever they need from the UI before submitting them.
+ */
+public final class DatabaseWorker {
+    /**
+     * A unit of database work, it runs with a connection already open on the calling thread
+     * @param <T> What the work produces, use Void (and return null) for updates
+     */
+    @FunctionalInterface
+    public interface Task<T> {
+        T run() throws Exception;
+    }
+
+    private static final int WORKER_THREADS = 4;
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final ExecutorService executor = Executors.newFixedThreadPool(WORKER_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "DatabaseWorker-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * This class should not be instantiated
+     */
+    private DatabaseWorker() { }
+
+    /**
+     * Runs the task in the background, failures are only logged
+     * @param task The database work
+     * @param onSuccess Called on the EDT with the task's result
+     * @return A future completed (off the EDT) with the task's result
+     */
+    public static <T> CompletableFuture<T> submit(Task<T> task, Consumer<? super T> onSuccess) {
+        return submit(task, onSuccess, e -> { });
+    }
+
+    /**
+     * Runs the task in the background
+     * @param task The database work
+     * @param onSuccess Called on the EDT with the task's result
+     * @param onFailure Called on the EDT with whatever the task threw (an Error wrapped in an ExecutionException), it
+     *                  has already been logged
+     * @return A future completed (off the EDT) with the task's result
+     */
+    public static <T> CompletableFuture<T> submit(Task<T> task, Consumer<? super T> onSuccess, Consumer<? super Exception> onFailure) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+
+        executor.execute(() -> {
+            DatabaseBridge db = DatabaseBridge.instance();
+            T result;
+            try {
+                db.openConnection();
+                result = task.run();
+            } catch (Throwable e) {
+                // Errors too (the entities throw InternalError), or the lease and the caller's callback are lost
+                DatabaseBridge.databaseError("Background database task failed", e);
+                db.closeConnection();
+                future.completeExceptionally(e);
+                Exception failure = e instanceof Exception exception ? exception : new ExecutionException(e);
+                SwingUtilities.invokeLater(() -> onFailure.accept(failure));
+                return;
+            }
+            // hand the connection back before the EDT sees the result, so follow-up work can reuse it straight away
+            db.closeConnection();
+            future.complete(result);
+            SwingUtilities.invokeLater(() -> onSuccess.accept(result));
+        });
+
+        return future;
+    }
+}
@@ -0,0 +1,173 @@
+package db;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maintainers: Sam Taseff
+ * <br>
+ * Reads a table (or a join) one page at a time using keyset pagination: the next page starts right after the last
+ * row of the previous one ("WHERE (sort, key) > (?, ?)"), so the database seeks straight to it through an index
+ * instead of reading and discarding every row before it like LIMIT/OFFSET does. OFFSET is only used to jump to a page
+ * whose predecessor has not been read.
+ * <br><br>
+ * Each column that can be sorted by has an SQL expression, it must never be NULL (wrap it in COALESCE() otherwise),
+ * and rows are always tie-broken by a unique key so pages never overlap. Every expression is fixed when the query is
+ * built, values are only ever bound as parameters.
+ */
+public final class KeysetQuery {
+    /**
+     * Turns the current row of a result set into the values shown for it
+     */
+    @FunctionalInterface
+    public interface RowMapper {
+        Object[] map(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * @param values What the mapper made of the row
+     * @param seek The sort value and key of the row, pass it as "after" to get the rows that follow it
+     */
+    public record Row(Object[] values, Object[] seek) { }
+
+    private final String select;
+    private final String from;
+    private final String where;
+    private final String groupBy;
+    private final String key;
+    private final String[] sortExpressions;
+    private final RowMapper mapper;
+
+    /**
+     * @param select The select list, without SELECT
+     * @param from The tables and joins, without FROM
+     * @param where A filter without WHERE (it may use ? parameters), or null for every row
+     * @param groupBy Columns to group by without GROUP BY, or null. Sort expressions must not be aggregates.
+     * @param key A unique, non-null expression used to break ties, e.g. the primary key
+     * @param sortExpressions An expression for each column that can be sorted by, indexed like the mapped values,
+     *                        null for columns that cannot be sorted by
+     * @param mapper Maps each row to its values
+     */
+    public KeysetQuery(String select, String from, String where, String groupBy, String key,
+                       String[] sortExpressions, RowMapper mapper) {
+        this.select = select;
+        this.from = from;
+        this.where = where;
+        this.groupBy = groupBy;
+        this.key = key;
+        this.sortExpressions = sortExpressions.clone();
+        this.mapper = mapper;
+    }
+
+    /**
+     * @param column Index of a mapped value
+     * @return Whether the query can be sorted by that column
+     */
+    public boolean isSortable(int column) {
+        return column >= 0 && column < sortExpressions.length && sortExpressions[column] != null;
+    }
+
+    /**
+     * @param params Values for the parameters of the where clause
+     * @return How many rows there are to page through
+     * @throws SQLException
+     */
+    public int count(Object... params) throws SQLException {
+        String sql = "SELECT COUNT(DISTINCT " + key + ") FROM " + from + (where == null ? "" : " WHERE " + where);
+        try (PreparedStatement query = DatabaseBridge.instance().prepareStatement(sql)) {
+            int i = 1;
+            for (Object param : params) {
+                query.setObject(i++, param);
+            }
+
+            ResultSet rs = query.executeQuery();
+            rs.next();
+            return rs.getInt(1);
+        } catch (SQLException e) {
+            DatabaseBridge.databaseError("Failed to count rows of " + from, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads one page
+     * @param sortColumn Column to sort by, or -1 (or an unsortable column) to sort by the key alone
+     * @param ascending Sort direction
+     * @param after The seek values of the row just before the page, or null to skip offset rows instead
+     * @param offset Number of rows to skip, only used when after is null
+     * @param limit Maximum number of rows to return
+     * @param params Values for the parameters of the where clause
+     * @return Up to limit rows, in order
+     * @throws SQLException
+     */
+    public List<Row> fetch(int sortColumn, boolean ascending, Object[] after, int offset, int limit,
+                           Object... params) throws SQLException {
+        String sort = isSortable(sortColumn) ? sortExpressions[sortColumn] : null;
+        String direction = ascending ? " ASC" : " DESC";
+        String comparison = ascending ? " > " : " < ";
+
+        StringBuilder sql = new StringBuilder("SELECT ").append(select)
+                .append(", ").append(sort == null ? key : sort).append(" AS seekSort, ")
+                .append(key).append(" AS seekKey FROM ").append(from);
+
+        List<String> conditions = new ArrayList<>();
+        if (where != null) {
+            conditions.add("(" + where + ")");
+        }
+        if (after != null) {
+            if (sort == null) {
+                conditions.add(key + comparison + "?");
+            } else {
+                conditions.add("(" + sort + comparison + "? OR (" + sort + " = ? AND " + key + comparison + "?))");
+            }
+        }
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        if (groupBy != null) {
+            sql.append(" GROUP BY ").append(groupBy);
+        }
+
+        sql.append(" ORDER BY ");
+        if (sort != null) {
+            sql.append(sort).append(direction).append(", ");
+        }
+        sql.append(key).append(direction).append(" LIMIT ?");
+        if (after == null && offset > 0) {
+            sql.append(" OFFSET ?");
+        }
+
+        try (PreparedStatement query = DatabaseBridge.instance().prepareStatement(sql.toString())) {
+            int i = 1;
+            for (Object param : params) {
+                query.setObject(i++, param);
+            }
+            if (after != null) {
+                if (sort == null) {
+                    query.setObject(i++, after[1]);
+                } else {
+                    query.setObject(i++, after[0]);
+                    query.setObject(i++, after[0]);
+                    query.setObject(i++, after[1]);
+                }
+            }
+            query.setInt(i++, limit);
+            if (after == null && offset > 0) {
+                query.setInt(i, offset);
+            }
+
+            ResultSet rs = query.executeQuery();
+            List<Row> rows = new ArrayList<>(limit);
+            while (rs.next()) {
+                rows.add(new Row(mapper.map(rs), new Object[]{rs.getObject("seekSort"), rs.getObject("seekKey")}));
+            }
+            return rows;
+        } catch (SQLException e) {
+            DatabaseBridge.databaseError("Failed to fetch a page of " + from, e);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,474 @@
+package db;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Maintainers: Sam Taseff
+ * <br>
+ * Times every statement prepared through DatabaseBridge. Each one is wrapped in a thin proxy that records, per
+ * distinct SQL text, how often it ran, a latency histogram, the rows it read or changed and which methods ran it, so
+ * hot statements and N+1 loops (many executions reading one row each, from the same caller) stand out.
+ * <br><br>
+ * Executions slower than the threshold are logged along with their parameters (text parameters of statements on
+ * Person or BankDetails are masked), a summary of the most expensive statements is logged every dump interval, and
+ * everything is available over JMX, see QueryStatsMXBean. This class is thread-safe.
+ */
+public final class QueryStats implements QueryStatsMXBean {
+    public static final String OBJECT_NAME = "trainstore:type=QueryStats";
+
+    // IN (?, ?, ?) lists of any length count as one statement
+    private static final Pattern PARAMETER_LIST = Pattern.compile("\\?(\\s*,\\s*\\?)+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    // string parameters of statements on these are never logged, they hold emails, password hashes and card details
+    private static final Pattern SENSITIVE = Pattern.compile("(?i)\\bPerson\\b|BankDetails|password");
+    // generated SQL could otherwise grow the map without bound
+    private static final int MAX_STATEMENTS = 1000;
+    private static final String OTHER_STATEMENTS = "(other statements)";
+    private static final int DUMP_ROWS = 15;
+    private static final StackWalker WALKER = StackWalker.getInstance();
+
+    /**
+     * Latencies in buckets of a quarter of a power of two (at most 19% wide), from 1µs to about 9 hours
+     */
+    private static final class Histogram {
+        private static final int EXACT = 8;
+        private static final int BUCKETS = EXACT + (36 - 3) * 4;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+        void record(long nanos) {
+            counts.incrementAndGet(bucketOf(nanos / 1000));
+        }
+
+        private static int bucketOf(long micros) {
+            if (micros < EXACT) return (int) Math.max(0, micros);
+            int log2 = 63 - Long.numberOfLeadingZeros(micros);
+            int sub = (int) (micros >> (log2 - 2)) & 3;
+            return Math.min(BUCKETS - 1, EXACT + (log2 - 3) * 4 + sub);
+        }
+
+        private static long upperBoundMicros(int bucket) {
+            if (bucket < EXACT) return bucket + 1;
+            int log2 = (bucket - EXACT) / 4 + 3;
+            int sub = (bucket - EXACT) % 4;
+            return (long) (5 + sub) << (log2 - 2);
+        }
+
+        /**
+         * @return The upper bound of the bucket holding the p-th execution, in milliseconds
+         */
+        double percentileMillis(double p, long total) {
+            if (total == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(p * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= rank) {
+                    return upperBoundMicros(i) / 1000.0;
+                }
+            }
+            return upperBoundMicros(BUCKETS - 1) / 1000.0;
+        }
+    }
+
+    /**
+     * Everything recorded about one distinct SQL text
+     */
+    private static final class Entry {
+        private final String sql;
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final LongAdder rowsRead = new LongAdder();
+        private final LongAdder rowsAffected = new LongAdder();
+        private final Histogram histogram = new Histogram();
+        private final Map<String, LongAdder> callers = new ConcurrentHashMap<>();
+
+        private Entry(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    /**
+     * What JMX and the dump show for one statement
+     */
+    public static final class StatementSummary {
+        private final String sql;
+        private final long executions;
+        private final long errors;
+        private final double totalMillis;
+        private final double p50Millis;
+        private final double p95Millis;
+        private final double p99Millis;
+        private final double maxMillis;
+        private final long rowsRead;
+        private final long rowsAffected;
+        private final String[] topCallers;
+
+        private StatementSummary(Entry entry) {
+            this.sql = entry.sql;
+            this.executions = entry.executions.sum();
+            this.errors = entry.errors.sum();
+            this.totalMillis = entry.totalNanos.sum() / 1e6;
+            this.maxMillis = entry.maxNanos.get() / 1e6;
+            // a bucket's upper bound can lie above the slowest execution in it
+            this.p50Millis = Math.min(maxMillis, entry.histogram.percentileMillis(0.50, executions));
+            this.p95Millis = Math.min(maxMillis, entry.histogram.percentileMillis(0.95, executions));
+            this.p99Millis = Math.min(maxMillis, entry.histogram.percentileMillis(0.99, executions));
+            this.rowsRead = entry.rowsRead.sum();
+            this.rowsAffected = entry.rowsAffected.sum();
+            this.topCallers = entry.callers.entrySet().stream()
+                    .sorted(Map.Entry.<String, LongAdder>comparingByValue(Comparator.comparingLong(LongAdder::sum)).reversed())
+                    .limit(3)
+                    .map(e -> e.getKey() + " x" + e.getValue().sum())
+                    .toArray(String[]::new);
+        }
+
+        public String getSql() { return sql; }
+        public long getExecutions() { return executions; }
+        public long getErrors() { return errors; }
+        public double getTotalMillis() { return totalMillis; }
+        public double getMeanMillis() { return executions == 0 ? 0 : totalMillis / executions; }
+        public double getP50Millis() { return p50Millis; }
+        public double getP95Millis() { return p95Millis; }
+        public double getP99Millis() { return p99Millis; }
+        public double getMaxMillis() { return maxMillis; }
+        public long getRowsRead() { return rowsRead; }
+        public long getRowsAffected() { return rowsAffected; }
+        public String[] getTopCallers() { return topCallers.clone(); }
+    }
+
+    /**
+     * Forwards everything to the statement, timing the execute methods and remembering the parameters for the slow
+     * query log
+     */
+    private final class TimedStatementHandler implements InvocationHandler {
+        private final PreparedStatement statement;
+        private final Entry entry;
+        private final String caller;
+        private final Map<Integer, Object> parameters = new TreeMap<>();
+        private int batched = 0;
+
+        private TimedStatementHandler(PreparedStatement statement, Entry entry, String caller) {
+            this.statement = statement;
+            this.entry = entry;
+            this.caller = caller;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            boolean noArgs = args == null || args.length == 0;
+
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+                parameters.put(index, name.equals("setNull") ? null : args[1]);
+            } else if (name.equals("clearParameters")) {
+                parameters.clear();
+            } else if (name.equals("addBatch") && noArgs) {
+                batched++;
+            } else if (name.equals("clearBatch")) {
+                batched = 0;
+            } else if (noArgs && (name.equals("executeQuery") || name.equals("executeUpdate") || name.equals("execute")
+                    || name.equals("executeLargeUpdate") || name.equals("executeBatch") || name.equals("executeLargeBatch"))) {
+                return timed(method);
+            } else if (name.equals("equals")) {
+                return proxy == args[0];
+            } else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private Object timed(Method method) throws Throwable {
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = method.invoke(statement);
+            } catch (InvocationTargetException e) {
+                record(System.nanoTime() - start, true);
+                throw e.getCause();
+            }
+            long nanos = System.nanoTime() - start;
+
+            if (result instanceof Integer count) {
+                entry.rowsAffected.add(Math.max(0, count));
+            } else if (result instanceof Long count) {
+                entry.rowsAffected.add(Math.max(0, count));
+            } else if (result instanceof int[] counts) {
+                for (int count : counts) entry.rowsAffected.add(Math.max(0, count));
+            } else if (result instanceof long[] counts) {
+                for (long count : counts) entry.rowsAffected.add(Math.max(0, count));
+            } else if (result instanceof ResultSet rs) {
+                result = countRows(rs, entry);
+            }
+            record(nanos, false);
+            if (method.getName().equals("executeBatch") || method.getName().equals("executeLargeBatch")) {
+                batched = 0;
+            }
+            return result;
+        }
+
+        private void record(long nanos, boolean failed) {
+            entry.executions.increment();
+            entry.totalNanos.add(nanos);
+            entry.maxNanos.accumulateAndGet(nanos, Math::max);
+            entry.histogram.record(nanos);
+            entry.callers.computeIfAbsent(caller, c -> new LongAdder()).increment();
+            if (failed) {
+                entry.errors.increment();
+            }
+
+            if (nanos >= TimeUnit.MILLISECONDS.toNanos(slowQueryThresholdMillis)) {
+                slowQueries.increment();
+                DatabaseBridge.databaseLog(
+                        "SLOW QUERY ->",
+                        String.format(Locale.ROOT, "%.1fms", nanos / 1e6),
+                        "from " + caller + (batched > 0 ? ", batch of " + batched : "") + "\n\t",
+                        entry.sql + "\n\t",
+                        describeParameters()
+                );
+            }
+        }
+
+        private String describeParameters() {
+            if (parameters.isEmpty()) return "(no parameters)";
+            boolean mask = SENSITIVE.matcher(entry.sql).find();
+            StringBuilder sb = new StringBuilder("parameters: ");
+            parameters.forEach((index, value) -> {
+                sb.append(index).append('=');
+                if (value == null) {
+                    sb.append("NULL");
+                } else if (mask && value instanceof String) {
+                    sb.append("***");
+                } else if (value instanceof String s) {
+                    sb.append('\'').append(s.length() > 40 ? s.substring(0, 40) + "..." : s).append('\'');
+                } else {
+                    sb.append(value);
+                }
+                sb.append(' ');
+            });
+            if (batched > 0) {
+                sb.append("(of the last row batched)");
+            }
+            return sb.toString().trim();
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final LongAdder slowQueries = new LongAdder();
+    private volatile long slowQueryThresholdMillis;
+    private final ScheduledExecutorService dumper;
+    private long executionsAtLastDump = 0;
+
+    /**
+     * Registers itself over JMX as OBJECT_NAME
+     * @param slowQueryThresholdMillis Executions taking at least this long are logged with their parameters
+     * @param dumpIntervalSeconds How often a summary is logged, 0 never
+     */
+    QueryStats(long slowQueryThresholdMillis, long dumpIntervalSeconds) {
+        this.slowQueryThresholdMillis = slowQueryThresholdMillis;
+
+        if (dumpIntervalSeconds > 0) {
+            dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "QueryStats-dump");
+                thread.setDaemon(true);
+                return thread;
+            });
+            dumper.scheduleAtFixedRate(this::dumpIfChanged, dumpIntervalSeconds, dumpIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            dumper = null;
+        }
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            DatabaseBridge.databaseError("Could not register query statistics over JMX", e);
+        }
+    }
+
+    /**
+     * @param statement A statement just prepared
+     * @param sql The SQL it was prepared with
+     * @return The statement, timed. Only its execute methods are timed, everything else goes straight through.
+     */
+    PreparedStatement wrap(PreparedStatement statement, String sql) {
+        TimedStatementHandler handler = new TimedStatementHandler(statement, entryFor(sql), callerOf());
+        return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                handler
+        );
+    }
+
+    private Entry entryFor(String sql) {
+        String key = WHITESPACE.matcher(PARAMETER_LIST.matcher(sql).replaceAll("?...")).replaceAll(" ").trim();
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            return entry;
+        }
+        if (entries.size() >= MAX_STATEMENTS) {
+            return entries.computeIfAbsent(OTHER_STATEMENTS, Entry::new);
+        }
+        return entries.computeIfAbsent(key, Entry::new);
+    }
+
+    /**
+     * @return The first method up the stack that is not part of the database layer or the JDK, e.g.
+     * entity.order.Order.fetchItems
+     */
+    private static String callerOf() {
+        return WALKER.walk(frames -> frames
+                .filter(frame -> !isInfrastructure(frame.getClassName()))
+                .findFirst()
+                .map(frame -> {
+                    String method = frame.getMethodName();
+                    // lambda$getOrderHistory$3 was written in getOrderHistory
+                    if (method.startsWith("lambda$")) {
+                        int end = method.indexOf('$', "lambda$".length());
+                        method = method.substring("lambda$".length(), end < 0 ? method.length() : end);
+                    }
+                    return frame.getClassName() + "." + method;
+                })
+                .orElse("unknown"));
+    }
+
+    private static boolean isInfrastructure(String className) {
+        return className.startsWith("db.") || className.startsWith("java.") || className.startsWith("javax.")
+                || className.startsWith("jdk.") || className.startsWith("sun.") || className.startsWith("com.sun.");
+    }
+
+    @Override
+    public long getExecutions() {
+        return entries.values().stream().mapToLong(e -> e.executions.sum()).sum();
+    }
+
+    @Override
+    public long getSlowQueries() {
+        return slowQueries.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return entries.values().stream().mapToLong(e -> e.errors.sum()).sum();
+    }
+
+    @Override
+    public long getSlowQueryThresholdMillis() {
+        return slowQueryThresholdMillis;
+    }
+
+    @Override
+    public void setSlowQueryThresholdMillis(long millis) {
+        this.slowQueryThresholdMillis = Math.max(0, millis);
+    }
+
+    @Override
+    public List<StatementSummary> getStatements() {
+        List<StatementSummary> summaries = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            summaries.add(new StatementSummary(entry));
+        }
+        summaries.sort(Comparator.comparingDouble(StatementSummary::getTotalMillis).reversed());
+        return summaries;
+    }
+
+    @Override
+    public String dump() {
+        List<StatementSummary> statements = getStatements();
+        StringBuilder sb = new StringBuilder(String.format(Locale.ROOT,
+                "Query statistics: %d executions, %d slow, %d errors, %d distinct statements, most time spent first%n",
+                getExecutions(), getSlowQueries(), getErrors(), statements.size()));
+        sb.append(String.format(Locale.ROOT, "%9s %10s %8s %8s %8s %8s %10s %9s  %s%n",
+                "count", "total ms", "mean ms", "p95 ms", "p99 ms", "max ms", "rows/exec", "changed", "sql <- callers"));
+        for (StatementSummary s : statements.subList(0, Math.min(DUMP_ROWS, statements.size()))) {
+            sb.append(String.format(Locale.ROOT, "%9d %10.1f %8.2f %8.2f %8.2f %8.2f %10.1f %9d  %s%n",
+                    s.getExecutions(), s.getTotalMillis(), s.getMeanMillis(), s.getP95Millis(), s.getP99Millis(),
+                    s.getMaxMillis(), s.getExecutions() == 0 ? 0 : s.getRowsRead() / (double) s.getExecutions(),
+                    s.getRowsAffected(), abbreviate(s.getSql())));
+            sb.append(String.format("%70s<- %s%n", "", String.join(", ", s.topCallers)));
+        }
+        return sb.toString();
+    }
+
+    private static String abbreviate(String sql) {
+        return sql.length() > 120 ? sql.substring(0, 117) + "..." : sql;
+    }
+
+    private synchronized void dumpIfChanged() {
+        long executions = getExecutions();
+        if (executions == executionsAtLastDump) return;
+        executionsAtLastDump = executions;
+        DatabaseBridge.databaseLog(dump());
+    }
+
+    @Override
+    public synchronized void reset() {
+        entries.clear();
+        slowQueries.reset();
+        executionsAtLastDump = 0;
+    }
+
+    /**
+     * Stops the periodic summary, logging a last one if anything ran since the previous
+     */
+    void shutdown() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumpIfChanged();
+        }
+    }
+
+    /**
+     * Counts the rows read through a result set into the statement's entry, as they are read
+     */
+    private static ResultSet countRows(ResultSet rs, Entry entry) {
+        return (ResultSet) Proxy.newProxyInstance(
+                ResultSet.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    try {
+                        Object result = method.invoke(rs, args);
+                        if (method.getName().equals("next") && Boolean.TRUE.equals(result)) {
+                            entry.rowsRead.increment();
+                        }
+                        return result;
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+        );
+    }
+}
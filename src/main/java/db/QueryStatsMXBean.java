@@ -0,0 +1,48 @@
+package db;
+
+import java.util.List;
+
+/**
+ * Maintainers: Sam Taseff
+ * <br>
+ * The statement timings of QueryStats as seen through JMX (jconsole, VisualVM...), registered as
+ * trainstore:type=QueryStats
+ */
+public interface QueryStatsMXBean {
+    /**
+     * @return Statements executed since start or the last reset
+     */
+    long getExecutions();
+
+    /**
+     * @return Executions that took at least the slow query threshold
+     */
+    long getSlowQueries();
+
+    /**
+     * @return Executions that threw
+     */
+    long getErrors();
+
+    long getSlowQueryThresholdMillis();
+
+    /**
+     * @param millis Executions taking at least this long are logged with their parameters, 0 logs every one
+     */
+    void setSlowQueryThresholdMillis(long millis);
+
+    /**
+     * @return Every distinct statement, the most total time spent first
+     */
+    List<QueryStats.StatementSummary> getStatements();
+
+    /**
+     * @return The summary that is logged periodically, as text
+     */
+    String dump();
+
+    /**
+     * Forgets every timing
+     */
+    void reset();
+}
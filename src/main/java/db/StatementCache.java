@@ -0,0 +1,268 @@
+package db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Maintainers: Sam Taseff
+ * <br>
+ * An LRU cache of prepared statements belonging to ONE physical connection, keyed on the SQL text and the statement
+ * options. Callers get a thin proxy, closing it hands the statement back to the cache rather than closing it, so
+ * the next prepareStatement() with the same SQL skips the parse.
+ * <br><br>
+ * A cached statement is only ever used by one caller at a time, if it is already checked out (e.g. the same query
+ * inside a loop over its own results) a throwaway statement is prepared instead. Statements a caller forgets to close
+ * are reclaimed when the lease on the connection ends, throwaway ones are closed then, and everything is really
+ * closed with the connection.
+ */
+final class StatementCache {
+    private final class Entry {
+        private final String key;
+        private final PreparedStatement statement;
+        private CachedStatementHandler owner = null;
+        private boolean evicted = false;
+
+        private Entry(String key, PreparedStatement statement) {
+            this.key = key;
+            this.statement = statement;
+        }
+    }
+
+    /**
+     * Forwards everything to the cached statement except close(), which checks it back into the cache
+     */
+    private final class CachedStatementHandler implements InvocationHandler {
+        private final Entry entry;
+        private boolean closed = false;
+
+        private CachedStatementHandler(Entry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    checkIn(this);
+                    return null;
+                case "isClosed":
+                    return closed || entry.statement.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "[CachedStatement " + entry.key + "]";
+            }
+
+            if (closed) {
+                throw new SQLException("Statement is closed (it was returned to the statement cache)");
+            }
+
+            try {
+                return method.invoke(entry.statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Forwards everything to a statement prepared outside the cache, close() also forgets it, so the ones a caller
+     * forgets to close can be closed by reclaimAll()
+     */
+    private final class ThrowawayStatementHandler implements InvocationHandler {
+        private final PreparedStatement statement;
+
+        private ThrowawayStatementHandler(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    throwaways.remove(statement);
+                    statement.close();
+                    return null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+            }
+
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private final Connection connection;
+    private final Set<PreparedStatement> throwaways = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final LinkedHashMap<String, Entry> entries;
+
+    /**
+     * @param connection The physical connection the statements are prepared on
+     * @param capacity The most statements kept open on this connection
+     * @param hits Shared counter incremented for every prepare served from the cache
+     * @param misses Shared counter incremented for every prepare that had to go to the driver
+     */
+    StatementCache(Connection connection, int capacity, AtomicLong hits, AtomicLong misses) {
+        this.connection = connection;
+        this.hits = hits;
+        this.misses = misses;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                Entry entry = eldest.getValue();
+                entry.evicted = true;
+                if (entry.owner == null) {
+                    closeQuietly(entry.statement);
+                }
+                return true;
+            }
+        };
+    }
+
+    private static String keyOf(String sql, int opts) {
+        return opts + ":" + sql;
+    }
+
+    /**
+     * @param sql The SQL you wish to execute on the database
+     * @param opts Any modifications you wish to make to the output of executing the query
+     * @return A statement ready for parameters, close it when you are done to hand it back
+     * @throws SQLException Concerning something to do with your query or update
+     */
+    PreparedStatement prepare(String sql, int opts) throws SQLException {
+        String key = keyOf(sql, opts);
+        Entry entry = entries.get(key);
+
+        if (entry != null && entry.owner == null) {
+            hits.incrementAndGet();
+            return checkOut(entry);
+        }
+
+        misses.incrementAndGet();
+        if (entry != null) {
+            // already in use further up the call stack, this one is not cached and really closes
+            PreparedStatement statement = connection.prepareStatement(sql, opts);
+            throwaways.add(statement);
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    new ThrowawayStatementHandler(statement)
+            );
+        }
+
+        entry = new Entry(key, connection.prepareStatement(sql, opts));
+        entries.put(key, entry);
+        return checkOut(entry);
+    }
+
+    private PreparedStatement checkOut(Entry entry) {
+        CachedStatementHandler handler = new CachedStatementHandler(entry);
+        entry.owner = handler;
+        return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                handler
+        );
+    }
+
+    private void checkIn(CachedStatementHandler handler) throws SQLException {
+        if (handler.closed) return;
+        handler.closed = true;
+
+        Entry entry = handler.entry;
+        if (entry.owner != handler) return;
+        entry.owner = null;
+
+        if (entry.evicted || entry.statement.isClosed()) {
+            closeQuietly(entry.statement);
+            entries.remove(entry.key, entry);
+            return;
+        }
+
+        try {
+            entry.statement.clearParameters();
+            entry.statement.clearBatch();
+        } catch (SQLException e) {
+            closeQuietly(entry.statement);
+            entries.remove(entry.key, entry);
+            throw e;
+        }
+    }
+
+    /**
+     * Takes back every statement still checked out and closes the throwaway ones still open, called when the lease on
+     * this connection ends
+     */
+    void reclaimAll() {
+        closeThrowaways();
+
+        List<CachedStatementHandler> outstanding = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.owner != null) {
+                outstanding.add(entry.owner);
+            }
+        }
+        for (CachedStatementHandler handler : outstanding) {
+            try {
+                checkIn(handler);
+            } catch (SQLException e) {
+                DatabaseBridge.databaseError("Failed to reset a cached statement, it has been discarded", e);
+            }
+        }
+    }
+
+    /**
+     * Really closes every cached statement, called just before the connection itself is closed
+     */
+    void closeAll() {
+        closeThrowaways();
+        for (Entry entry : entries.values()) {
+            closeQuietly(entry.statement);
+        }
+        entries.clear();
+    }
+
+    private void closeThrowaways() {
+        for (PreparedStatement statement : throwaways) {
+            closeQuietly(statement);
+        }
+        throwaways.clear();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            DatabaseBridge.databaseError("Failed to close cached statement gracefully", e);
+        }
+    }
+}
@@ -8,6 +8,7 @@ import java.util.List;
 import db.DatabaseBridge;
 import db.DatabaseOperation;
 import db.DatabaseRecord;
+import utils.FormValidator;
 
 public class Address extends DatabaseOperation.Entity implements DatabaseRecord{
     private String houseNumber;
@@ -36,7 +37,7 @@ public class Address extends DatabaseOperation.Entity implements DatabaseRecord{
     }
 
     public static boolean validatePostcode(String postcode) {
-        return postcode.matches("^([a-zA-Z0-9]{6})|([a-zA-Z0-9]{2,3} [a-zA-Z0-9]{3})$");
+        return FormValidator.isPostcode(postcode);
     }
 
     /**
@@ -75,18 +76,31 @@ public class Address extends DatabaseOperation.Entity implements DatabaseRecord{
         return true;
     }
 
+    /**
+     * Looks an address up by its primary key, repeated lookups in the same unit of work are answered from the IdentityMap
+     * @return The address, or null if there is none
+     * @throws SQLException
+     */
     public static Address getAddressById(String houseNumber, String postcode) throws SQLException {
+        List<String> key = List.of(houseNumber, postcode);
+        Address cached = IdentityMap.get(Address.class, key);
+        if (cached != null) {
+            return cached;
+        }
+
         try (PreparedStatement s = prepareStatement("SELECT * FROM Address WHERE houseNumber=? AND postCode=?")){
             s.setString(1, houseNumber);
             s.setString(2, postcode);
             ResultSet res = s.executeQuery();
             if(res.next()){
-                return new Address(
+                Address address = new Address(
                         res.getString("houseNumber"),
                         res.getString("streetName"),
                         res.getString("cityName"),
                         res.getString("postCode")
                 );
+                IdentityMap.put(Address.class, key, address);
+                return address;
             }
         } catch (SQLException e) {
             DatabaseBridge.databaseError("Failed to get address");
@@ -5,16 +5,15 @@ import db.DatabaseBridge;
 import db.DatabaseOperation;
 import db.DatabaseRecord;
 import org.apache.commons.validator.routines.checkdigit.LuhnCheckDigit;
+import utils.CipherEngine;
 import utils.Crypto;
+import utils.FormValidator;
 
 import java.security.InvalidKeyException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeFormatterBuilder;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
@@ -95,15 +94,13 @@ public class BankDetail extends DatabaseOperation.Entity implements DatabaseReco
 
         try (PreparedStatement cardQuery = prepareStatement("INSERT INTO BankDetails (cardName, cardHolderName, cardNumber, expiryDate, securityCode) VALUES (?, ?, ?, ?, ?)",
                 Statement.RETURN_GENERATED_KEYS)) {
-            byte[] encryptionKey = AppContext.getEncryptionKey();
-            String encryptedCardNumber = Crypto.encryptString(cardNumber, encryptionKey);
-            String encryptedSecurityCode = Crypto.encryptString(securityCode, encryptionKey);
+            String[] encrypted = CipherEngine.forKey(AppContext.getEncryptionKey()).encryptAll(cardNumber, securityCode);
 
             cardQuery.setString(1, cardName);
             cardQuery.setString(2, cardHolderName);
-            cardQuery.setString(3, encryptedCardNumber);
+            cardQuery.setString(3, encrypted[0]);
             cardQuery.setDate(4, new java.sql.Date(expiryDate.getTime()));
-            cardQuery.setString(5, encryptedSecurityCode);
+            cardQuery.setString(5, encrypted[1]);
 
             cardQuery.executeUpdate();
             ResultSet rs = cardQuery.getGeneratedKeys();
@@ -133,17 +130,16 @@ public class BankDetail extends DatabaseOperation.Entity implements DatabaseReco
                 throw new BankAccountNotFoundException("Failed to find bank details with id ["+id+"]");
             }
 
-            byte[] encryptionKey = AppContext.getEncryptionKey();
-            String decryptedCardNumber = Crypto.decryptString(rs.getString("cardNumber"), encryptionKey);
-            String decryptedSecurityCode = Crypto.decryptString(rs.getString("securityCode"), encryptionKey);
+            String[] decrypted = CipherEngine.forKey(AppContext.getEncryptionKey())
+                    .decryptAll(rs.getString("cardNumber"), rs.getString("securityCode"));
 
             return new BankDetail(
                     rs.getInt("paymentId"),
                     rs.getString("cardName"),
                     rs.getString("cardHolderName"),
-                    decryptedCardNumber,
+                    decrypted[0],
                     rs.getDate("expiryDate"),
-                    decryptedSecurityCode
+                    decrypted[1]
             );
         } catch (SQLException e) {
             DatabaseBridge.databaseError("Failed to fetch bank details with id ["+id+"]", e);
@@ -156,30 +152,16 @@ public class BankDetail extends DatabaseOperation.Entity implements DatabaseReco
         }
     }
 
+    /**
+     * Checks every field, see FormValidator.bankDetails()
+     * @param expiryDate yyyy-MM-dd
+     * @throws InvalidBankDetailsException With every error, one per line
+     */
     public static void validateBankDetails(String cardName, String cardNumber, String cardHolderName, String expiryDate, String securityCode)
             throws InvalidBankDetailsException{
-        if (cardNumber == null || expiryDate == null || securityCode == null || cardHolderName == null || cardName == null) {
-            throw new InvalidBankDetailsException("Please enter a valid card number, expiry date and security code");
-        }
-        boolean isCardValid = LuhnCheckDigit.LUHN_CHECK_DIGIT.isValid(cardNumber); // 4012888888881881
-        if (!isCardValid) {
-            throw new InvalidBankDetailsException("Card number invalid, failed Luhn check ["+cardNumber+"]");
-        }
-        // Expiry date should be in the format yyyy-MM-dd
-        if (!expiryDate.matches("^\\d{4}-\\d{2}-\\d{2}$")) { //2024-01-01
-            throw new InvalidBankDetailsException("Expiry date was an invalid format");
-        }
-
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        LocalDate exDate = LocalDate.parse(expiryDate, formatter);
-
-        if (exDate.isBefore(LocalDate.now())) {
-            throw new InvalidBankDetailsException("Card is expired ["+expiryDate+"]");
-        }
-//        Check if card is expired
-
-        if (!(securityCode.length() == 3 || securityCode.length() == 4)) {
-            throw new InvalidBankDetailsException("Security code was an invalid length ["+securityCode+"]");
+        FormValidator.Result result = FormValidator.bankDetails(cardName, cardNumber, cardHolderName, expiryDate, securityCode);
+        if (!result.isValid()) {
+            throw new InvalidBankDetailsException(result.toString());
         }
     }
 
@@ -0,0 +1,72 @@
+package entity;
+
+import db.DatabaseBridge;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A first-level cache scoped to one unit of work, i.e. one openConnection() ... closeConnection() on a thread.
+ * Entities loaded by key are registered here, so looking the same key up again in the same unit of work returns the
+ * same instance without another query. Everything is dropped when the connection is closed, so nothing goes stale
+ * across units of work, and each thread only ever sees its own entries.
+ * <br><br>
+ * Outside a unit of work (no open connection) nothing is cached.
+ */
+public final class IdentityMap {
+    private static final ThreadLocal<Map<Class<?>, Map<Object, Object>>> entries = ThreadLocal.withInitial(HashMap::new);
+
+    static {
+        DatabaseBridge.addCloseHook(IdentityMap::clear);
+    }
+
+    /**
+     * This class should not be instantiated
+     */
+    private IdentityMap() { }
+
+    /**
+     * @param type The entity class
+     * @param key Its primary key (use a List for composite keys)
+     * @return The instance already loaded in this unit of work, or null
+     */
+    public static <T> T get(Class<T> type, Object key) {
+        if (!DatabaseBridge.instance().isConnectionOpen()) {
+            return null;
+        }
+        Map<Object, Object> ofType = entries.get().get(type);
+        return ofType == null ? null : type.cast(ofType.get(key));
+    }
+
+    /**
+     * Registers a freshly loaded instance for the rest of this unit of work
+     * @param type The entity class
+     * @param key Its primary key (use a List for composite keys)
+     * @param entity The instance, null is not cached
+     */
+    public static <T> void put(Class<T> type, Object key, T entity) {
+        if (!DatabaseBridge.instance().isConnectionOpen() || entity == null) {
+            return;
+        }
+        entries.get().computeIfAbsent(type, k -> new HashMap<>()).put(key, entity);
+    }
+
+    /**
+     * Forgets one instance, call it after writing to its row so the next lookup reads it again
+     * @param type The entity class
+     * @param key Its primary key
+     */
+    public static void remove(Class<?> type, Object key) {
+        Map<Object, Object> ofType = entries.get().get(type);
+        if (ofType != null) {
+            ofType.remove(key);
+        }
+    }
+
+    /**
+     * Forgets everything cached on this thread, this happens automatically when the connection is closed
+     */
+    public static void clear() {
+        entries.remove();
+    }
+}
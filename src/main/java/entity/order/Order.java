@@ -3,17 +3,23 @@ package entity.order;
 import db.DatabaseBridge;
 import db.DatabaseOperation;
 import db.DatabaseRecord;
+import entity.product.CatalogCache;
 import entity.product.Product;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Stream;
 
 public class Order extends DatabaseOperation.Entity implements DatabaseRecord {
@@ -24,8 +30,24 @@ public class Order extends DatabaseOperation.Entity implements DatabaseRecord {
     }
 
     public static class OrderHasInsufficientStockException extends Exception {
-        public OrderHasInsufficientStockException(String msg) {super(msg);}
+        private final List<OrderLine> failedLines;
+
+        public OrderHasInsufficientStockException(String msg) {this(msg, List.of());}
+        public OrderHasInsufficientStockException(String msg, List<OrderLine> failedLines) {
+            super(msg);
+            this.failedLines = List.copyOf(failedLines);
+        }
+
+        /**
+         * @return The order lines that could not be covered by the stock held, empty if unknown
+         */
+        public List<OrderLine> getFailedLines() {
+            return failedLines;
+        }
     }
+    // orders per query when fetching lines, keeps the IN list well inside the driver's parameter limit
+    private static final int FETCH_CHUNK = 500;
+
     private Integer orderId = -1;
     private Integer customerId;
     private Date date;
@@ -37,6 +59,7 @@ public class Order extends DatabaseOperation.Entity implements DatabaseRecord {
     }
     private OrderStatus status;
 
+    // null until the lines of a stored order are needed, see getItemsList() and fetchItems()
     private List<OrderLine> items = new ArrayList<OrderLine>();
 
     public Integer getOrderId() {
@@ -47,10 +70,29 @@ public class Order extends DatabaseOperation.Entity implements DatabaseRecord {
         this.orderId = orderId;
     }
 
+    /**
+     * The lines of a stored order are loaded on the first call, with one query, unless fetchItems() already loaded
+     * them. That needs an open connection, use fetchItems() up front when the order is going to leave the worker thread.
+     * @return The order lines
+     */
     public List<OrderLine> getItemsList() {
+        if (items == null) {
+            try {
+                fetchItems(List.of(this));
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
         return items;
     }
 
+    /**
+     * @return Whether getItemsList() can be called without querying the database
+     */
+    public boolean isItemsLoaded() {
+        return items != null;
+    }
+
     public void setStatus(OrderStatus status) {
         this.status = status;
     }
@@ -73,84 +115,111 @@ public class Order extends DatabaseOperation.Entity implements DatabaseRecord {
         this.status = status;
     }
 
-    private Order(Integer orderId, Integer customerId, Date date, OrderStatus status) throws SQLException {
+    /**
+     * A stored order, its lines are only loaded when they are first needed
+     */
+    private Order(Integer orderId, Integer customerId, Date date, OrderStatus status) {
         this.orderId = orderId;
         this.customerId = customerId;
         this.date = date;
         this.status = status;
+        this.items = null;
+    }
 
-        PreparedStatement orderLineQuery = prepareStatement("SELECT * FROM OrderLine WHERE orderId = ?");
-        orderLineQuery.setInt(1, orderId);
-        ResultSet rsOrderLine = orderLineQuery.executeQuery();
-        items = new ArrayList<OrderLine>();
-        while (rsOrderLine.next()) {
-            items.add(new OrderLine(
-                    rsOrderLine.getInt("orderId"),
-                    rsOrderLine.getString("productCode"),
-                    rsOrderLine.getInt("quantity")
-            ));
+    /**
+     * Loads the lines of every given order that does not have them yet, in one query per 500 orders rather than one
+     * per order. Every line gets its product from the catalog cache at the same time, so pricing the orders and
+     * checking their stock afterwards does not query at all.
+     * @param orders Stored orders, orders that are new or already have their lines are skipped
+     * @throws SQLException
+     */
+    public static void fetchItems(Collection<Order> orders) throws SQLException {
+        Map<Integer, Order> pending = new LinkedHashMap<>();
+        for (Order order : orders) {
+            if (order.items == null && order.orderId != -1) {
+                pending.put(order.orderId, order);
+            }
+        }
+        if (pending.isEmpty()) return;
+
+        List<Integer> ids = new ArrayList<>(pending.keySet());
+        for (int from = 0; from < ids.size(); from += FETCH_CHUNK) {
+            List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + FETCH_CHUNK));
+            Map<Integer, List<OrderLine>> lines = new HashMap<>();
+            for (Integer id : chunk) {
+                lines.put(id, new ArrayList<>());
+            }
+
+            String sql = "SELECT * FROM OrderLine WHERE orderId IN (" + "?,".repeat(chunk.size() - 1) + "?)";
+            try (PreparedStatement orderLineQuery = prepareStatement(sql)) {
+                int i = 1;
+                for (Integer id : chunk) {
+                    orderLineQuery.setInt(i++, id);
+                }
+
+                ResultSet rsOrderLine = orderLineQuery.executeQuery();
+                while (rsOrderLine.next()) {
+                    lines.get(rsOrderLine.getInt("orderId")).add(new OrderLine(
+                            rsOrderLine.getInt("orderId"),
+                            rsOrderLine.getString("productCode"),
+                            rsOrderLine.getInt("quantity")
+                    ));
+                }
+            } catch (SQLException e) {
+                DatabaseBridge.databaseError("Failed to fetch the order lines of orders " + chunk, e);
+                throw e;
+            }
+
+            for (Integer id : chunk) {
+                pending.get(id).items = lines.get(id);
+            }
         }
 
+        Map<String, Product> catalog = CatalogCache.getAllByCode();
+        for (Order order : pending.values()) {
+            for (OrderLine line : order.items) {
+                Product product = catalog.get(line.getProductCode());
+                if (product != null) {
+                    line.setItem(product);
+                }
+            }
+        }
     }
 
     /**
      * Get the order with its items
      * @param orderId Primary key
      * @return Order entity with order lines
+     * @throws OrderNotFoundException If there is no order with that id
      * @throws SQLException
      */
     public static Order getOrderWithID(Integer orderId) throws SQLException {
-        try (PreparedStatement findQuery = prepareStatement("SELECT * FROM `Order` WHERE orderId = ?")) {
-            findQuery.setInt(1, orderId);
-            ResultSet rs = findQuery.executeQuery();
-
-            if (!rs.next()) {
-                throw new Order.OrderNotFoundException("Failed to find order with orderId ["+orderId+"]");
-            }
-        } catch (SQLException e) {
-            DatabaseBridge.databaseError("Failed to find order with orderId ["+orderId+"]", e);
-            throw e;
-        }
-
-        try (PreparedStatement orderQuery = prepareStatement("SELECT * FROM `Order` WHERE orderId = ?");
-             //PreparedStatement orderLineQuery = prepareStatement("SELECT * FROM OrderLine WHERE orderId = ?")
-        ) {
+        Order order;
+        try (PreparedStatement orderQuery = prepareStatement("SELECT * FROM `Order` WHERE orderId = ?")) {
             orderQuery.setInt(1, orderId);
-//            orderLineQuery.setInt(1, orderId);
-
             ResultSet rsOrder = orderQuery.executeQuery();
-//            ResultSet rsOrderLine = orderLineQuery.executeQuery();
-            // THE ORDER LINES ARE LOADED IN THE CONSTRUCTOR NOW
-//            List<OrderLine> items = new ArrayList<OrderLine>();
-//            while (rsOrderLine.next()) {
-//                items.add(new OrderLine(
-//                        rsOrderLine.getInt("orderId"),
-//                        rsOrderLine.getString("productCode"),
-//                        rsOrderLine.getInt("quantity")
-//                ));
-//            }
 
             if (!rsOrder.next()) {
-                return null;
+                throw new Order.OrderNotFoundException("Failed to find order with orderId ["+orderId+"]");
             }
 
-            Order order = new Order(
+            order = new Order(
                     rsOrder.getInt("orderId"),
                     rsOrder.getInt("personId"),
                     rsOrder.getDate("date"),
-                    Order.OrderStatus.valueOf(rsOrder.getString(4))//,
-//                    items
+                    Order.OrderStatus.valueOf(rsOrder.getString(4))
             );
-
-            return order;
+            // a single order is wanted for its contents, so load them now
+            fetchItems(List.of(order));
         } catch (SQLException e) {
-            DatabaseBridge.databaseError("Failed to fetch orders with orderId ["+orderId+"]", e);
+            DatabaseBridge.databaseError("Failed to fetch order with orderId ["+orderId+"]", e);
             throw e;
         }
+        return order;
     }
 
     /**
-     * Retrieves a list of orders with the specified statuses
+     * Retrieves a list of orders with the specified statuses, without their lines (see fetchItems())
      * @param statuses A variadic list of order statuses (PENDING, CONFIRMED, FULFILLED)
      * @return List of orders matching the specified statuses
      * @throws SQLException If a database error occurs during the retrieval process
@@ -189,49 +258,283 @@ public class Order extends DatabaseOperation.Entity implements DatabaseRecord {
         }
     }
 
+    /**
+     * Retrieves every order of a customer, newest first, without their lines (see fetchItems())
+     * @param personId The customer
+     * @return The customer's orders
+     * @throws SQLException
+     */
+    public static List<Order> getOrdersForCustomer(int personId) throws SQLException {
+        try (PreparedStatement orderQuery = prepareStatement("SELECT * FROM `Order` WHERE personId = ? ORDER BY date DESC")) {
+            orderQuery.setInt(1, personId);
+            ResultSet rs = orderQuery.executeQuery();
+
+            List<Order> orders = new ArrayList<Order>();
+            while (rs.next()) {
+                orders.add(new Order(
+                        rs.getInt("orderId"),
+                        rs.getInt("personId"),
+                        rs.getDate("date"),
+                        Order.OrderStatus.valueOf(rs.getString("status"))
+                ));
+            }
+            return orders;
+        } catch (SQLException e) {
+            DatabaseBridge.databaseError("Failed to fetch orders of person [" + personId + "]", e);
+            throw e;
+        }
+    }
+
+    /**
+     * Where a page of order history ends, pass it back to getOrderHistory() to get the page after it
+     * @param date The exact date of the last order on the page
+     * @param orderId The id of the last order on the page, breaks ties between orders placed at the same time
+     */
+    public record HistoryCursor(Timestamp date, int orderId) { }
+
+    /**
+     * @param orders The orders on this page, newest first, with their lines and products loaded
+     * @param next Where the next page starts, or null if this is the last page
+     */
+    public record HistoryPage(List<Order> orders, HistoryCursor next) { }
+
+    /**
+     * Reads one page of a customer's order history, newest first, in two queries however many orders and lines
+     * are on it: one for the orders and one for all of their lines, see fetchItems(). Only a line whose product is
+     * not in the catalog cache costs a query of its own, so the page comes back with every product loaded.
+     * @param personId The customer
+     * @param after Where the previous page ended, or null for the first page
+     * @param pageSize Orders per page
+     * @return The page and the cursor of the next one
+     * @throws SQLException
+     */
+    public static HistoryPage getOrderHistory(int personId, HistoryCursor after, int pageSize) throws SQLException {
+        String sql = "SELECT * FROM `Order` WHERE personId = ?"
+                + (after == null ? "" : " AND (date < ? OR (date = ? AND orderId < ?))")
+                + " ORDER BY date DESC, orderId DESC LIMIT ?";
+
+        List<Order> orders = new ArrayList<>();
+        HistoryCursor next = null;
+        try (PreparedStatement orderQuery = prepareStatement(sql)) {
+            int i = 1;
+            orderQuery.setInt(i++, personId);
+            if (after != null) {
+                orderQuery.setTimestamp(i++, after.date());
+                orderQuery.setTimestamp(i++, after.date());
+                orderQuery.setInt(i++, after.orderId());
+            }
+            // one more than a page, to know whether there is another page
+            orderQuery.setInt(i, pageSize + 1);
+
+            ResultSet rs = orderQuery.executeQuery();
+            HistoryCursor last = null;
+            while (rs.next()) {
+                if (orders.size() == pageSize) {
+                    next = last;
+                    break;
+                }
+                orders.add(new Order(
+                        rs.getInt("orderId"),
+                        rs.getInt("personId"),
+                        rs.getDate("date"),
+                        Order.OrderStatus.valueOf(rs.getString("status"))
+                ));
+                last = new HistoryCursor(rs.getTimestamp("date"), rs.getInt("orderId"));
+            }
+        } catch (SQLException e) {
+            DatabaseBridge.databaseError("Failed to fetch the order history of person [" + personId + "]", e);
+            throw e;
+        }
+
+        fetchItems(orders);
+        // products the catalog does not have, e.g. discontinued ones, are read here so the page is complete
+        for (Order order : orders) {
+            for (OrderLine line : order.items) {
+                if (!line.hasItem()) {
+                    line.getItem();
+                }
+            }
+        }
+        return new HistoryPage(orders, next);
+    }
+
+    /**
+     * The pieces of the order dashboard query, for getOrderSummaries() and for paging through it with a KeysetQuery.
+     * Read each row with summaryFromResultSet().
+     */
+    public static final String SUMMARY_SELECT = """
+            `Order`.orderId, `Order`.date, `Order`.status, `Order`.personId,
+            Person.forename, Person.surname, Person.email, Person.paymentId,
+            Address.houseNumber, Address.streetName, Address.postCode,
+            COALESCE(SUM(OrderLine.quantity), 0) AS itemCount,
+            COALESCE(SUM(OrderLine.quantity * Product.price), 0) AS totalCost""";
+    public static final String SUMMARY_FROM = """
+            `Order`
+                JOIN Person ON `Order`.personId = Person.PersonId
+                LEFT OUTER JOIN Address ON Person.houseName = Address.houseNumber AND Person.postCode = Address.postCode
+                LEFT OUTER JOIN OrderLine ON `Order`.orderId = OrderLine.orderId
+                LEFT OUTER JOIN Product ON OrderLine.productCode = Product.productCode""";
+    public static final String SUMMARY_GROUP_BY = """
+            `Order`.orderId, `Order`.date, `Order`.status, `Order`.personId,
+            Person.forename, Person.surname, Person.email, Person.paymentId,
+            Address.houseNumber, Address.streetName, Address.postCode""";
+
+    /**
+     * @param rs A result set positioned on a row selected with SUMMARY_SELECT
+     * @return The summary of that row
+     * @throws SQLException
+     */
+    public static OrderSummary summaryFromResultSet(ResultSet rs) throws SQLException {
+        String address = null;
+        if (rs.getString("streetName") != null) {
+            address = rs.getString("houseNumber") + " " + rs.getString("streetName") + ", " + rs.getString("postCode");
+        }
+
+        rs.getInt("paymentId");
+        boolean hasPayment = !rs.wasNull();
+
+        return new OrderSummary(
+                rs.getInt("orderId"),
+                rs.getDate("date"),
+                Order.OrderStatus.valueOf(rs.getString("status")),
+                rs.getInt("personId"),
+                rs.getString("forename") + " " + rs.getString("surname"),
+                rs.getString("email"),
+                address,
+                hasPayment,
+                rs.getInt("itemCount"),
+                rs.getDouble("totalCost")
+        );
+    }
+
+    /**
+     * Loads one page of the order dashboard in a single query: every order with the given statuses joined with its
+     * customer's name, email, address and payment presence, and the item count and cost of its lines. Unlike
+     * getOrdersWithStatus() nothing else is queried per order or per customer.
+     * @param sort Column to sort by, ties are broken by orderId so pages never overlap
+     * @param ascending Sort direction
+     * @param offset Number of rows to skip
+     * @param limit Maximum number of rows to return
+     * @param statuses A variadic list of order statuses (PENDING, CONFIRMED, FULFILLED)
+     * @return Up to limit summaries, in the requested order
+     * @throws SQLException
+     */
+    public static List<OrderSummary> getOrderSummaries(OrderSummary.Sort sort, boolean ascending, int offset, int limit,
+                                                       Order.OrderStatus... statuses) throws SQLException {
+        String sql = "SELECT " + SUMMARY_SELECT + " FROM " + SUMMARY_FROM
+                + " WHERE `Order`.status IN (" + "?,".repeat(statuses.length - 1) + "?)"
+                + " GROUP BY " + SUMMARY_GROUP_BY + sort.orderBy(ascending) + " LIMIT ? OFFSET ?";
+
+        try (PreparedStatement query = prepareStatement(sql)) {
+            int i = 1;
+            for (OrderStatus s : statuses) {
+                query.setString(i++, s.toString());
+            }
+            query.setInt(i++, limit);
+            query.setInt(i, offset);
+
+            ResultSet rs = query.executeQuery();
+            List<OrderSummary> summaries = new ArrayList<>();
+            while (rs.next()) {
+                summaries.add(summaryFromResultSet(rs));
+            }
+            return summaries;
+        } catch (SQLException e) {
+            DatabaseBridge.databaseError("Failed to fetch order summaries with statuses: " + Arrays.toString(statuses), e);
+            throw e;
+        }
+    }
+
+    /**
+     * @param statuses A variadic list of order statuses (PENDING, CONFIRMED, FULFILLED)
+     * @return How many orders have one of the statuses, i.e. the number of rows getOrderSummaries() can page through
+     * @throws SQLException
+     */
+    public static int countOrdersWithStatus(Order.OrderStatus... statuses) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM `Order` WHERE status IN (" + "?,".repeat(statuses.length - 1) + "?)";
+        try (PreparedStatement query = prepareStatement(sql)) {
+            int i = 1;
+            for (OrderStatus s : statuses) {
+                query.setString(i++, s.toString());
+            }
+
+            ResultSet rs = query.executeQuery();
+            rs.next();
+            return rs.getInt(1);
+        } catch (SQLException e) {
+            DatabaseBridge.databaseError("Failed to count orders with statuses: " + Arrays.toString(statuses), e);
+            throw e;
+        }
+    }
+
+    /**
+     * Inserts a new order and its order lines as one transaction, opens and closes its own connection
+     * @param order A new order, its orderId is set once it has been inserted
+     * @throws SQLException If the order or any of its lines could not be inserted, nothing is inserted in that case
+     */
     public static void createOrder(Order order) throws SQLException {
-        int id;
+        createOrders(List.of(order));
+    }
+
+    /**
+     * Inserts many new orders and all of their order lines as one transaction, in two batches (headers, then lines)
+     * no matter how many orders or lines there are. Opens and closes its own connection.
+     * @param orders New orders, each has its orderId set once they have all been inserted
+     * @throws SQLException If any order or line could not be inserted, nothing is inserted in that case
+     */
+    public static void createOrders(List<Order> orders) throws SQLException {
+        if (orders.isEmpty()) return;
 
         try {
             openConnection();
             setAutoCommit(false);
 
-            PreparedStatement s = prepareStatement("INSERT INTO `Order` VALUES (default,?,?,?)", Statement.RETURN_GENERATED_KEYS);
-            PreparedStatement r = prepareStatement("INSERT INTO OrderLine VALUES (?,?,?)");
-            Object[] fields = order.getFields().toArray();
-
-            s.setInt(1, (Integer) fields[0]); // personId
-            s.setString(2, (String) fields[1]); // date
-            s.setString(3, fields[2].toString()); // status
-            s.executeUpdate();
-
-            ResultSet rs = s.getGeneratedKeys();
-            if (rs.next()) {
-                id = rs.getInt(1);
-                order.setOrderId(id);
-            } else {
-                throw new InternalError("Failed to insert into Order table");
+            try (PreparedStatement s = prepareStatement("INSERT INTO `Order` VALUES (default,?,?,?)", Statement.RETURN_GENERATED_KEYS)) {
+                for (Order order : orders) {
+                    Object[] fields = order.getFields().toArray();
+                    s.setInt(1, (Integer) fields[0]); // personId
+                    s.setString(2, (String) fields[1]); // date
+                    s.setString(3, fields[2].toString()); // status
+                    s.addBatch();
+                }
+                s.executeBatch();
+
+                // keys come back in batch order, one per inserted header
+                ResultSet rs = s.getGeneratedKeys();
+                for (Order order : orders) {
+                    if (!rs.next()) {
+                        throw new InternalError("Failed to insert into Order table");
+                    }
+                    order.setOrderId(rs.getInt(1));
+                }
             }
 
-            int finalId = id;
-            order.getItemsList().forEach((item) -> {
-                Object[] olFields = item.getFields().toArray();
-
-                try {
-                    r.setInt(1, finalId);
-                    r.setString(2, olFields[1].toString());
-                    r.setInt(3, (Integer) olFields[2]);
-                    r.executeUpdate();
-                } catch (SQLException e) {
-                    DatabaseBridge.databaseError("Failed to insert new order line", e);
+            try (PreparedStatement r = prepareStatement("INSERT INTO OrderLine VALUES (?,?,?)")) {
+                boolean hasLines = false;
+                for (Order order : orders) {
+                    for (OrderLine item : order.getItemsList()) {
+                        item.setOrderId(order.getOrderId());
+                        Object[] olFields = item.getFields().toArray();
+
+                        r.setInt(1, order.getOrderId());
+                        r.setString(2, olFields[1].toString());
+                        r.setInt(3, (Integer) olFields[2]);
+                        r.addBatch();
+                        hasLines = true;
+                    }
                 }
-
-            });
+                if (hasLines) {
+                    r.executeBatch();
+                }
+            }
 
             commit();
         } catch (SQLException | InternalError e) {
-            DatabaseBridge.databaseError("Failed to insert new order", e);
+            DatabaseBridge.databaseError("Failed to insert new orders", e);
             rollback();
+            for (Order order : orders) {
+                order.setOrderId(-1);
+            }
             throw e;
         } finally {
             setAutoCommit(true);
@@ -272,7 +575,7 @@ public class Order extends DatabaseOperation.Entity implements DatabaseRecord {
     }
 
     public void addItem(Product product, Integer amount) {
-        for (OrderLine line : items) {
+        for (OrderLine line : getItemsList()) {
             if (line.getProductCode().equals(product.getProductCode())) {
                 line.setQuantity(line.getQuantity() + amount);
                 return;
@@ -282,22 +585,25 @@ public class Order extends DatabaseOperation.Entity implements DatabaseRecord {
         OrderLine ol = new OrderLine(orderId, product.getProductCode(), amount);
         ol.setItem(product);
 
-        items.add(ol);
+        getItemsList().add(ol);
     }
 
     public void removeItem(Product product) {
-        items.removeIf(line -> line.getProductCode().equals(product.getProductCode()));
+        getItemsList().removeIf(line -> line.getProductCode().equals(product.getProductCode()));
     }
 
+    /**
+     * @return The sum of every line's subtotal, at the prices the lines were given their products at
+     */
     public Double getTotalCost() {
-        if (items.isEmpty()) {
+        if (getItemsList().isEmpty()) {
             return 0.00;
         }
 
         Double total = 0.0;
         try {
-            for (OrderLine line : items) {
-                total += line.getItem().getPrice() * line.getQuantity();
+            for (OrderLine line : getItemsList()) {
+                total += line.getSubtotal();
             }
         } catch (SQLException e) {
             DatabaseBridge.databaseError("Failed to get product whilst tallying total cost", e);
@@ -307,16 +613,22 @@ public class Order extends DatabaseOperation.Entity implements DatabaseRecord {
         return total;
     }
 
+    /**
+     * Checks every line against the stock level of its product snapshot. This is only an early warning for the
+     * customer, OrderFulfillment checks the real stock level when the order is fulfilled.
+     * @throws OrderHasInsufficientStockException For the first line asking for more than is held
+     */
     public void checkStock() throws OrderHasInsufficientStockException {
-        if (items.isEmpty()) return;
+        if (getItemsList().isEmpty()) return;
 
         try {
-            for (OrderLine ol : items) {
+            for (OrderLine ol : getItemsList()) {
                 int quantity = ol.getQuantity();
-                int stock = ol.getItem().getStockLevel();
+                Product product = ol.getItem();
+                int stock = product.getStockLevel();
 
                 if (quantity > stock) {
-                    throw new OrderHasInsufficientStockException("Insufficient stock for item "+ol.getItem().getName()+", tried to purchase "+quantity+" but we only have "+stock+" in stock");
+                    throw new OrderHasInsufficientStockException("Insufficient stock for item "+product.getName()+", tried to purchase "+quantity+" but we only have "+stock+" in stock", List.of(ol));
                 }
             }
         } catch (SQLException e) {
@@ -0,0 +1,105 @@
+package entity.order;
+
+import db.DatabaseBridge;
+import db.DatabaseOperation;
+import entity.product.CatalogCache;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Fulfills a whole order as one transaction. Stock for every line is deducted in a single batch of conditional
+ * updates (stockLevel >= quantity is checked by the database, not read back first), so two staff terminals fulfilling
+ * at the same time can never take stock below zero, and the number of round trips does not grow with the order size.
+ * <br><br>
+ * If any line is short of stock nothing is changed and the failing lines are reported. The product rows are always
+ * locked in product code order, so fulfillments of orders that share products cannot deadlock each other.
+ * Needs an open connection, like the rest of the entity layer.
+ */
+public final class OrderFulfillment extends DatabaseOperation.Entity {
+    private static final String DEDUCT_STOCK =
+            "UPDATE Product SET stockLevel = stockLevel - ? WHERE productCode = ? AND stockLevel >= ?";
+    private static final String MARK_FULFILLED =
+            "UPDATE `Order` SET status = 'FULFILLED' WHERE orderId = ? AND status = 'CONFIRMED'";
+
+    /**
+     * This class should not be instantiated
+     */
+    private OrderFulfillment() { }
+
+    /**
+     * Deducts the stock for every line of the order and marks it as fulfilled, all or nothing
+     * @param order A confirmed order with its order lines loaded
+     * @throws Order.OrderHasInsufficientStockException If any line lacks stock, see getFailedLines()
+     * @throws IllegalStateException If the order is no longer CONFIRMED (e.g. another terminal fulfilled it first)
+     * @throws SQLException
+     */
+    public static void fulfill(Order order) throws SQLException, Order.OrderHasInsufficientStockException {
+        // every terminal locks the product rows in the same order, or two orders sharing products can deadlock
+        List<OrderLine> lines = new ArrayList<>(order.getItemsList());
+        lines.sort(Comparator.comparing(OrderLine::getProductCode));
+
+        setAutoCommit(false);
+        try {
+            // claim the order first so a concurrent fulfillment of the same order waits on the row lock, then fails
+            try (PreparedStatement markFulfilled = prepareStatement(MARK_FULFILLED)) {
+                markFulfilled.setInt(1, order.getOrderId());
+                if (markFulfilled.executeUpdate() == 0) {
+                    rollback();
+                    throw new IllegalStateException("Order [" + order.getOrderId() + "] is not awaiting fulfillment");
+                }
+            }
+
+            List<OrderLine> failed = new ArrayList<>();
+            if (!lines.isEmpty()) {
+                try (PreparedStatement deductStock = prepareStatement(DEDUCT_STOCK)) {
+                    for (OrderLine line : lines) {
+                        deductStock.setInt(1, line.getQuantity());
+                        deductStock.setString(2, line.getProductCode());
+                        deductStock.setInt(3, line.getQuantity());
+                        deductStock.addBatch();
+                    }
+
+                    int[] updated = deductStock.executeBatch();
+                    for (int i = 0; i < updated.length; i++) {
+                        if (updated[i] == 0) {
+                            failed.add(lines.get(i));
+                        }
+                    }
+                }
+            }
+
+            if (!failed.isEmpty()) {
+                rollback();
+                throw new Order.OrderHasInsufficientStockException(describe(order, failed), failed);
+            }
+
+            commit();
+            order.setStatus(Order.OrderStatus.FULFILLED);
+
+            List<String> productCodes = new ArrayList<>();
+            for (OrderLine line : lines) {
+                productCodes.add(line.getProductCode());
+            }
+            CatalogCache.invalidate(productCodes);
+        } catch (SQLException e) {
+            DatabaseBridge.databaseError("Failed to fulfill order [" + order.getOrderId() + "]", e);
+            rollback();
+            throw e;
+        } finally {
+            setAutoCommit(true);
+        }
+    }
+
+    private static String describe(Order order, List<OrderLine> failed) {
+        StringBuilder message = new StringBuilder("Insufficient stock to fulfill order [" + order.getOrderId() + "] for:");
+        for (OrderLine line : failed) {
+            message.append(" ").append(line.getProductCode()).append(" x").append(line.getQuantity()).append(",");
+        }
+        message.setLength(message.length() - 1);
+        return message.toString();
+    }
+}
@@ -5,7 +5,6 @@ import db.DatabaseRecord;
 import entity.product.Product;
 
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.List;
@@ -15,21 +14,56 @@ public class OrderLine extends DatabaseOperation.Entity implements DatabaseRecor
     private String productCode;
     private Integer quantity;
 
+    // a snapshot of the product taken when the line got it (from the catalog cache, whose products are never
+    // modified), and its price at that moment. Pricing and stock checks only ever read these.
     private Product item;
+    private Double unitPrice;
 
     public void setOrderId(Integer orderId) {
         this.orderId = orderId;
     }
 
+    /**
+     * @return The product snapshot, it is only read from the database (once) if the line was never given one
+     * @throws SQLException
+     */
     public Product getItem() throws SQLException {
-        if (item != null) {
-            return item;
+        if (item == null) {
+            setItem(Product.getProductByID(productCode));
         }
-        return Product.getProductByID(productCode);
+        return item;
     }
 
+    /**
+     * @param item The product this line is for, it is kept as is, so pass one that will not be modified
+     */
     public void setItem(Product item) {
         this.item = item;
+        this.unitPrice = item.getPrice();
+    }
+
+    /**
+     * @return Whether getItem() and the prices can be read without querying the database
+     */
+    public boolean hasItem() {
+        return item != null;
+    }
+
+    /**
+     * @return The price of one unit when the line got its product
+     * @throws SQLException If the product had to be read and that failed
+     */
+    public Double getUnitPrice() throws SQLException {
+        getItem();
+        return unitPrice;
+    }
+
+    /**
+     * @return Unit price times quantity
+     * @throws SQLException If the product had to be read and that failed
+     */
+    public Double getSubtotal() throws SQLException {
+        return getUnitPrice() * quantity;
     }
 
     public String getProductCode() {
@@ -49,23 +83,24 @@ public class OrderLine extends DatabaseOperation.Entity implements DatabaseRecor
         this.quantity = quantity;
     }
 
+    /**
+     * Deducts this line's quantity from stock, only if enough is held. Prefer OrderFulfillment for a whole order.
+     * The catalog is not told, pass the product code to CatalogCache.invalidate() once the write is committed, before
+     * that another connection would read the old stock level back into it.
+     * @return false if there was not enough stock, in which case nothing was changed
+     * @throws SQLException
+     */
     public boolean fulfill() throws SQLException {
-        PreparedStatement getStock = prepareStatement("SELECT stockLevel FROM Product WHERE productCode=?");
-        getStock.setString(1, productCode);
-        ResultSet res = getStock.executeQuery();
-        int stock = -1;
-        if (res.next()) {
-            stock = res.getInt(1);
-        } else {
-            throw new IllegalStateException("No product with that code");
+        try (PreparedStatement deductStock = prepareStatement(
+                "UPDATE Product SET stockLevel = stockLevel - ? WHERE productCode = ? AND stockLevel >= ?")) {
+            deductStock.setInt(1, quantity);
+            deductStock.setString(2, productCode);
+            deductStock.setInt(3, quantity);
+            if (deductStock.executeUpdate() == 0) {
+                return false;
+            }
         }
-
-        PreparedStatement deductStock = prepareStatement("UPDATE Product SET stockLevel=? WHERE productCode=?");
-        deductStock.setInt(1, stock - quantity);
-        deductStock.setString(2, productCode);
-        deductStock.executeUpdate();
-
-        return stock - quantity >= 0;
+        return true;
     }
 
     public List<Object> getFields() {
@@ -0,0 +1,57 @@
+package entity.order;
+
+import java.util.Date;
+
+/**
+ * One row of the staff order dashboard: an order header joined with its customer and the totals of its lines,
+ * as returned by Order.getOrderSummaries(). It is a read-only projection, load the Order itself to change it.
+ * @param orderId Primary key of the order
+ * @param date When the order was placed
+ * @param status Current status of the order
+ * @param customerId Primary key of the customer
+ * @param customerName Forename and surname of the customer
+ * @param email Email of the customer
+ * @param address The customer's address formatted like Address.toString(), or null if they have none
+ * @param hasPayment Whether the customer has bank details on file
+ * @param itemCount Total quantity over all lines of the order
+ * @param totalCost Sum of quantity * price over all lines of the order, at current prices
+ */
+public record OrderSummary(
+        int orderId,
+        Date date,
+        Order.OrderStatus status,
+        int customerId,
+        String customerName,
+        String email,
+        String address,
+        boolean hasPayment,
+        int itemCount,
+        double totalCost
+) {
+    /**
+     * The columns the dashboard can be sorted by, ties are always broken by orderId
+     */
+    public enum Sort {
+        ORDER_ID("`Order`.orderId"),
+        DATE("`Order`.date"),
+        CUSTOMER("Person.surname, Person.forename"),
+        EMAIL("Person.email"),
+        ITEMS("itemCount"),
+        TOTAL("totalCost");
+
+        private final String columns;
+
+        Sort(String columns) {
+            this.columns = columns;
+        }
+
+        /**
+         * @param ascending Sort direction
+         * @return The ORDER BY clause for this sort, built only from fixed column names
+         */
+        String orderBy(boolean ascending) {
+            String direction = ascending ? " ASC" : " DESC";
+            return " ORDER BY " + columns.replace(",", direction + ",") + direction + ", `Order`.orderId" + direction;
+        }
+    }
+}
@@ -16,6 +16,12 @@ public class BoxedSet extends Product{
         this.boxedSets = boxedSets;
     }
 
+    public BoxedSet(String productCode, String name, int stock, Double price, List<Pair<Component, Integer>> components, List<Pair<BoxedSet, Integer>> boxedSets) {
+        super(productCode, name, stock, price);
+        this.components = components;
+        this.boxedSets = boxedSets;
+    }
+
     public List<Pair<Component, Integer>> getComponents() {
         return components;
     }
@@ -0,0 +1,273 @@
+package entity.product;
+
+import db.DatabaseBridge;
+import db.DatabaseOperation;
+import org.javatuples.Pair;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Expands boxed sets from the BoxedSetContent adjacency list, loaded once, either in full (load()) or only as far as
+ * one set reaches (loadReachable()). Each set is resolved at most once (memoized), so shared sub-sets are not rebuilt
+ * per parent, and a set that (indirectly) contains itself is reported with a CyclicBoxedSetException instead of
+ * recursing forever.
+ * <br><br>
+ * An instance is a snapshot of the catalog at the time it was built, make a new one to see later changes.
+ */
+public final class BoxedSetResolver extends DatabaseOperation.Entity {
+    public static class CyclicBoxedSetException extends RuntimeException {
+        public CyclicBoxedSetException(String msg) {super(msg);}
+    }
+
+    private final Map<String, Product> products;
+    // boxSetProductCode -> (contentProductCode, quantity)
+    private final Map<String, List<Pair<String, Integer>>> contents;
+
+    private final Map<String, BoxedSet> resolved = new HashMap<>();
+    private final Map<String, Map<String, Integer>> billsOfMaterials = new HashMap<>();
+    private final LinkedHashSet<String> inProgress = new LinkedHashSet<>();
+
+    /**
+     * @param products Every product that can appear in a set, keyed by product code
+     * @param contents The BoxedSetContent adjacency list, see loadContents()
+     */
+    public BoxedSetResolver(Map<String, Product> products, Map<String, List<Pair<String, Integer>>> contents) {
+        this.products = products;
+        this.contents = contents;
+    }
+
+    /**
+     * Builds a resolver over the current database contents, this is two queries no matter how deeply sets are nested
+     * @return A resolver ready to use
+     * @throws SQLException
+     */
+    public static BoxedSetResolver load() throws SQLException {
+        return new BoxedSetResolver(ProductCatalog.loadProducts(), loadContents());
+    }
+
+    /**
+     * Builds a resolver over one boxed set and what it contains at any depth, reading a level of nesting at a time
+     * (two queries per level) instead of the whole catalog
+     * @param productCode Code of a boxed set (M or P)
+     * @return A resolver that can resolve that set
+     * @throws SQLException
+     */
+    public static BoxedSetResolver loadReachable(String productCode) throws SQLException {
+        Map<String, Product> products = new HashMap<>();
+        Map<String, List<Pair<String, Integer>>> contents = new HashMap<>();
+        Set<String> seen = new HashSet<>(List.of(productCode));
+        Set<String> level = Set.of(productCode);
+
+        while (!level.isEmpty()) {
+            Map<String, Product> loaded = ProductCatalog.loadProducts(level);
+            products.putAll(loaded);
+
+            List<String> boxedSetCodes = new ArrayList<>();
+            for (Product product : loaded.values()) {
+                if (product.isBoxedSet()) {
+                    boxedSetCodes.add(product.getProductCode());
+                }
+            }
+            Map<String, List<Pair<String, Integer>>> levelContents = loadContents(boxedSetCodes);
+            contents.putAll(levelContents);
+
+            Set<String> next = new LinkedHashSet<>();
+            for (List<Pair<String, Integer>> setContents : levelContents.values()) {
+                for (Pair<String, Integer> content : setContents) {
+                    // seen also stops a set that contains itself, resolve() reports that one
+                    if (seen.add(content.getValue0())) {
+                        next.add(content.getValue0());
+                    }
+                }
+            }
+            level = next;
+        }
+
+        return new BoxedSetResolver(products, contents);
+    }
+
+    /**
+     * Reads all of BoxedSetContent in one query
+     * @return A map of boxed set product code to its (content product code, quantity) pairs
+     * @throws SQLException
+     */
+    public static Map<String, List<Pair<String, Integer>>> loadContents() throws SQLException {
+        Map<String, List<Pair<String, Integer>>> contents = new HashMap<>();
+
+        try (PreparedStatement query = prepareStatement("SELECT boxSetProductCode, contentProductCode, quantity FROM BoxedSetContent")) {
+            ResultSet rs = query.executeQuery();
+            while (rs.next()) {
+                contents.computeIfAbsent(rs.getString("boxSetProductCode"), k -> new ArrayList<>())
+                        .add(new Pair<>(rs.getString("contentProductCode"), rs.getInt("quantity")));
+            }
+        } catch (SQLException e) {
+            DatabaseBridge.databaseError("Failed to load boxed set contents", e);
+            throw e;
+        }
+
+        return contents;
+    }
+
+    /**
+     * Reads the BoxedSetContent rows of the given boxed sets in one query
+     * @param boxSetProductCodes The boxed sets to read
+     * @return A map of boxed set product code to its (content product code, quantity) pairs, sets with no content are missing
+     * @throws SQLException
+     */
+    public static Map<String, List<Pair<String, Integer>>> loadContents(Collection<String> boxSetProductCodes) throws SQLException {
+        Map<String, List<Pair<String, Integer>>> contents = new HashMap<>();
+        if (boxSetProductCodes.isEmpty()) {
+            return contents;
+        }
+
+        String sql = "SELECT boxSetProductCode, contentProductCode, quantity FROM BoxedSetContent WHERE boxSetProductCode IN ("
+                + "?,".repeat(boxSetProductCodes.size() - 1) + "?)";
+        try (PreparedStatement query = prepareStatement(sql)) {
+            int i = 1;
+            for (String productCode : boxSetProductCodes) {
+                query.setString(i++, productCode);
+            }
+            ResultSet rs = query.executeQuery();
+            while (rs.next()) {
+                contents.computeIfAbsent(rs.getString("boxSetProductCode"), k -> new ArrayList<>())
+                        .add(new Pair<>(rs.getString("contentProductCode"), rs.getInt("quantity")));
+            }
+        } catch (SQLException e) {
+            DatabaseBridge.databaseError("Failed to load boxed set contents of " + boxSetProductCodes, e);
+            throw e;
+        }
+
+        return contents;
+    }
+
+    /**
+     * Expands a boxed set and everything inside it
+     * @param productCode Code of a boxed set (M or P)
+     * @return The set with its components and sub-sets filled in
+     * @throws CyclicBoxedSetException If the set contains itself at any depth
+     */
+    public BoxedSet resolve(String productCode) {
+        BoxedSet done = resolved.get(productCode);
+        if (done != null) {
+            return done;
+        }
+
+        enter(productCode);
+        try {
+            Product product = products.get(productCode);
+            if (product == null) {
+                throw new IllegalArgumentException("Product ID does not exist [" + productCode + "]");
+            }
+            if (!product.isBoxedSet()) {
+                throw new Product.ProductIsNotBoxedSetException("Tried to get boxedset of product [" + productCode + "]");
+            }
+
+            BoxedSet set;
+            if (product instanceof BoxedSet) {
+                set = (BoxedSet) product;
+                set.components = new ArrayList<>();
+                set.boxedSets = new ArrayList<>();
+            } else {
+                set = new BoxedSet(productCode, product.getName(), product.getStockLevel(), product.getPrice(),
+                        new ArrayList<>(), new ArrayList<>());
+            }
+
+            for (Pair<String, Integer> content : contentsOf(productCode)) {
+                Product item = products.get(content.getValue0());
+                if (item == null) {
+                    continue;
+                }
+                if (item.isBoxedSet()) {
+                    set.boxedSets.add(new Pair<>(resolve(item.getProductCode()), content.getValue1()));
+                } else if (item instanceof Component component) {
+                    set.components.add(new Pair<>(component, content.getValue1()));
+                }
+            }
+
+            resolved.put(productCode, set);
+            return set;
+        } finally {
+            inProgress.remove(productCode);
+        }
+    }
+
+    /**
+     * Resolves every boxed set in the catalog, a set with a cyclic definition is logged and left empty
+     * @return Every boxed set keyed by product code
+     */
+    public Map<String, BoxedSet> resolveAll() {
+        Map<String, BoxedSet> sets = new LinkedHashMap<>();
+        for (Product product : products.values()) {
+            if (!product.isBoxedSet()) continue;
+            try {
+                sets.put(product.getProductCode(), resolve(product.getProductCode()));
+            } catch (CyclicBoxedSetException e) {
+                DatabaseBridge.databaseError("Skipping boxed set [" + product.getProductCode() + "]", e);
+                if (product instanceof BoxedSet set) {
+                    set.components = new ArrayList<>();
+                    set.boxedSets = new ArrayList<>();
+                }
+            }
+        }
+        return sets;
+    }
+
+    /**
+     * Flattens a boxed set into the components needed to build it, multiplying quantities through nested sets
+     * @param productCode Code of a boxed set (M or P)
+     * @return component product code -> total quantity, in no particular order
+     * @throws CyclicBoxedSetException If the set contains itself at any depth
+     */
+    public Map<String, Integer> billOfMaterials(String productCode) {
+        Map<String, Integer> done = billsOfMaterials.get(productCode);
+        if (done != null) {
+            return done;
+        }
+
+        enter(productCode);
+        try {
+            Map<String, Integer> bill = new HashMap<>();
+            for (Pair<String, Integer> content : contentsOf(productCode)) {
+                String contentCode = content.getValue0();
+                int quantity = content.getValue1();
+                Product item = products.get(contentCode);
+
+                if (item != null && item.isBoxedSet()) {
+                    billOfMaterials(contentCode).forEach((code, amount) -> bill.merge(code, amount * quantity, Integer::sum));
+                } else {
+                    bill.merge(contentCode, quantity, Integer::sum);
+                }
+            }
+
+            Map<String, Integer> result = Collections.unmodifiableMap(bill);
+            billsOfMaterials.put(productCode, result);
+            return result;
+        } finally {
+            inProgress.remove(productCode);
+        }
+    }
+
+    private List<Pair<String, Integer>> contentsOf(String productCode) {
+        return contents.getOrDefault(productCode, Collections.emptyList());
+    }
+
+    private void enter(String productCode) {
+        if (!inProgress.add(productCode)) {
+            List<String> path = new ArrayList<>(inProgress);
+            path = path.subList(path.indexOf(productCode), path.size());
+            throw new CyclicBoxedSetException("Boxed set contains itself: " + String.join(" -> ", path) + " -> " + productCode);
+        }
+    }
+}
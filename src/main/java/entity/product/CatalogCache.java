@@ -0,0 +1,228 @@
+package entity.product;
+
+import db.DatabaseOperation;
+import org.javatuples.Pair;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The process-wide product catalog, keyed by product code. It is loaded in full once (see ProductCatalog), after
+ * that every write to a product should report which product codes it touched, through refresh(), invalidate() or
+ * remove(), so only those entries are fetched again and screens are told what changed instead of reloading everything.
+ * <br><br>
+ * Readers always get an immutable snapshot, the Product instances in it are never modified after being published,
+ * a change publishes new instances instead. Methods that may have to read the database need an open connection,
+ * like the rest of the entity layer. This class is thread-safe.
+ */
+public final class CatalogCache extends DatabaseOperation.Entity {
+    /**
+     * Told about every change to the catalog, on the thread that made the change
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * @param productCodes The products that were added, updated, invalidated or removed
+         */
+        void catalogChanged(Set<String> productCodes);
+    }
+
+    private static final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // guarded by CatalogCache.class, products == null means nothing has been loaded yet
+    private static TreeMap<String, Product> products = null;
+    private static Map<String, List<Pair<String, Integer>>> contents = null;
+    private static final Set<String> stale = new HashSet<>();
+
+    private static volatile Map<String, Product> snapshot = Collections.emptyMap();
+
+    /**
+     * This class should not be instantiated
+     */
+    private CatalogCache() { }
+
+    public static void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public static void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return Every product ordered by product code, only queries the database on first use or for stale entries
+     * @throws SQLException
+     */
+    public static List<Product> getAll() throws SQLException {
+        return new ArrayList<>(getAllByCode().values());
+    }
+
+    /**
+     * @return An immutable map of every product ordered by product code, see getAll()
+     * @throws SQLException
+     */
+    public static synchronized Map<String, Product> getAllByCode() throws SQLException {
+        ensureFresh();
+        return snapshot;
+    }
+
+    /**
+     * @param productCode A product code
+     * @return The cached product, or null if there is no such product
+     * @throws SQLException
+     */
+    public static synchronized Product get(String productCode) throws SQLException {
+        ensureFresh();
+        return snapshot.get(productCode);
+    }
+
+    /**
+     * Re-reads the given products right away, call it once the write that changed them has been committed
+     * @param productCodes Products that were created or updated
+     * @throws SQLException
+     */
+    public static void refresh(String... productCodes) throws SQLException {
+        refresh(List.of(productCodes));
+    }
+
+    /**
+     * @see #refresh(String...)
+     */
+    public static void refresh(Collection<String> productCodes) throws SQLException {
+        if (productCodes.isEmpty()) return;
+        synchronized (CatalogCache.class) {
+            if (products != null) {
+                reload(productCodes);
+            }
+        }
+        fire(productCodes);
+    }
+
+    /**
+     * Marks the given products as out of date, they are fetched again the next time the catalog is read. Use this
+     * instead of refresh() inside a transaction that might still be rolled back.
+     * @param productCodes Products whose rows have changed
+     */
+    public static void invalidate(Collection<String> productCodes) {
+        if (productCodes.isEmpty()) return;
+        synchronized (CatalogCache.class) {
+            if (products != null) {
+                stale.addAll(productCodes);
+            }
+        }
+        fire(productCodes);
+    }
+
+    /**
+     * Drops a deleted product from the catalog, boxed sets that contained it are rebuilt without it
+     * @param productCode The deleted product
+     */
+    public static void remove(String productCode) {
+        synchronized (CatalogCache.class) {
+            if (products != null) {
+                products.remove(productCode);
+                contents.remove(productCode);
+                stale.remove(productCode);
+                publish();
+            }
+        }
+        fire(List.of(productCode));
+    }
+
+    /**
+     * Forgets everything, the whole catalog is loaded again on the next read
+     */
+    public static void clear() {
+        synchronized (CatalogCache.class) {
+            products = null;
+            contents = null;
+            stale.clear();
+            snapshot = Collections.emptyMap();
+        }
+        fire(List.of());
+    }
+
+    private static void ensureFresh() throws SQLException {
+        if (products == null) {
+            Map<String, Product> loaded = ProductCatalog.loadProducts();
+            contents = BoxedSetResolver.loadContents();
+            products = new TreeMap<>(loaded);
+            stale.clear();
+            publish();
+        } else if (!stale.isEmpty()) {
+            // only forgotten once they have been read again, a failed reload leaves them stale for the next read
+            List<String> codes = new ArrayList<>(stale);
+            reload(codes);
+            stale.removeAll(codes);
+        }
+    }
+
+    private static void reload(Collection<String> productCodes) throws SQLException {
+        Set<String> codes = new LinkedHashSet<>(productCodes);
+        Map<String, Product> loaded = ProductCatalog.loadProducts(codes);
+
+        List<String> boxedSetCodes = new ArrayList<>();
+        for (String code : codes) {
+            char productTypeIdentifier = code.charAt(0);
+            if (productTypeIdentifier == 'M' || productTypeIdentifier == 'P') {
+                boxedSetCodes.add(code);
+            }
+        }
+        Map<String, List<Pair<String, Integer>>> loadedContents = BoxedSetResolver.loadContents(boxedSetCodes);
+
+        for (String code : codes) {
+            Product product = loaded.get(code);
+            if (product == null) {
+                products.remove(code);
+            } else {
+                products.put(code, product);
+            }
+        }
+        for (String code : boxedSetCodes) {
+            List<Pair<String, Integer>> setContents = loadedContents.get(code);
+            if (setContents == null) {
+                contents.remove(code);
+            } else {
+                contents.put(code, setContents);
+            }
+        }
+
+        publish();
+    }
+
+    /**
+     * Rebuilds the boxed sets over the current products and publishes a new snapshot, without touching the
+     * instances of the previous snapshot (readers on other threads may still be using them)
+     */
+    private static void publish() {
+        TreeMap<String, Product> next = new TreeMap<>();
+        for (Product product : products.values()) {
+            if (product instanceof BoxedSet set) {
+                next.put(set.getProductCode(), new BoxedSet(set.getProductCode(), set.getName(), set.getStockLevel(),
+                        set.getPrice(), new ArrayList<>(), new ArrayList<>()));
+            } else {
+                next.put(product.getProductCode(), product);
+            }
+        }
+        new BoxedSetResolver(next, contents).resolveAll();
+
+        products = next;
+        snapshot = Collections.unmodifiableMap(next);
+    }
+
+    private static void fire(Collection<String> productCodes) {
+        Set<String> changed = Collections.unmodifiableSet(new LinkedHashSet<>(productCodes));
+        for (Listener listener : listeners) {
+            listener.catalogChanged(changed);
+        }
+    }
+}
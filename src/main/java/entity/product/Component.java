@@ -25,6 +25,13 @@ public class Component extends Product{
         this.gauge = gauge;
     }
 
+    public Component(String productCode, String name, int stock, Double price, String brand, String era, Gauge gauge) {
+        super(productCode, name, stock, price);
+        this.brand = brand;
+        this.era = era;
+        this.gauge = gauge;
+    }
+
     public String getBrand() {
         return brand;
     }
@@ -13,6 +13,11 @@ public class Controller extends Component{
         this.controlType = controlType;
     }
 
+    public Controller(String productCode, String name, int stock, Double price, String brand, String era, ControlType controlType) {
+        super(productCode, name, stock, price, brand, era, Gauge.NONE);
+        this.controlType = controlType;
+    }
+
     public ControlType getControlType() {
         return controlType;
     }
@@ -26,6 +26,11 @@ public class Locomotive extends Component{
         this.priceBracket = priceBracket;
     }
 
+    public Locomotive(String productCode, String name, int stock, Double price, String brand, String era, Gauge gauge, PriceBracket priceBracket) {
+        super(productCode, name, stock, price, brand, era, gauge);
+        this.priceBracket = priceBracket;
+    }
+
     public PriceBracket getPriceBracket() {
         return priceBracket;
     }
@@ -3,13 +3,11 @@ package entity.product;
 import db.DatabaseBridge;
 import db.DatabaseOperation;
 import db.DatabaseRecord;
-import org.javatuples.Pair;
 
 import javax.xml.transform.Result;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -45,7 +43,7 @@ public class Product extends DatabaseOperation.Entity implements DatabaseRecord
         this.price = price;
     }
 
-    private Product(String productCode, String name, int stock, Double price) {
+    protected Product(String productCode, String name, int stock, Double price) {
         this.productCode = productCode;
         this.name = name;
         this.stockLevel = stock;
@@ -79,8 +77,7 @@ public class Product extends DatabaseOperation.Entity implements DatabaseRecord
      * @throws SQLException
      */
     public static Product getProductByID(String productCode) throws SQLException {
-        try {
-            PreparedStatement query = prepareStatement("SELECT * FROM Product WHERE productCode = ?");
+        try (PreparedStatement query = prepareStatement("SELECT * FROM Product WHERE productCode = ?")) {
             query.setString(1, productCode);
 
             ResultSet res = query.executeQuery();
@@ -142,30 +139,14 @@ public class Product extends DatabaseOperation.Entity implements DatabaseRecord
         if (!isBoxedSet()) {
             throw new ProductIsNotBoxedSetException("Tried to get boxedset of product [" + productCode + "]");
         }
+        // already hydrated (e.g. by ProductCatalog), no need to go back to the database
+        if (this instanceof BoxedSet) {
+            return (BoxedSet) this;
+        }
 
         try {
-            PreparedStatement q = prepareStatement("SELECT contentProductCode, quantity FROM BoxedSetContent WHERE boxSetProductCode = ?");
-            q.setString(1, productCode);
-
-            List<Pair<Component, Integer>> componentList = new ArrayList<>();
-            List<Pair<BoxedSet, Integer>> boxedSetList = new ArrayList<>();
-
-            ResultSet rs = q.executeQuery();
-            while (rs.next()) {
-                // This is stupid
-                int quantity = rs.getInt("quantity");
-                Product product = getProductByID(rs.getString("contentProductCode"));
-                if (product.isComponent()) {
-                    Component component = product.getComponent();
-                    componentList.add(new Pair<>(component, quantity));
-                } else {
-                    BoxedSet boxedSet = product.getBoxedSet();
-                    boxedSetList.add(new Pair<>(boxedSet, quantity));
-                }
-            }
-
-            return new BoxedSet(name, stockLevel, price, componentList, boxedSetList);
-
+            // loads only what this set contains, a level of nesting per round trip, and expands each nested set once
+            return BoxedSetResolver.loadReachable(productCode).resolve(productCode);
         } catch (SQLException e) {
             DatabaseBridge.databaseError("Failed to fetch boxed-set components for set ["+productCode+"]");
             throw e;
@@ -176,6 +157,9 @@ public class Product extends DatabaseOperation.Entity implements DatabaseRecord
         if (!isComponent()) {
             throw new ProductIsNotComponentException("Tried to get component of product [" + productCode + "]");
         }
+        if (this instanceof Component) {
+            return (Component) this;
+        }
 
         // First char of product code identifies product type
         char productTypeIdentifier = productCode.charAt(0);
@@ -196,6 +180,7 @@ public class Product extends DatabaseOperation.Entity implements DatabaseRecord
                     }
 
                     return new Locomotive(
+                            productCode,
                             name,
                             stockLevel,
                             price,
@@ -223,6 +208,7 @@ public class Product extends DatabaseOperation.Entity implements DatabaseRecord
                     }
 
                     return new Controller(
+                            productCode,
                             name,
                             stockLevel,
                             price,
@@ -249,6 +235,7 @@ public class Product extends DatabaseOperation.Entity implements DatabaseRecord
                     }
 
                     return new Track(
+                            productCode,
                             name,
                             stockLevel,
                             price,
@@ -272,6 +259,7 @@ public class Product extends DatabaseOperation.Entity implements DatabaseRecord
                     }
 
                     return new Component(
+                            productCode,
                             name,
                             stockLevel,
                             price,
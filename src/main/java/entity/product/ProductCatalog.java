@@ -0,0 +1,151 @@
+package entity.product;
+
+import db.DatabaseBridge;
+import db.DatabaseOperation;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads the whole product catalog in two set-based queries, every product comes back already hydrated as its
+ * most specific type (Locomotive, Track, Controller, Component or BoxedSet), so getComponent()/getBoxedSet() on the
+ * results never touch the database again.
+ * <br><br>
+ * Needs an open connection, like the rest of the entity layer.
+ */
+public final class ProductCatalog extends DatabaseOperation.Entity {
+    private static final String CATALOG_SELECT = """
+            SELECT Product.productCode, name, stockLevel, price, brand, era, gauge, priceBracket, curvature, controlType
+            FROM Product
+                     LEFT OUTER JOIN Component ON Product.productCode = Component.productCode
+                     LEFT OUTER JOIN Locomotive ON Component.productCode = Locomotive.productCode
+                     LEFT OUTER JOIN Track ON Component.productCode = Track.productCode
+                     LEFT OUTER JOIN Controller ON Component.productCode = Controller.productCode
+            """;
+    private static final String CATALOG_QUERY = CATALOG_SELECT + "ORDER BY Product.productCode";
+
+    /**
+     * This class should not be instantiated
+     */
+    private ProductCatalog() { }
+
+    /**
+     * Loads every product, component subtype and boxed set content in two queries
+     * @return Every product ordered by product code
+     * @throws SQLException
+     */
+    public static List<Product> loadAll() throws SQLException {
+        return new ArrayList<>(loadAllByCode().values());
+    }
+
+    /**
+     * Same as loadAll() but keyed by product code
+     * @return Every product ordered by product code
+     * @throws SQLException
+     */
+    public static Map<String, Product> loadAllByCode() throws SQLException {
+        Map<String, Product> products = loadProducts();
+        new BoxedSetResolver(products, BoxedSetResolver.loadContents()).resolveAll();
+        return products;
+    }
+
+    /**
+     * Loads every product with its component subtype in one query, boxed sets come back with no content
+     * @return Every product ordered by product code
+     * @throws SQLException
+     */
+    static Map<String, Product> loadProducts() throws SQLException {
+        Map<String, Product> products = new LinkedHashMap<>();
+
+        try (PreparedStatement query = prepareStatement(CATALOG_QUERY)) {
+            ResultSet rs = query.executeQuery();
+            while (rs.next()) {
+                Product product = productFromRow(rs);
+                products.put(product.getProductCode(), product);
+            }
+        } catch (SQLException e) {
+            DatabaseBridge.databaseError("Failed to load the product catalog", e);
+            throw e;
+        }
+
+        return products;
+    }
+
+    /**
+     * Loads only the given products with their component subtype in one query, boxed sets come back with no content.
+     * Codes that no longer exist are simply missing from the result.
+     * @param productCodes The products to load
+     * @return The products found, ordered by product code
+     * @throws SQLException
+     */
+    static Map<String, Product> loadProducts(Collection<String> productCodes) throws SQLException {
+        Map<String, Product> products = new LinkedHashMap<>();
+        if (productCodes.isEmpty()) {
+            return products;
+        }
+
+        String sql = CATALOG_SELECT + "WHERE Product.productCode IN (" + "?,".repeat(productCodes.size() - 1) + "?) ORDER BY Product.productCode";
+        try (PreparedStatement query = prepareStatement(sql)) {
+            int i = 1;
+            for (String productCode : productCodes) {
+                query.setString(i++, productCode);
+            }
+            ResultSet rs = query.executeQuery();
+            while (rs.next()) {
+                Product product = productFromRow(rs);
+                products.put(product.getProductCode(), product);
+            }
+        } catch (SQLException e) {
+            DatabaseBridge.databaseError("Failed to load products " + productCodes, e);
+            throw e;
+        }
+
+        return products;
+    }
+
+    /**
+     * Builds the most specific product type a catalog row describes
+     * @param rs A result set positioned on a row of CATALOG_QUERY
+     * @return A hydrated product, or a plain Product if its component rows are missing
+     * @throws SQLException
+     */
+    static Product productFromRow(ResultSet rs) throws SQLException {
+        String productCode = rs.getString("productCode");
+        String name = rs.getString("name");
+        int stock = rs.getInt("stockLevel");
+        Double price = rs.getDouble("price");
+
+        char productTypeIdentifier = productCode.charAt(0);
+        if (productTypeIdentifier == 'M' || productTypeIdentifier == 'P') {
+            return new BoxedSet(productCode, name, stock, price, new ArrayList<>(), new ArrayList<>());
+        }
+
+        String brand = rs.getString("brand");
+        if (brand == null) {
+            return new Product(productCode, name, stock, price);
+        }
+        String era = rs.getString("era");
+        Component.Gauge gauge = Component.Gauge.valueOf(rs.getString("gauge"));
+
+        String priceBracket = rs.getString("priceBracket");
+        String curvature = rs.getString("curvature");
+        String controlType = rs.getString("controlType");
+
+        if (productTypeIdentifier == 'L' && priceBracket != null) {
+            return new Locomotive(productCode, name, stock, price, brand, era, gauge, Locomotive.PriceBracket.get(priceBracket));
+        }
+        if (productTypeIdentifier == 'R' && curvature != null) {
+            return new Track(productCode, name, stock, price, brand, era, gauge, Track.Curvature.get(curvature));
+        }
+        if (productTypeIdentifier == 'C' && controlType != null) {
+            return new Controller(productCode, name, stock, price, brand, era, Controller.ControlType.valueOf(controlType));
+        }
+        return new Component(productCode, name, stock, price, brand, era, gauge);
+    }
+}
@@ -32,6 +32,12 @@ public class Track extends Component {
         this.curvature = curvature;
     }
 
+    public Track(String productCode, String name, int stock, Double price, String brand, String era, Gauge gauge, Curvature curvature) {
+        super(productCode, name, stock, price, brand, era, gauge);
+
+        this.curvature = curvature;
+    }
+
     public Curvature getCurvature() {
         return curvature;
     }
@@ -5,13 +5,20 @@ import db.DatabaseOperation;
 import db.DatabaseRecord;
 import entity.Address;
 import entity.BankDetail;
+import entity.IdentityMap;
 import entity.order.Order;
+import utils.FormValidator;
 
 import java.security.InvalidKeyException;
 import java.sql.*;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 public class Person extends DatabaseOperation.Entity implements DatabaseRecord {
     public enum Role {
@@ -115,6 +122,7 @@ public class Person extends DatabaseOperation.Entity implements DatabaseRecord {
      * @param houseNumber
      * @param postCode
      * @param bankDetailsID
+     * @param address The address if it was loaded alongside the person, or null to look it up
      */
     private Person(
             int id,
@@ -126,6 +134,7 @@ public class Person extends DatabaseOperation.Entity implements DatabaseRecord {
             String postCode,
             int bankDetailsID,
             Role role,
+            Address address,
             boolean decrypt
     ) throws SQLException, InvalidKeyException {
         this.personID =      id;
@@ -138,15 +147,30 @@ public class Person extends DatabaseOperation.Entity implements DatabaseRecord {
         this.bankDetailsID = bankDetailsID;
         this.role = role;
 
-        reloadAddress();
+        if (address != null) {
+            this.address = address;
+        } else {
+            reloadAddress();
+        }
 
         if (decrypt) {
-            try {
-                BankDetail bankDetail = BankDetail.getBankDetailsById(bankDetailsID);
-                this.bankDetail = bankDetail;
-            } catch (BankDetail.BankAccountNotFoundException e) {
-                this.bankDetail = null;
-            }
+            loadBankDetail();
+        }
+    }
+
+    /**
+     * Decrypts this person's bank details if that has not been done yet, needs the user's encryption key
+     */
+    private void loadBankDetail() throws SQLException {
+        if (bankDetail != null || bankDetailsID == -1) {
+            return;
+        }
+        try {
+            this.bankDetail = BankDetail.getBankDetailsById(bankDetailsID);
+        } catch (BankDetail.BankAccountNotFoundException e) {
+            this.bankDetail = null;
+        } catch (InvalidKeyException e) {
+            throw new RuntimeException(e);
         }
     }
 
@@ -182,16 +206,14 @@ public class Person extends DatabaseOperation.Entity implements DatabaseRecord {
      * @throws SQLException
      */
     public static Person getPersonByEmail(String email) throws SQLException {
-        PreparedStatement personQuery = prepareStatement("SELECT * FROM Person WHERE email=?");
-        personQuery.setString(1, email);
-        ResultSet res = personQuery.executeQuery();
-        return personFromResultSet(res, true);
+        return getPersonByEmail(email, true);
     }
     public static Person getPersonByEmail(String email, boolean status) throws SQLException {
-        PreparedStatement personQuery = prepareStatement("SELECT * FROM Person WHERE email=?");
-        personQuery.setString(1, email);
-        ResultSet res = personQuery.executeQuery();
-        return personFromResultSet(res, status);
+        try (PreparedStatement personQuery = prepareStatement("SELECT * FROM Person WHERE email=?")) {
+            personQuery.setString(1, email);
+            ResultSet res = personQuery.executeQuery();
+            return personFromResultSet(res, status);
+        }
     }
 
     /**
@@ -201,35 +223,151 @@ public class Person extends DatabaseOperation.Entity implements DatabaseRecord {
      * @throws SQLException
      */
     public static Person getPersonByID(int id) throws SQLException {
-        PreparedStatement personQuery = prepareStatement("SELECT * FROM Person WHERE personId=?");
-        personQuery.setInt(1, id);
-        ResultSet res = personQuery.executeQuery();
-        return personFromResultSet(res, false);
+        return getPersonByID(id, false);
     }
 
     public static Person getPersonByID(int id, boolean decrypt) throws SQLException {
-        PreparedStatement personQuery = prepareStatement("SELECT * FROM Person WHERE personId=?");
-        personQuery.setInt(1, id);
-        ResultSet res = personQuery.executeQuery();
-        return personFromResultSet(res, decrypt);
+        Person cached = IdentityMap.get(Person.class, id);
+        if (cached != null) {
+            if (decrypt) {
+                cached.loadBankDetail();
+            }
+            return cached;
+        }
+
+        try (PreparedStatement personQuery = prepareStatement("SELECT * FROM Person WHERE personId=?")) {
+            personQuery.setInt(1, id);
+            ResultSet res = personQuery.executeQuery();
+            return personFromResultSet(res, decrypt);
+        }
+    }
+
+    /**
+     * Gets many people at once, with their roles and addresses, in one query. People already loaded in this unit of
+     * work are reused and not queried again. DOES NOT SET THE BANK DETAILS FIELDS
+     * @param ids Ids of people, duplicates are fine
+     * @return id -> Person for every id that exists, in the order the ids were given
+     * @throws SQLException
+     */
+    public static Map<Integer, Person> getPersonsByIds(Collection<Integer> ids) throws SQLException {
+        Map<Integer, Person> persons = new LinkedHashMap<>();
+        Set<Integer> missing = new LinkedHashSet<>();
+        for (Integer id : ids) {
+            Person cached = IdentityMap.get(Person.class, id);
+            if (cached != null) {
+                persons.put(id, cached);
+            } else {
+                persons.put(id, null); // keeps the order of the ids
+                missing.add(id);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            String sql = """
+                    SELECT Person.*, Address.houseNumber, Address.streetName, Address.cityName, Address.postCode AS addressPostCode, Role.role
+                    FROM Person
+                             LEFT OUTER JOIN Address ON Person.houseName = Address.houseNumber AND Person.postCode = Address.postCode
+                             LEFT OUTER JOIN Role ON Person.PersonId = Role.personId
+                    WHERE Person.PersonId IN (""" + "?,".repeat(missing.size() - 1) + "?)";
+
+            try (PreparedStatement query = prepareStatement(sql)) {
+                int i = 1;
+                for (Integer id : missing) {
+                    query.setInt(i++, id);
+                }
+
+                // one row per role, so a person may come back more than once
+                ResultSet res = query.executeQuery();
+                while (res.next()) {
+                    int id = res.getInt("PersonId");
+                    Role roleValue = res.getString("role") == null ? Role.USER : Role.valueOf(res.getString("role"));
+
+                    Person person = persons.get(id);
+                    if (person != null) {
+                        if (roleValue.getLevel() > person.role.getLevel()) {
+                            person.role = roleValue;
+                        }
+                        continue;
+                    }
+
+                    Address address = null;
+                    if (res.getString("streetName") != null) {
+                        List<String> addressKey = List.of(res.getString("houseNumber"), res.getString("addressPostCode"));
+                        address = IdentityMap.get(Address.class, addressKey);
+                        if (address == null) {
+                            address = new Address(
+                                    res.getString("houseNumber"),
+                                    res.getString("streetName"),
+                                    res.getString("cityName"),
+                                    res.getString("addressPostCode")
+                            );
+                            IdentityMap.put(Address.class, addressKey, address);
+                        }
+                    }
+
+                    // By default, if an integer value is null, JDBC returns 0 - we want it to be -1
+                    int paymentID = res.getInt("paymentId");
+                    if (res.wasNull()) {
+                        paymentID = -1;
+                    }
+
+                    person = new Person(
+                            id,
+                            res.getString("forename"),
+                            res.getString("surname"),
+                            res.getString("email"),
+                            res.getString("password"),
+                            res.getString("houseName"),
+                            res.getString("postCode"),
+                            paymentID,
+                            roleValue,
+                            address,
+                            false
+                    );
+                    persons.put(id, person);
+                }
+            } catch (InvalidKeyException e) {
+                throw new RuntimeException(e);
+            } catch (SQLException e) {
+                DatabaseBridge.databaseError("Failed to fetch persons with ids " + missing, e);
+                throw e;
+            }
+
+            for (Integer id : missing) {
+                IdentityMap.put(Person.class, id, persons.get(id));
+            }
+        }
+
+        persons.values().removeIf(Objects::isNull);
+        return persons;
     }
 
     private static Person personFromResultSet(ResultSet res, boolean decrypt) throws SQLException {
         try {
             Person person;
             if (res.next()) {
-                PreparedStatement roleQuery = prepareStatement("SELECT * FROM Role WHERE personId=?");
-
                 int id = res.getInt(1);
-                roleQuery.setInt(1, id);
-                ResultSet roles = roleQuery.executeQuery();
+
+                // already loaded in this unit of work, skip the role and address queries
+                Person cached = IdentityMap.get(Person.class, id);
+                if (cached != null) {
+                    if (decrypt) {
+                        cached.loadBankDetail();
+                    }
+                    return cached;
+                }
 
                 Role userRole = Role.USER;
-                // get the highest priviledge role this user has and use that
-                while (roles.next()) {
-                    Role roleValue = Role.valueOf(roles.getString(2));
-                    if (roleValue.getLevel() > userRole.getLevel())
-                        userRole = roleValue;
+                try (PreparedStatement roleQuery = prepareStatement("SELECT * FROM Role WHERE personId=?")) {
+                    roleQuery.setInt(1, id);
+                    ResultSet roles = roleQuery.executeQuery();
+
+                    // get the highest priviledge role this user has and use that
+                    while (roles.next()) {
+                        Role roleValue = Role.valueOf(roles.getString(2));
+                        if (roleValue.getLevel() > userRole.getLevel())
+                            userRole = roleValue;
+                    }
                 }
 
                 // By default, if an integer value is null, JDBC returns 0 - we want it to be -1
@@ -248,9 +386,11 @@ public class Person extends DatabaseOperation.Entity implements DatabaseRecord {
                         res.getString(7),   // postcode
                         paymentID,      // bank details
                         userRole,
+                        null,
                         decrypt
                 );
 
+                IdentityMap.put(Person.class, id, person);
                 return person;
             } else {
                 return null;
@@ -267,9 +407,13 @@ public class Person extends DatabaseOperation.Entity implements DatabaseRecord {
      * @throws SQLException
      */
     public static Boolean createPerson(Person person) throws SQLException {
-        // do not insert this person if an account with their email already exists
-        if (getPersonByEmail(person.getEmail()) != null) {
-            return false;
+        // do not insert this person if an account with their email already exists; only whether it does, loading
+        // it would decrypt its bank details with a key that is not theirs
+        try (PreparedStatement existing = prepareStatement("SELECT 1 FROM Person WHERE email=?")) {
+            existing.setString(1, person.getEmail());
+            if (existing.executeQuery().next()) {
+                return false;
+            }
         }
 
         setAutoCommit(false);
@@ -308,6 +452,7 @@ public class Person extends DatabaseOperation.Entity implements DatabaseRecord {
 
             person.reloadAddress();
             person.personID = id;
+            IdentityMap.put(Person.class, id, person);
         } catch (SQLException | InternalError e) {
             DatabaseBridge.databaseError("Failed to insert new user", e);
             rollback();
@@ -336,6 +481,7 @@ public class Person extends DatabaseOperation.Entity implements DatabaseRecord {
             query.setString(1, newRole.toString());
             query.setInt(2, person.getId());
 
+            IdentityMap.remove(Person.class, person.getId());
             return query.executeUpdate() > 0;
         } catch (SQLException e) {
             DatabaseBridge.databaseError("Failed to update user with email ["+person.getEmail()+"] to role ["+newRole.toString()+"]", e);
@@ -359,6 +505,10 @@ public class Person extends DatabaseOperation.Entity implements DatabaseRecord {
         return list;
     }
 
+    /**
+     * Checks every field, see FormValidator.personalDetails()
+     * @throws IllegalArgumentException With every error, one per line
+     */
     public static void validatePersonalDetails(
             String forename,
             String surname,
@@ -368,29 +518,9 @@ public class Person extends DatabaseOperation.Entity implements DatabaseRecord {
             String cityName,
             String postCode
     ) throws IllegalArgumentException {
-        if (forename.isEmpty() || forename == null) {
-            throw new IllegalArgumentException("Forename is a compulsory field");
-        }
-        if (surname.isEmpty() || surname == null) {
-            throw new IllegalArgumentException("Surname is a compulsory field");
-        }
-        if (email.isEmpty() || email == null) {
-            throw new IllegalArgumentException("Email is a compulsory field");
-        }
-        if (houseNumber.isEmpty() || houseNumber == null) {
-            throw new IllegalArgumentException("House number is a compulsory field");
-        }
-        if (streetName.isEmpty() || streetName == null) {
-            throw new IllegalArgumentException("Street name is a compulsory field");
-        }
-        if (cityName.isEmpty() || cityName == null) {
-            throw new IllegalArgumentException("City name is a compulsory field");
-        }
-        if(!Address.validatePostcode(postCode)){
-            throw new IllegalArgumentException("Invalid postcode");
-        }
-        if(!validateEmail(email)){
-            throw new IllegalArgumentException("Invalid email");
+        FormValidator.Result result = FormValidator.personalDetails(forename, surname, email, houseNumber, streetName, cityName, postCode);
+        if (!result.isValid()) {
+            throw new IllegalArgumentException(result.toString());
         }
     }
 
@@ -426,6 +556,9 @@ public class Person extends DatabaseOperation.Entity implements DatabaseRecord {
         s.setString(5, postCode);
         s.setInt(6, personID);
         s.executeUpdate();
+
+        IdentityMap.remove(Person.class, personID);
+        IdentityMap.remove(Address.class, List.of(houseNumber, postCode));
     }
 
     public void addNewBankDetails(BankDetail bankDetail) throws SQLException {
@@ -444,32 +577,37 @@ public class Person extends DatabaseOperation.Entity implements DatabaseRecord {
         this.bankDetail = bankDetail;
     }
 
+    /**
+     * Needs an open connection. For showing the orders prefer getOrderHistory(), which pages them.
+     * @return Every order of this person, newest first, without their lines - use Order.fetchItems() to load them
+     * for all the orders at once
+     */
     public List<Order> getAllOrders() {
-        List<Order> orders = new ArrayList<>();
         try {
-            openConnection();
-            PreparedStatement s = prepareStatement("SELECT orderId FROM `Order` WHERE personId = ? ORDER BY date DESC");
-            s.setInt(1, personID);
-
-            ResultSet rs = s.executeQuery();
-            while (rs.next()) {
-                orders.add(Order.getOrderWithID(rs.getInt("orderId")));
-            }
-
-            return orders;
+            return Order.getOrdersForCustomer(personID);
         } catch (SQLException e) {
             DatabaseBridge.databaseError("Error fetching all orders for user ["+personID+"]");
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * One page of this person's orders with their lines and products, see Order.getOrderHistory()
+     * @param after Where the previous page ended, or null for the first page
+     * @param pageSize Orders per page
+     * @return The page and the cursor of the next one
+     * @throws SQLException
+     */
+    public Order.HistoryPage getOrderHistory(Order.HistoryCursor after, int pageSize) throws SQLException {
+        return Order.getOrderHistory(personID, after, pageSize);
+    }
+
     public static boolean validateEmail(String email) {
-        return email.matches("^[a-zA-Z0-9_+&*-]+(?:\\."+ "[a-zA-Z0-9_+&*-]+)*@" + "(?:[a-zA-Z0-9-]+\\.)+[a-z" + "A-Z]{2,7}$");
+        return FormValidator.isEmail(email);
     }
 
     public static boolean validatePassword(String password) {
-        return true; // for development
-//        return password.matches("^(?=.*[0-9])(?=.*[a-z])(?=.*[A-Z])(?=.*[@#$%^&+=!()]).{8,20}$");
+        return FormValidator.isPassword(password);
     }
 }
 
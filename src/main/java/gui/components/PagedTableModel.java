@@ -0,0 +1,311 @@
+package gui.components;
+
+import db.DatabaseWorker;
+import db.KeysetQuery;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * A table model that reads its rows from a KeysetQuery one page at a time, only when the table asks for them (i.e.
+ * when they are scrolled into view). At most maxPages pages are held, the least recently used one is dropped first,
+ * so memory stays bounded however big the table is. Rows that are not loaded yet show as empty until their page
+ * arrives. Sorting is done by the database, install the model's Sorter on the JTable instead of a TableRowSorter.
+ * A page that fails to load stays empty and is not asked for again until the next refresh() or sort, so repaints do
+ * not send the failing query over and over.
+ * <br><br>
+ * Must only be used on the EDT, pages are read on DatabaseWorker threads.
+ */
+public class PagedTableModel extends AbstractTableModel {
+    private final KeysetQuery query;
+    private final Object[] params;
+    private final String[] columns;
+    private final Class<?>[] columnClasses;
+    private final int pageSize;
+    private final int maxPages;
+
+    private int rowCount = 0;
+    private int sortColumn = -1;
+    private boolean ascending = true;
+
+    private final LinkedHashMap<Integer, List<KeysetQuery.Row>> pages;
+    // the seek values of the last row of every page read since the last reset, so the next page can be read by
+    // keyset even after its predecessor has been dropped
+    private final Map<Integer, Object[]> pageEnds = new TreeMap<>();
+    private final Set<Integer> loading = new HashSet<>();
+    private final Set<Integer> failed = new HashSet<>();
+    private Consumer<? super Exception> onPageFailed = null;
+    private boolean failureReported = false;
+    // bumped whenever the rows are reset, pages that were requested before that are thrown away
+    private int generation = 0;
+
+    /**
+     * @param query Reads the rows, its mapped values are the columns of the table
+     * @param params Values for the parameters of the query's where clause
+     * @param columns Column names
+     * @param columnClasses Class of each column
+     * @param pageSize Rows read per query
+     * @param maxPages Pages held at most
+     */
+    public PagedTableModel(KeysetQuery query, Object[] params, String[] columns, Class<?>[] columnClasses,
+                           int pageSize, int maxPages) {
+        this.query = query;
+        this.params = params.clone();
+        this.columns = columns;
+        this.columnClasses = columnClasses;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        this.pages = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<KeysetQuery.Row>> eldest) {
+                return size() > PagedTableModel.this.maxPages;
+            }
+        };
+    }
+
+    /**
+     * Counts the rows again and drops every page, the visible ones are read again as the table repaints
+     * @param onLoaded Called on the EDT once the new row count is known, may be null
+     */
+    public void refresh(Runnable onLoaded) {
+        int requested = ++generation;
+        DatabaseWorker.submit(() -> query.count(params), count -> {
+            if (requested != generation) return;
+            rowCount = count;
+            clearPages();
+            fireTableDataChanged();
+            if (onLoaded != null) {
+                onLoaded.run();
+            }
+        });
+    }
+
+    /**
+     * Sorts the rows in the database, every page is dropped and read again in the new order
+     * @param column Column to sort by, or -1 for the query's key
+     * @param ascending Sort direction
+     */
+    public void setSort(int column, boolean ascending) {
+        if (column == sortColumn && ascending == this.ascending) return;
+        this.sortColumn = column;
+        this.ascending = ascending;
+        generation++;
+        clearPages();
+        fireTableDataChanged();
+    }
+
+    /**
+     * @param onPageFailed Called on the EDT the first time a page fails to load after each refresh() or sort, may be
+     *                     null
+     */
+    public void setOnPageFailed(Consumer<? super Exception> onPageFailed) {
+        this.onPageFailed = onPageFailed;
+    }
+
+    public boolean isSortable(int column) {
+        return query.isSortable(column);
+    }
+
+    private void clearPages() {
+        pages.clear();
+        pageEnds.clear();
+        loading.clear();
+        failed.clear();
+        failureReported = false;
+    }
+
+    /**
+     * @param rowIndex A row of the model
+     * @return The values of the row, or null if its page has not been read yet (it is requested) or failed to load
+     */
+    public Object[] getRow(int rowIndex) {
+        int page = rowIndex / pageSize;
+        List<KeysetQuery.Row> rows = pages.get(page);
+        if (rows == null) {
+            if (!failed.contains(page)) {
+                requestPage(page);
+            }
+            return null;
+        }
+        int offset = rowIndex % pageSize;
+        return offset < rows.size() ? rows.get(offset).values() : null;
+    }
+
+    /**
+     * @return Bumped whenever the rows are reset (refresh() or a sort), a row index from before then may now be
+     * another row
+     */
+    protected int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Changes a value held for a row that is loaded, e.g. once an edit of it has been written to the database
+     */
+    protected void setLoadedValue(int rowIndex, int columnIndex, Object value) {
+        Object[] row = getRow(rowIndex);
+        if (row != null) {
+            row[columnIndex] = value;
+            fireTableCellUpdated(rowIndex, columnIndex);
+        }
+    }
+
+    private void requestPage(int page) {
+        if (!loading.add(page)) return;
+
+        // seek from the end of the previous page when it is known, otherwise fall back to skipping rows
+        Object[] after = pageEnds.get(page - 1);
+        int offset = page * pageSize;
+        int requested = generation;
+        int sortColumn = this.sortColumn;
+        boolean ascending = this.ascending;
+
+        DatabaseWorker.submit(() -> query.fetch(sortColumn, ascending, after, offset, pageSize, params), rows -> {
+            if (requested != generation) return;
+            loading.remove(page);
+            pages.put(page, rows);
+            if (!rows.isEmpty()) {
+                pageEnds.put(page, rows.get(rows.size() - 1).seek());
+            }
+
+            int first = page * pageSize;
+            int last = Math.min(rowCount, first + pageSize) - 1;
+            if (last >= first) {
+                fireTableRowsUpdated(first, last);
+            }
+        }, e -> {
+            if (requested != generation) return;
+            loading.remove(page);
+            failed.add(page);
+            if (!failureReported && onPageFailed != null) {
+                failureReported = true;
+                onPageFailed.accept(e);
+            }
+        });
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    @Override
+    public String getColumnName(int columnIndex) {
+        return columns[columnIndex];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int columnIndex) {
+        return columnClasses[columnIndex];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        Object[] row = getRow(rowIndex);
+        return row == null ? null : row[columnIndex];
+    }
+
+    /**
+     * A RowSorter that does not reorder anything itself, it hands the primary sort key to the model so the database
+     * does the sorting. Clicking a column header toggles its sort like with a TableRowSorter.
+     */
+    public static class Sorter extends RowSorter<PagedTableModel> {
+        private final PagedTableModel model;
+        private List<SortKey> sortKeys = List.of();
+
+        public Sorter(PagedTableModel model) {
+            this.model = model;
+        }
+
+        @Override
+        public PagedTableModel getModel() {
+            return model;
+        }
+
+        @Override
+        public void toggleSortOrder(int column) {
+            if (!model.isSortable(column)) return;
+
+            SortOrder order = SortOrder.ASCENDING;
+            if (!sortKeys.isEmpty() && sortKeys.get(0).getColumn() == column
+                    && sortKeys.get(0).getSortOrder() == SortOrder.ASCENDING) {
+                order = SortOrder.DESCENDING;
+            }
+            setSortKeys(List.of(new SortKey(column, order)));
+        }
+
+        /**
+         * Only the first key is used, the database breaks ties by the query's key
+         */
+        @Override
+        public void setSortKeys(List<? extends SortKey> keys) {
+            List<SortKey> old = sortKeys;
+            sortKeys = keys == null ? List.of() : List.copyOf(keys);
+            if (sortKeys.equals(old)) return;
+
+            fireSortOrderChanged();
+            if (sortKeys.isEmpty() || sortKeys.get(0).getSortOrder() == SortOrder.UNSORTED) {
+                model.setSort(-1, true);
+            } else {
+                SortKey first = sortKeys.get(0);
+                model.setSort(first.getColumn(), first.getSortOrder() == SortOrder.ASCENDING);
+            }
+            fireRowSorterChanged(null);
+        }
+
+        @Override
+        public List<? extends SortKey> getSortKeys() {
+            return sortKeys;
+        }
+
+        @Override
+        public int convertRowIndexToModel(int index) {
+            return index;
+        }
+
+        @Override
+        public int convertRowIndexToView(int index) {
+            return index;
+        }
+
+        @Override
+        public int getViewRowCount() {
+            return model.getRowCount();
+        }
+
+        @Override
+        public int getModelRowCount() {
+            return model.getRowCount();
+        }
+
+        @Override
+        public void modelStructureChanged() { }
+
+        @Override
+        public void allRowsChanged() { }
+
+        @Override
+        public void rowsInserted(int firstRow, int endRow) { }
+
+        @Override
+        public void rowsDeleted(int firstRow, int endRow) { }
+
+        @Override
+        public void rowsUpdated(int firstRow, int endRow) { }
+
+        @Override
+        public void rowsUpdated(int firstRow, int endRow, int column) { }
+    }
+}
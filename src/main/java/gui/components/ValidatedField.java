@@ -0,0 +1,80 @@
+package gui.components;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.JTextComponent;
+import java.awt.*;
+import java.util.function.Supplier;
+
+/**
+ * Checks text fields as the user types: a field with an error turns red and shows it as its tooltip, and goes back
+ * to normal once it is fixed. Nothing is shown until the field has been edited, so a form does not start out red;
+ * mark() shows an error straight away, for when the whole form is submitted.
+ */
+public final class ValidatedField {
+    private static final Color errorBackground = new Color(255, 220, 220);
+    private static final String NORMAL_BACKGROUND = "ValidatedField.background";
+    private static final String NORMAL_TOOLTIP = "ValidatedField.tooltip";
+
+    private ValidatedField() { }
+
+    /**
+     * @param field The field to check
+     * @param check What is wrong with the field as it is, or null if nothing is, e.g. a FormValidator.check() call
+     * @param alsoOn Fields the check depends on as well, e.g. the password for its confirmation; changing them
+     *               checks the field again, if it has been edited
+     */
+    public static void validateAsTyped(JTextComponent field, Supplier<String> check, JTextComponent... alsoOn) {
+        boolean[] edited = {false};
+        field.getDocument().addDocumentListener(onChange(() -> {
+            edited[0] = true;
+            mark(field, check.get());
+        }));
+        for (JTextComponent other : alsoOn) {
+            other.getDocument().addDocumentListener(onChange(() -> {
+                if (edited[0]) {
+                    mark(field, check.get());
+                }
+            }));
+        }
+    }
+
+    /**
+     * Shows the error on the field, or clears it
+     * @param error The error, or null if there is none
+     */
+    public static void mark(JTextComponent field, String error) {
+        if (field.getClientProperty(NORMAL_BACKGROUND) == null) {
+            field.putClientProperty(NORMAL_BACKGROUND, field.getBackground());
+            field.putClientProperty(NORMAL_TOOLTIP, field.getToolTipText() == null ? "" : field.getToolTipText());
+        }
+        if (error != null) {
+            field.setBackground(errorBackground);
+            field.setToolTipText(error);
+        } else {
+            field.setBackground((Color) field.getClientProperty(NORMAL_BACKGROUND));
+            String tooltip = (String) field.getClientProperty(NORMAL_TOOLTIP);
+            field.setToolTipText(tooltip.isEmpty() ? null : tooltip);
+        }
+    }
+
+    private static DocumentListener onChange(Runnable action) {
+        return new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                action.run();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                action.run();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                // attribute changes, the text is the same
+            }
+        };
+    }
+}
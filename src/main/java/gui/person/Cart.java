@@ -2,6 +2,7 @@ package gui.person;
 
 import controllers.OrderController;
 import db.DatabaseBridge;
+import db.DatabaseWorker;
 import entity.order.Order;
 import entity.order.OrderLine;
 import entity.product.Product;
@@ -35,13 +36,16 @@ public class Cart extends JPanel implements TabbedGUIContainer.TabPanel {
     public class OrderItem extends JPanel {
         OrderLine ol;
         Product product;
+        Double unitCost;
 
         JTextField quantityBox;
         Integer quantity;
         public OrderItem(OrderLine ol) {
             this.ol = ol;
             try {
+                // lines in the cart were given their product when added, so neither of these queries
                 this.product = ol.getItem();
+                this.unitCost = ol.getUnitPrice();
             } catch (SQLException e) {
                 DatabaseBridge.databaseError("Failed to get product from orderline code ["+ol.getProductCode()+"]", e);
                 throw new RuntimeException(e);
@@ -78,7 +82,7 @@ public class Cart extends JPanel implements TabbedGUIContainer.TabPanel {
                 quantity = Integer.valueOf(quantityBox.getText());
 
                 if (quantity == 0) {
-                    OrderController.currentOrder.removeItem(product);
+                    OrderController.getCurrentOrder().removeItem(product);
                 }
                 ol.setQuantity(quantity);
 
@@ -87,11 +91,11 @@ public class Cart extends JPanel implements TabbedGUIContainer.TabPanel {
 
             gbc.gridx = 0;
             gbc.gridy = 2;
-            JLabel unitPrice = new JLabel("Unit Price "+ GUI.ukCurrencyFormat.format(product.getPrice()));
+            JLabel unitPrice = new JLabel("Unit Price "+ GUI.ukCurrencyFormat.format(unitCost));
             add(unitPrice, gbc);
 
             gbc.gridx = 1;
-            JLabel total = new JLabel("Subtotal "+GUI.ukCurrencyFormat.format(quantity * product.getPrice()));
+            JLabel total = new JLabel("Subtotal "+GUI.ukCurrencyFormat.format(quantity * unitCost));
             add(total, gbc);
         }
     }
@@ -154,7 +158,7 @@ public class Cart extends JPanel implements TabbedGUIContainer.TabPanel {
         gbc.gridx = 0;
         gbc.gridy = 0;
 
-        OrderController.currentOrder.getItemsList().forEach((ol) -> {
+        OrderController.getCurrentOrder().getItemsList().forEach((ol) -> {
             gbc.gridy++;
             contentPanel.add(new OrderItem(ol), gbc);
         });
@@ -164,26 +168,32 @@ public class Cart extends JPanel implements TabbedGUIContainer.TabPanel {
         JPanel checkoutPanel = new JPanel();
         checkoutPanel.setLayout(new GridLayout(1, 2));
         JLabel totalCost = new JLabel("<html><b>Total: </b>"
-                + GUI.ukCurrencyFormat.format(OrderController.currentOrder.getTotalCost()) + "</html>");
+                + GUI.ukCurrencyFormat.format(OrderController.getCurrentOrder().getTotalCost()) + "</html>");
         JButton checkoutBtn = new JButton("Checkout");
         checkoutPanel.add(totalCost);
         checkoutPanel.add(checkoutBtn);
 
         checkoutBtn.addActionListener((e) -> {
             try {
-                OrderController.currentOrder.checkStock();
+                OrderController.getCurrentOrder().checkStock();
             } catch (Order.OrderHasInsufficientStockException ex) {
                 JOptionPane.showMessageDialog(this, ex.getMessage(), "Insufficient Stock", JOptionPane.ERROR_MESSAGE);
                 return;
             }
 
-            boolean success = OrderController.checkout();
-            if (!success) {
-                JOptionPane.showMessageDialog(this, "Your bank account details are missing or invalid", "Something went wrong", JOptionPane.ERROR_MESSAGE);
-            } else {
-                JOptionPane.showMessageDialog(this, "Order successfully placed");
-                SwingUtilities.invokeLater(this::refreshCart);
-            }
+            checkoutBtn.setEnabled(false);
+            DatabaseWorker.submit(OrderController::checkout, success -> {
+                if (!success) {
+                    checkoutBtn.setEnabled(true);
+                    JOptionPane.showMessageDialog(this, "Your bank account details are missing or invalid", "Something went wrong", JOptionPane.ERROR_MESSAGE);
+                } else {
+                    JOptionPane.showMessageDialog(this, "Order successfully placed");
+                    refreshCart();
+                }
+            }, ex -> {
+                checkoutBtn.setEnabled(true);
+                JOptionPane.showMessageDialog(this, "Could not place your order: " + ex.getMessage(), "Something went wrong", JOptionPane.ERROR_MESSAGE);
+            });
         });
 
         if (contentPanel.getComponents().length > 0) {
@@ -1,12 +1,10 @@
 package gui.person;
 
 import controllers.AppContext;
-import controllers.LoginController;
+import controllers.AuthenticationService;
 import controllers.OrderController;
-import entity.user.Person;
 import gui.App;
 import gui.components.TabbedGUIContainer;
-import utils.Crypto;
 
 import java.awt.*;
 import java.awt.event.*;
@@ -105,17 +103,26 @@ public class Login extends JPanel implements TabbedGUIContainer.TabPanel {
                     return;
                 }
 
-                String pwd = String.valueOf(passwordInput);
-                AppContext.setEncryptionKey(Crypto.deriveEncryptionKey(pwd));
-
-                Person user = LoginController.authenticateUser(emailInput, pwd);
-                if (user != null) {
-                    System.out.println("Successfully authenticated user");
-                    AppContext.setCurrentUser(user);
-                    app.userState(user.getRole());
-                } else {
-                    JOptionPane.showMessageDialog(AppContext.getWindow(), "Incorrect email or password", "Error", JOptionPane.WARNING_MESSAGE);
-                }
+                // bcrypt and the key derivation take a moment, the screen stays responsive meanwhile
+                loginButton.setEnabled(false);
+                AuthenticationService.login(emailInput, String.valueOf(passwordInput)).whenComplete((authenticated, error) ->
+                        SwingUtilities.invokeLater(() -> {
+                            loginButton.setEnabled(true);
+                            if (error != null) {
+                                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                                String message = cause instanceof AuthenticationService.BusyException
+                                        ? cause.getMessage()
+                                        : "Could not log in: " + cause.getMessage();
+                                JOptionPane.showMessageDialog(AppContext.getWindow(), message, "Error", JOptionPane.WARNING_MESSAGE);
+                            } else if (authenticated != null) {
+                                System.out.println("Successfully authenticated user");
+                                AppContext.setEncryptionKey(authenticated.encryptionKey());
+                                AppContext.setCurrentUser(authenticated.user());
+                                app.userState(authenticated.user().getRole());
+                            } else {
+                                JOptionPane.showMessageDialog(AppContext.getWindow(), "Incorrect email or password", "Error", JOptionPane.WARNING_MESSAGE);
+                            }
+                        }));
             }
         });
     }
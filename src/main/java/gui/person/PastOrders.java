@@ -39,7 +39,7 @@ public class PastOrders extends JPanel {
                 Product product = orderLine.getItem();
                 itemsPanel.add(new JLabel(product.getName()));
                 itemsPanel.add(new JLabel(String.valueOf(orderLine.getQuantity())));
-                itemsPanel.add(new JLabel(String.format("%.2f", product.getPrice())));
+                itemsPanel.add(new JLabel(String.format("%.2f", orderLine.getUnitPrice())));
             } catch (SQLException e) {
                 e.printStackTrace();
             }
@@ -1,32 +1,37 @@
 package gui.person;
 
 import entity.order.Order;
+import entity.user.Person;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 
 
 import controllers.AppContext;
-import db.DatabaseBridge;
+import db.DatabaseWorker;
 import gui.components.TabbedGUIContainer;
+import utils.GUI;
 
 import java.awt.*;
-import java.sql.SQLException;
-import java.util.List;
 
 public class PastOrdersScreen extends JPanel implements TabbedGUIContainer.TabPanel{
     private static final int orderSpacing = 30;
+    private static final int pageSize = 10;
+    // how close to the bottom, in pixels, the user has to scroll before the next page is fetched
+    private static final int loadThreshold = 300;
 
     JPanel contentPanel;
+    private JScrollPane scrollPane;
+
+    private Order.HistoryCursor next;
+    private boolean hasMore;
+    private boolean loading;
+    // bumped on every refresh, pages requested before it are dropped
+    private int generation = 0;
 
     @Override
     public void onSelected() {
-        SwingUtilities.invokeLater(new Runnable() {
-            @Override
-            public void run() {
-                refreshOrders();
-            }
-        });
+        refreshOrders();
     }
 
     public PastOrdersScreen() {
@@ -42,45 +47,71 @@ public class PastOrdersScreen extends JPanel implements TabbedGUIContainer.TabPa
         gl.setVgap(orderSpacing);
         contentPanel.setLayout(gl);
 
-        JScrollPane scrollPane = new JScrollPane(contentPanel);
+        scrollPane = new JScrollPane(contentPanel);
+        scrollPane.getVerticalScrollBar().setUnitIncrement(16);
+        // fetch the next page once the user scrolls near the bottom
+        scrollPane.getVerticalScrollBar().addAdjustmentListener(e -> loadMoreIfNeeded());
         add(scrollPane, BorderLayout.CENTER);
 
-        DatabaseBridge db = DatabaseBridge.instance();
-
-        try {
-            db.openConnection();
-            List<Order> orders = AppContext.getCurrentUser().getAllOrders();
-            for (Order o : orders) {
-                contentPanel.add(new PastOrders(o));
-            }
-        } catch (SQLException e) {
-            DatabaseBridge.databaseError("Error whilst fetching all orders", e);
-            throw new RuntimeException(e);
-        } finally {
-            db.closeConnection();
-        }
-
+        refreshOrders();
     }
 
     // Refreshes the content panel with updated past orders
     private void refreshOrders() {
+        generation++;
+        next = null;
+        hasMore = true;
+        loading = false;
+
         contentPanel.removeAll();
-        DatabaseBridge db = DatabaseBridge.instance();
+        contentPanel.revalidate();
+        contentPanel.repaint();
+        loadNextPage();
+    }
 
-        try {
-            db.openConnection();
-            List<Order> orders = AppContext.getCurrentUser().getAllOrders();
-            for (Order o : orders) {
-                contentPanel.add(new PastOrders(o));
-            }
-        } catch (SQLException e) {
-            DatabaseBridge.databaseError("Error whilst fetching all orders", e);
-            throw new RuntimeException(e);
-        } finally {
-            db.closeConnection();
+    private void loadMoreIfNeeded() {
+        if (loading || !hasMore) return;
+
+        JScrollBar bar = scrollPane.getVerticalScrollBar();
+        if (bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - loadThreshold) {
+            loadNextPage();
         }
+    }
+
+    private void loadNextPage() {
+        loading = true;
+        int requested = generation;
+        Order.HistoryCursor after = next;
+
+        JPanel placeholder = GUI.createLoadingPlaceholder(after == null ? "Loading your orders..." : "Loading more orders...");
+        contentPanel.add(placeholder);
         contentPanel.revalidate();
         contentPanel.repaint();
+
+        Person user = AppContext.getCurrentUser();
+        DatabaseWorker.submit(() -> user.getOrderHistory(after, pageSize), page -> {
+            if (requested != generation) return;
+            contentPanel.remove(placeholder);
+            for (Order o : page.orders()) {
+                contentPanel.add(new PastOrders(o));
+            }
+            next = page.next();
+            hasMore = next != null;
+            loading = false;
+            contentPanel.revalidate();
+            contentPanel.repaint();
+
+            // the page may not have filled the window, in which case there is no scrolling to trigger the next one
+            SwingUtilities.invokeLater(this::loadMoreIfNeeded);
+        }, e -> {
+            if (requested != generation) return;
+            contentPanel.remove(placeholder);
+            contentPanel.add(new JLabel("Could not load your orders: " + e.getMessage()));
+            hasMore = false;
+            loading = false;
+            contentPanel.revalidate();
+            contentPanel.repaint();
+        });
     }
 
     @Override
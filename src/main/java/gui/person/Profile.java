@@ -8,11 +8,16 @@ import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Map;
 
 import db.DatabaseBridge;
+import db.DatabaseWorker;
 import entity.BankDetail;
 import entity.user.Person;
 import controllers.AppContext;
+import gui.components.ValidatedField;
+import utils.FormValidator;
 
 public class Profile extends JPanel{
 
@@ -32,6 +37,8 @@ public class Profile extends JPanel{
 
     private BankDetail bankDetail;
 
+    private final Map<FormValidator.Field, JTextField> fields = new EnumMap<>(FormValidator.Field.class);
+
     public Profile() {
         setLayout(new GridBagLayout());
         GridBagConstraints gbc = new GridBagConstraints();
@@ -134,6 +141,22 @@ public class Profile extends JPanel{
                 securityCode.setText(person.getBankDetail().getSecurityCode());
             }
 
+            fields.put(FormValidator.Field.FORENAME, forename);
+            fields.put(FormValidator.Field.SURNAME, surname);
+            fields.put(FormValidator.Field.EMAIL, emailField);
+            fields.put(FormValidator.Field.HOUSE_NUMBER, houseNumber);
+            fields.put(FormValidator.Field.STREET_NAME, street);
+            fields.put(FormValidator.Field.CITY_NAME, city);
+            fields.put(FormValidator.Field.POSTCODE, postCode);
+            fields.put(FormValidator.Field.CARD_NAME, cardName);
+            fields.put(FormValidator.Field.CARD_HOLDER_NAME, cardHolderName);
+            fields.put(FormValidator.Field.CARD_NUMBER, cardNumber);
+            fields.put(FormValidator.Field.EXPIRY_DATE, expiryDate);
+            fields.put(FormValidator.Field.SECURITY_CODE, securityCode);
+            // after filling them in, so only what the user changes is checked as they type
+            fields.forEach((field, input) ->
+                    ValidatedField.validateAsTyped(input, () -> FormValidator.check(field, input.getText())));
+
             gbc.gridy++;
             JButton updateButton = new JButton("Update Profile");
             add(updateButton, gbc);
@@ -178,39 +201,46 @@ public class Profile extends JPanel{
         String expiryInput = expiryDate.getText();
         String securityInput = securityCode.getText();
 
-//        Validate the data
-        try {
-            Person.validatePersonalDetails(forenameInput, surnameInput, emailInput,  houseNumberInput, streetInput, cityInput, postCodeInput);
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(AppContext.getWindow(), "Invalid fields: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-        }
-        try {
-            BankDetail.validateBankDetails(cardNameInput, cardNumberInput, cardHolderNameInput, expiryInput, securityInput);
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(AppContext.getWindow(), "Invalid payment information: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+//        Validate the data, every field in one go
+        FormValidator.Result personal = FormValidator.personalDetails(forenameInput, surnameInput, emailInput,
+                houseNumberInput, streetInput, cityInput, postCodeInput);
+        FormValidator.Result payment = FormValidator.bankDetails(cardNameInput, cardNumberInput, cardHolderNameInput,
+                expiryInput, securityInput);
+        fields.forEach((field, input) -> {
+            String error = personal.errorFor(field);
+            ValidatedField.mark(input, error != null ? error : payment.errorFor(field));
+        });
+        if (!personal.isValid() || !payment.isValid()) {
+            StringBuilder message = new StringBuilder();
+            if (!personal.isValid()) {
+                message.append("Invalid fields:\n").append(personal).append('\n');
+            }
+            if (!payment.isValid()) {
+                message.append("Invalid payment information:\n").append(payment);
+            }
+            JOptionPane.showMessageDialog(AppContext.getWindow(), message.toString().strip(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
         }
 
-        DatabaseBridge db = DatabaseBridge.instance();
-        try {
-            db.openConnection();
-
-            PreparedStatement emailLookup = db.prepareStatement("SELECT PersonId FROM Person WHERE email=?");
-            emailLookup.setString(1, emailInput);
-            ResultSet res = emailLookup.executeQuery();
-            if (res.next() && res.getInt(1) != AppContext.getCurrentUser().getId()) {
-                throw new IllegalArgumentException("Another user already exists with that email address");
+        Person person = AppContext.getCurrentUser();
+        DatabaseWorker.submit(() -> {
+            try (PreparedStatement emailLookup = DatabaseBridge.instance().prepareStatement("SELECT PersonId FROM Person WHERE email=?")) {
+                emailLookup.setString(1, emailInput);
+                ResultSet res = emailLookup.executeQuery();
+                if (res.next() && res.getInt(1) != person.getId()) {
+                    throw new IllegalArgumentException("Another user already exists with that email address");
+                }
             }
 
             BankDetail newBankDetails = BankDetail.createPaymentInfo(cardNameInput, cardNumberInput, cardHolderNameInput ,Date.valueOf(expiryInput), securityInput);
-            AppContext.getCurrentUser().addNewBankDetails(newBankDetails);
-
-            AppContext.getCurrentUser().updatePersonalDetails(emailInput, forenameInput, surnameInput, houseNumberInput, streetInput, cityInput, postCodeInput);
+            person.addNewBankDetails(newBankDetails);
 
+            person.updatePersonalDetails(emailInput, forenameInput, surnameInput, houseNumberInput, streetInput, cityInput, postCodeInput);
+            return null;
+        }, done -> {
             JOptionPane.showMessageDialog(AppContext.getWindow(), "Personal details updated", "Notice", JOptionPane.INFORMATION_MESSAGE);
-        } catch (Exception exception) {
+        }, exception -> {
             JOptionPane.showMessageDialog(AppContext.getWindow(), "Personal details could not be updated: " + exception.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-        } finally {
-            db.closeConnection();
-        }
+        });
     }
 }
\ No newline at end of file
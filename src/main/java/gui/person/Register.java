@@ -4,15 +4,18 @@ import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
 import java.awt.event.*;
-import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Map;
 
 import controllers.AppContext;
+import controllers.AuthenticationService;
 import controllers.OrderController;
 import db.*;
 import entity.user.*;
 import entity.*;
 import gui.App;
 import gui.components.TabbedGUIContainer;
+import gui.components.ValidatedField;
 import utils.*;
 
 public class Register extends JPanel implements TabbedGUIContainer.TabPanel {
@@ -27,6 +30,8 @@ public class Register extends JPanel implements TabbedGUIContainer.TabPanel {
     private final JTextField cityName;
     private final JTextField postCode;
 
+    private final Map<FormValidator.Field, JTextField> fields = new EnumMap<>(FormValidator.Field.class);
+
     private TabbedGUIContainer parent;
 
     private static final int inset = 120;
@@ -60,6 +65,24 @@ public class Register extends JPanel implements TabbedGUIContainer.TabPanel {
         JLabel postCodeLabel = new JLabel("PostCode");
         postCode = new JTextField(5);
 
+        fields.put(FormValidator.Field.FORENAME, forename);
+        fields.put(FormValidator.Field.SURNAME, surname);
+        fields.put(FormValidator.Field.EMAIL, email);
+        fields.put(FormValidator.Field.PASSWORD, password);
+        fields.put(FormValidator.Field.PASSWORD_CONFIRMATION, passwordConfirmation);
+        fields.put(FormValidator.Field.HOUSE_NUMBER, houseNumber);
+        fields.put(FormValidator.Field.STREET_NAME, streetName);
+        fields.put(FormValidator.Field.CITY_NAME, cityName);
+        fields.put(FormValidator.Field.POSTCODE, postCode);
+        // check each field as it is typed in, the confirmation against the password
+        fields.forEach((field, input) -> {
+            if (field != FormValidator.Field.PASSWORD_CONFIRMATION) {
+                ValidatedField.validateAsTyped(input, () -> FormValidator.check(field, input.getText()));
+            }
+        });
+        ValidatedField.validateAsTyped(passwordConfirmation, () -> FormValidator.checkPasswordConfirmation(
+                password.getText(), passwordConfirmation.getText()), password);
+
         JButton registerButton = new JButton("Create Account");
         JLabel loginLabel = new JLabel("<html><u><font color='blue'>Login</font></u></html>");
 
@@ -160,122 +183,52 @@ public class Register extends JPanel implements TabbedGUIContainer.TabPanel {
             @Override
             public void actionPerformed(ActionEvent e) {
                 // Validate input
-                if (validateCompulsoryInput() && validateFormat()) {
-                    // Open connection with the database
-                    DatabaseBridge db = DatabaseBridge.instance();
-                    try{
-                        db.openConnection();
-                        // Create a new address
-                        Address newAddress = new Address(
-                            houseNumber.getText(),
-                            streetName.getText(),
-                            cityName.getText(),
-                            postCode.getText()
-                        );
-                        Address.CreateAddress(newAddress);
-
-                        // Create new person
-                        String passwordHash = Crypto.hashString(password.getText());
-                        Person newPerson = new Person(
-                            forename.getText(),
-                            surname.getText(),
-                            email.getText(),
-                            passwordHash,
-                            houseNumber.getText(),
-                            postCode.getText()
-                        );
-
-                        Person.createPerson(newPerson);
-
-                        AppContext.setEncryptionKey(Crypto.deriveEncryptionKey(password.getText()));
-                        AppContext.setCurrentUser(newPerson);
-                        app.userState(newPerson.getRole());
-
-                        JOptionPane.showMessageDialog(AppContext.getWindow(), "Registration successful");
-                    } catch (SQLException sqlError) {
-                        JOptionPane.showMessageDialog(AppContext.getWindow(), sqlError.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-                    } finally {
-                        db.closeConnection();
-                    }
+                if (validateInput()) {
+                    Address newAddress = new Address(
+                        houseNumber.getText(),
+                        streetName.getText(),
+                        cityName.getText(),
+                        postCode.getText()
+                    );
+
+                    // hashing the password and deriving the key take a moment, the screen stays responsive meanwhile
+                    registerButton.setEnabled(false);
+                    AuthenticationService.register(forename.getText(), surname.getText(), email.getText(),
+                            password.getText(), newAddress).whenComplete((authenticated, error) ->
+                            SwingUtilities.invokeLater(() -> {
+                                registerButton.setEnabled(true);
+                                if (error != null) {
+                                    Throwable cause = error.getCause() != null ? error.getCause() : error;
+                                    JOptionPane.showMessageDialog(AppContext.getWindow(), cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                                } else if (authenticated == null) {
+                                    JOptionPane.showMessageDialog(AppContext.getWindow(), "Email already exists", "Error", JOptionPane.WARNING_MESSAGE);
+                                } else {
+                                    AppContext.setEncryptionKey(authenticated.encryptionKey());
+                                    AppContext.setCurrentUser(authenticated.user());
+                                    app.userState(authenticated.user().getRole());
+
+                                    JOptionPane.showMessageDialog(AppContext.getWindow(), "Registration successful");
+                                }
+                            }));
                 }
             }
     
         });
     }
 
-    private boolean validateCompulsoryInput() {
-        if (forename.getText().isEmpty()) {
-            JOptionPane.showMessageDialog(AppContext.getWindow(), "Forename cannot be empty", "Error", JOptionPane.WARNING_MESSAGE);
-            return false;
-        }
-        if (surname.getText().isEmpty()) {
-            JOptionPane.showMessageDialog(AppContext.getWindow(), "Surname cannot be empty", "Error", JOptionPane.WARNING_MESSAGE);
-            return false;
-        }
-        if (email.getText().isEmpty()) {
-            JOptionPane.showMessageDialog(AppContext.getWindow(), "Email cannot be empty", "Error", JOptionPane.WARNING_MESSAGE);
-            return false;
-        }
-        if (password.getText().isEmpty()) {
-            JOptionPane.showMessageDialog(AppContext.getWindow(), "Password cannot be empty", "Error", JOptionPane.WARNING_MESSAGE);
-            return false;
-        }
-        if (passwordConfirmation.getText().isEmpty()) {
-            JOptionPane.showMessageDialog(AppContext.getWindow(), "Password confirmation cannot be empty", "Error", JOptionPane.WARNING_MESSAGE);
-            return false;
-        }
-        if (!password.getText().equals(passwordConfirmation.getText())) {
-            JOptionPane.showMessageDialog(AppContext.getWindow(), "Passwords do not match", "Error", JOptionPane.WARNING_MESSAGE);
-            return false;
-        }
-        if (houseNumber.getText().isEmpty()) {
-            JOptionPane.showMessageDialog(AppContext.getWindow(), "House number cannot be empty", "Error", JOptionPane.WARNING_MESSAGE);
-            return false;
-        }
-        if (streetName.getText().isEmpty()) {
-            JOptionPane.showMessageDialog(AppContext.getWindow(), "Street name cannot be empty", "Error", JOptionPane.WARNING_MESSAGE);
-            return false;
-        }
-        if (cityName.getText().isEmpty()) {
-            JOptionPane.showMessageDialog(AppContext.getWindow(), "City name cannot be empty", "Error", JOptionPane.WARNING_MESSAGE);
-            return false;
-        }
-        if (postCode.getText().isEmpty()) {
-            JOptionPane.showMessageDialog(AppContext.getWindow(), "Postcode cannot be empty", "Error", JOptionPane.WARNING_MESSAGE);
-            return false;
-        }
-        try {
-            DatabaseBridge db = DatabaseBridge.instance();
-            db.openConnection();
-            if (Person.getPersonByEmail(email.getText(), false) != null) {
-                JOptionPane.showMessageDialog(AppContext.getWindow(), "Email already exists", "Error", JOptionPane.WARNING_MESSAGE);
-                return false;
-            }
-            db.closeConnection();
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(AppContext.getWindow(), "Account creation error: " + e.getMessage(), "Database Error", JOptionPane.ERROR_MESSAGE);
-        }
-        return true;
-    }
-
-    private boolean validateFormat(){
-        // regular expressions for email, postcode and password
-
-        // Validate the fields with the regular expressions
-        if (!Person.validateEmail(email.getText())) {
-            JOptionPane.showMessageDialog(AppContext.getWindow(), "Invalid email", "Error", JOptionPane.WARNING_MESSAGE);
-            return false;
-        }
-        if (!Address.validatePostcode(postCode.getText())) {
-            JOptionPane.showMessageDialog(AppContext.getWindow(), "Invalid postcode", "Error", JOptionPane.WARNING_MESSAGE);
-            return false;
-        }
-        if (!Person.validatePassword(password.getText())) {
-            JOptionPane.showMessageDialog(
-                    AppContext.getWindow(),
-                    "Password must be at least 8 characters long and contain at least one number, " +
-                            "one uppercase letter and one lowercase letter", "Error", JOptionPane.WARNING_MESSAGE
-            );
+    /**
+     * Checks the whole form, marks every field with an error and lists them all in one dialog. Whether the email is
+     * taken is left to AuthenticationService.register(), which finds out anyway.
+     */
+    private boolean validateInput() {
+        FormValidator.Result result = FormValidator.registration(
+                forename.getText(), surname.getText(), email.getText(), password.getText(),
+                passwordConfirmation.getText(), houseNumber.getText(), streetName.getText(), cityName.getText(),
+                postCode.getText()
+        );
+        fields.forEach((field, input) -> ValidatedField.mark(input, result.errorFor(field)));
+        if (!result.isValid()) {
+            JOptionPane.showMessageDialog(AppContext.getWindow(), result.toString(), "Error", JOptionPane.WARNING_MESSAGE);
             return false;
         }
         return true;
@@ -1,31 +1,30 @@
 package gui.person;
 
-import controllers.AppContext;
-import db.DatabaseBridge;
+import db.DatabaseWorker;
 import entity.product.Product;
+import entity.product.CatalogCache;
 import gui.components.TabbedGUIContainer;
+import utils.GUI;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.util.ArrayList;
+import java.util.List;
 
 
 public class Shop extends JPanel implements TabbedGUIContainer.TabPanel {
     private static final int cardSpacing = 30;
 
-    private JPanel contentPanel;
+    // the catalog is the model, ShopGrid only builds cards for what is on screen
+    private final DefaultListModel<Product> products = new DefaultListModel<>();
+    private ShopGrid contentPanel;
+    private final JScrollPane scrollPane;
+    private final CatalogCache.Listener catalogListener = productCodes -> SwingUtilities.invokeLater(this::loadStore);
 
     public Shop() {
         this.setLayout(new BorderLayout());
-        contentPanel = new JPanel();
+        contentPanel = new ShopGrid(products, cardSpacing);
         JPanel headerPanel = new JPanel();
-        GridLayout gl = new GridLayout(0, 2);
-        gl.setHgap(cardSpacing);
-        gl.setVgap(cardSpacing);
-        contentPanel.setLayout(gl);
 
         GridBagConstraints gbc = new GridBagConstraints();
         GridBagLayout gbl = new GridBagLayout();
@@ -51,7 +50,7 @@ public class Shop extends JPanel implements TabbedGUIContainer.TabPanel {
 
         add(headerPanel, BorderLayout.NORTH);
 
-        JScrollPane scrollPane = new JScrollPane(contentPanel);
+        scrollPane = new JScrollPane(contentPanel);
         add(scrollPane, BorderLayout.CENTER);
 
         // TO LOAD THE PRODUCTS
@@ -59,72 +58,21 @@ public class Shop extends JPanel implements TabbedGUIContainer.TabPanel {
     }
 
     private void loadStore() {
-        contentPanel.removeAll();
-        DatabaseBridge db = DatabaseBridge.instance();
-        ArrayList<Product> productList = new ArrayList<>();
-
-        try {
-            db.openConnection();
-            ResultSet products = Product.getAllProducts();
-            assert products != null;
-
-            while (products.next()) {
-                productList.add(Product.getProductByID(products.getString(1)));
-            }
-        } catch (SQLException e) {
-            DatabaseBridge.databaseError("Error whilst fetching all products", e);
-            throw new RuntimeException(e);
-        } finally {
-            db.closeConnection();
+        if (products.isEmpty()) {
+            scrollPane.setViewportView(GUI.createLoadingPlaceholder("Loading products..."));
         }
 
-        // TO LOAD THE SATELLITE DATA AND ADD TO THE UI
-        try {
-            db.openConnection();
-            for (Product p : productList) {
-                contentPanel.add(new ShopCard(p));
-            }
-        } catch (SQLException e) {
-            DatabaseBridge.databaseError("Error whilst fetching all products", e);
-            throw new RuntimeException(e);
-        } finally {
-            db.closeConnection();
-        }
+        // the cache only goes to the database the first time, or for products that have changed since
+        DatabaseWorker.submit(CatalogCache::getAll, this::showProducts, e -> {
+            scrollPane.setViewportView(new JLabel("Could not load products: " + e.getMessage(), SwingConstants.CENTER));
+        });
     }
 
-//    Create the refreshShop method
-    private void refreshShop() {
-        contentPanel.removeAll();
-        DatabaseBridge db = DatabaseBridge.instance();
-        ArrayList<Product> productList = new ArrayList<>();
-
-        try {
-            db.openConnection();
-            ResultSet products = Product.getAllProducts();
-            assert products != null;
-
-            while (products.next()) {
-                productList.add(Product.getProductByID(products.getString(1)));
-            }
-        } catch (SQLException e) {
-            DatabaseBridge.databaseError("Error whilst fetching all products", e);
-            throw new RuntimeException(e);
-        } finally {
-            db.closeConnection();
-        }
+    private void showProducts(List<Product> productList) {
+        products.clear();
+        products.addAll(productList);
 
-        // TO LOAD THE SATELLITE DATA AND ADD TO THE UI
-        try {
-            db.openConnection();
-            for (Product p : productList) {
-                contentPanel.add(new ShopCard(p));
-            }
-        } catch (SQLException e) {
-            DatabaseBridge.databaseError("Error whilst fetching all products", e);
-            throw new RuntimeException(e);
-        } finally {
-            db.closeConnection();
-        }
+        scrollPane.setViewportView(contentPanel);
         contentPanel.revalidate();
         contentPanel.repaint();
     }
@@ -134,17 +82,20 @@ public class Shop extends JPanel implements TabbedGUIContainer.TabPanel {
 
     }
 
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        CatalogCache.addListener(catalogListener);
+    }
+
+    @Override
+    public void removeNotify() {
+        CatalogCache.removeListener(catalogListener);
+        super.removeNotify();
+    }
+
     @Override
     public void onSelected() {
-        if (AppContext.queueStoreReload) {
-            loadStore();
-            AppContext.queueStoreReload = false;
-        }
-        SwingUtilities.invokeLater(new Runnable() {
-            @Override
-            public void run() {
-                refreshShop();
-            }
-        });
+        // nothing to do, catalog changes are pushed to us through catalogListener
     }
 }
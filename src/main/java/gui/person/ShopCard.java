@@ -11,6 +11,10 @@ import java.awt.*;
 import java.sql.SQLException;
 import java.util.List;
 
+/**
+ * One product in the shop. The frame of the card (labels, quantity box, button) is built once, setProduct() only
+ * swaps the text and the product details, so ShopGrid can recycle a handful of cards while scrolling.
+ */
 public class ShopCard extends JPanel {
     private final JButton addToCardBtn;
     GridBagConstraints gbc;
@@ -21,9 +25,20 @@ public class ShopCard extends JPanel {
     Integer quantity;
     JTextField quantityBox;
 
+    private final JLabel productName;
+    private final JLabel price;
+    private final JLabel productCodeLabel;
+    private final JPanel details;
+
     public ShopCard(Product product) throws SQLException {
-        this.product = product;
+        this();
+        setProduct(product);
+    }
 
+    /**
+     * An empty card, call setProduct() before showing it
+     */
+    public ShopCard() {
         gbc = new GridBagConstraints();
         gbl = new GridBagLayout();
 //        gbl.setConstraints(this, gbc);
@@ -37,17 +52,79 @@ public class ShopCard extends JPanel {
 
         setBorder(BorderFactory.createLineBorder(Color.black));
 
-        JLabel productName = new JLabel("<html><h2>"+product.getName()+"</h2></html>");
+        productName = new JLabel();
         add(productName, gbc);
 
         gbc.gridx = 1;
-        JLabel price = new JLabel("<html><h4>"+GUI.ukCurrencyFormat.format(product.getPrice())+"</h4></html>");
+        price = new JLabel();
         price.setHorizontalAlignment(SwingConstants.RIGHT);
         add(price, gbc);
 
         gbc.gridx = 0;
         gbc.gridy = 1;
 
+        productCodeLabel = new JLabel();
+        add(productCodeLabel, gbc);
+
+        gbc.gridy = 2;
+        details = new JPanel();
+        details.setLayout(new GridBagLayout());
+        add(details, gbc);
+
+        JPanel quantityPanel = new JPanel();
+        quantityPanel.setLayout(new BorderLayout());
+
+        JLabel quantityLabel = new JLabel("Quantity: ");
+        quantityLabel.setHorizontalAlignment(SwingConstants.RIGHT);
+        quantityBox = new JTextField();
+        quantityBox.setPreferredSize(new Dimension(30, 24));
+        quantityPanel.add(quantityLabel, BorderLayout.CENTER);
+        quantityPanel.add(quantityBox, BorderLayout.EAST);
+
+        gbc.gridy++;
+        add(quantityPanel, gbc);
+
+        addToCardBtn = new JButton("Add to Cart");
+
+        gbc.gridx = 1;
+        add(addToCardBtn, gbc);
+
+        addToCardBtn.addActionListener((e) -> {
+            if(quantityBox.getText().isEmpty()) {
+                return;
+            }
+
+            quantity = Integer.valueOf(quantityBox.getText());
+            Integer stockLevel = product.getStockLevel();
+            if (quantity > stockLevel) {
+                JOptionPane.showMessageDialog(this, "Sorry we have insufficient stock of this item. We currently only have "+stockLevel+" in stock.");
+                return;
+            }
+
+            if (quantity < 1) {
+                return;
+            }
+            OrderController.getCurrentOrder().addItem(product, quantity);
+            JOptionPane.showMessageDialog(this, "Added "+quantity+"x "+product.getName()+" to your cart.");
+        });
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+
+    /**
+     * Shows another product on this card
+     * @param product The product, it should come from ProductCatalog so no queries are needed to display it
+     * @throws SQLException If the product was not fully loaded and fetching its details failed
+     */
+    public void setProduct(Product product) throws SQLException {
+        this.product = product;
+        quantityBox.setText("");
+
+        productName.setText("<html><h2>"+product.getName()+"</h2></html>");
+        price.setText("<html><h4>"+GUI.ukCurrencyFormat.format(product.getPrice())+"</h4></html>");
+
         String productCode = product.getProductCode();
         switch (productCode.charAt(0)) {
             case 'L':
@@ -69,131 +146,88 @@ public class ShopCard extends JPanel {
                 productCode = "<html><h3>Track Pack</h3></html>";
                 break;
         }
-        JLabel productCodeLabel = new JLabel(productCode);
-        add(productCodeLabel, gbc);
+        productCodeLabel.setText(productCode);
 
-        gbc.gridy = 2;
+        details.removeAll();
+        GridBagConstraints dgbc = new GridBagConstraints();
+        dgbc.fill = GridBagConstraints.BOTH;
+        dgbc.weightx = 1;
+        dgbc.gridx = 0;
+        dgbc.gridy = 0;
 
-        try {
-            if (product.isComponent()) {
-                Component productComponent = product.getComponent();
-
-                JLabel brand = new JLabel("Brand: "+productComponent.getBrand());
-                add(brand, gbc);
-
-                gbc.gridy++;
-
-                JLabel gauge = new JLabel("Gauge: "+productComponent.getGauge().toString());
-                add(gauge, gbc);
-
-                gbc.gridy++;
-
-                JLabel era = new JLabel("Era: "+productComponent.getEra().toString());
-                add(era, gbc);
-
-                if (productComponent.getClass().equals(Locomotive.class)) {
-                    gbc.gridy++;
-                    JLabel priceBracket = new JLabel("DCC Category: "+((Locomotive) productComponent).getPriceBracket().toString());
-                    add(priceBracket, gbc);
-                }
-
-                if (productComponent.getClass().equals(Track.class)) {
-                    gbc.gridy++;
-                    JLabel curvature = new JLabel("Curvature: "+((Track) productComponent).getCurvature().toString());
-                    add(curvature, gbc);
-                }
-
-                if (productComponent.getClass().equals(Controller.class)) {
-                    gbc.gridy++;
-                    JLabel controllerType = new JLabel("Controller Type: "+((Controller) productComponent).getControlType().toString());
-                    add(controllerType, gbc);
-                }
-
-                JPanel quantityPanel = new JPanel();
-                quantityPanel.setLayout(new BorderLayout());
-
-                JLabel quantityLabel = new JLabel("Quantity: ");
-                quantityLabel.setHorizontalAlignment(SwingConstants.RIGHT);
-                quantityBox = new JTextField();
-                quantityBox.setPreferredSize(new Dimension(30, 24));
-                quantityPanel.add(quantityLabel, BorderLayout.CENTER);
-                quantityPanel.add(quantityBox, BorderLayout.EAST);
-
-                gbc.gridy++;
-                add(quantityPanel, gbc);
-            } else {
-                BoxedSet boxedSet = product.getBoxedSet();
-                List<Pair<Component, Integer>> components = boxedSet.getComponents();
-                List<Pair<BoxedSet, Integer>> subBoxedSets = boxedSet.getBoxedSets();
-
-                JPanel componentPanel = new JPanel();
-                JScrollPane scrollPane = new JScrollPane(componentPanel);
-                scrollPane.setMaximumSize(new Dimension(0, 70));
-                scrollPane.setMinimumSize(new Dimension(0, 70));
-                scrollPane.setPreferredSize(new Dimension(0, 70));
-                scrollPane.setVerticalScrollBar(new JScrollBar());
-
-                componentPanel.setLayout(new GridLayout(0, 1));
-
-                subBoxedSets.forEach((c) -> {
-                    BoxedSet set = c.getValue0();
-                    Integer amount = c.getValue1();
-                    JLabel label = new JLabel(amount.toString()+"x "+set.getName());
-                    componentPanel.add(label);
-                });
-
-                components.forEach((c) -> {
-                    Product component = c.getValue0();
-                    Integer amount = c.getValue1();
-                    JLabel label = new JLabel(amount.toString()+"x "+component.getName());
-                    componentPanel.add(label);
-                });
-
-                add(scrollPane, gbc);
-
-                JPanel quantityPanel = new JPanel();
-                quantityPanel.setLayout(new BorderLayout());
-
-                JLabel quantityLabel = new JLabel("Quantity: ");
-                quantityLabel.setHorizontalAlignment(SwingConstants.RIGHT);
-                quantityBox = new JTextField();
-                quantityBox.setPreferredSize(new Dimension(30, 24));
-                quantityPanel.add(quantityLabel, BorderLayout.CENTER);
-                quantityPanel.add(quantityBox, BorderLayout.EAST);
-
-                gbc.gridy++;
-                add(quantityPanel, gbc);
-            }
-        } catch (SQLException e) {
-            throw e;
-        }
+        if (product.isComponent()) {
+            Component productComponent = product.getComponent();
 
-        addToCardBtn = new JButton("Add to Cart");
-        if (product.getStockLevel() <= 0) {
-            addToCardBtn.setEnabled(false);
-            addToCardBtn.setToolTipText("Out of Stock");
-        }
+            JLabel brand = new JLabel("Brand: "+productComponent.getBrand());
+            details.add(brand, dgbc);
 
-        gbc.gridx = 1;
-        add(addToCardBtn, gbc);
+            dgbc.gridy++;
 
-        addToCardBtn.addActionListener((e) -> {
-            if(quantityBox.getText().isEmpty()) {
-                return;
+            JLabel gauge = new JLabel("Gauge: "+productComponent.getGauge().toString());
+            details.add(gauge, dgbc);
+
+            dgbc.gridy++;
+
+            JLabel era = new JLabel("Era: "+productComponent.getEra().toString());
+            details.add(era, dgbc);
+
+            if (productComponent.getClass().equals(Locomotive.class)) {
+                dgbc.gridy++;
+                JLabel priceBracket = new JLabel("DCC Category: "+((Locomotive) productComponent).getPriceBracket().toString());
+                details.add(priceBracket, dgbc);
             }
 
-            quantity = Integer.valueOf(quantityBox.getText());
-            Integer stockLevel = product.getStockLevel();
-            if (quantity > stockLevel) {
-                JOptionPane.showMessageDialog(this, "Sorry we have insufficient stock of this item. We currently only have "+stockLevel+" in stock.");
-                return;
+            if (productComponent.getClass().equals(Track.class)) {
+                dgbc.gridy++;
+                JLabel curvature = new JLabel("Curvature: "+((Track) productComponent).getCurvature().toString());
+                details.add(curvature, dgbc);
             }
 
-            if (quantity < 1) {
-                return;
+            if (productComponent.getClass().equals(Controller.class)) {
+                dgbc.gridy++;
+                JLabel controllerType = new JLabel("Controller Type: "+((Controller) productComponent).getControlType().toString());
+                details.add(controllerType, dgbc);
             }
-            OrderController.currentOrder.addItem(product, quantity);
-            JOptionPane.showMessageDialog(this, "Added "+quantity+"x "+product.getName()+" to your cart.");
-        });
+        } else {
+            BoxedSet boxedSet = product.getBoxedSet();
+            List<Pair<Component, Integer>> components = boxedSet.getComponents();
+            List<Pair<BoxedSet, Integer>> subBoxedSets = boxedSet.getBoxedSets();
+
+            JPanel componentPanel = new JPanel();
+            JScrollPane scrollPane = new JScrollPane(componentPanel);
+            scrollPane.setMaximumSize(new Dimension(0, 70));
+            scrollPane.setMinimumSize(new Dimension(0, 70));
+            scrollPane.setPreferredSize(new Dimension(0, 70));
+            scrollPane.setVerticalScrollBar(new JScrollBar());
+
+            componentPanel.setLayout(new GridLayout(0, 1));
+
+            subBoxedSets.forEach((c) -> {
+                BoxedSet set = c.getValue0();
+                Integer amount = c.getValue1();
+                JLabel label = new JLabel(amount.toString()+"x "+set.getName());
+                componentPanel.add(label);
+            });
+
+            components.forEach((c) -> {
+                Product component = c.getValue0();
+                Integer amount = c.getValue1();
+                JLabel label = new JLabel(amount.toString()+"x "+component.getName());
+                componentPanel.add(label);
+            });
+
+            details.add(scrollPane, dgbc);
+        }
+
+        if (product.getStockLevel() <= 0) {
+            addToCardBtn.setEnabled(false);
+            addToCardBtn.setToolTipText("Out of Stock");
+        } else {
+            addToCardBtn.setEnabled(true);
+            addToCardBtn.setToolTipText(null);
+        }
+
+        revalidate();
+        repaint();
     }
 }
@@ -0,0 +1,188 @@
+package gui.person;
+
+import db.DatabaseBridge;
+import entity.product.Product;
+
+import javax.swing.*;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import java.awt.*;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A virtualized grid of ShopCards. Only the rows inside the viewport get a card, and the same few cards are rebound
+ * to other products as the user scrolls, so scrolling and relayout cost depend on the size of the window rather than
+ * the size of the catalog.
+ * <br><br>
+ * The products come from a ListModel, the grid never owns the data. Every row has the same height so the position of
+ * any product can be computed without measuring the cards before it.
+ */
+class ShopGrid extends JPanel implements Scrollable {
+    private static final int columns = 2;
+    private static final int rowHeight = 220;
+
+    private final ListModel<Product> model;
+    private final int spacing;
+    // a card always shows the product at an index equal to its slot modulo the pool size, so scrolling by a row
+    // only rebinds one row of cards
+    private final List<ShopCard> cards = new ArrayList<>();
+
+    private JViewport viewport;
+    private final ChangeListener viewportListener = e -> {
+        revalidate();
+        repaint();
+    };
+
+    /**
+     * @param model The products to show, in display order
+     * @param spacing Horizontal and vertical gap between cards
+     */
+    ShopGrid(ListModel<Product> model, int spacing) {
+        this.model = model;
+        this.spacing = spacing;
+        setLayout(null);
+
+        model.addListDataListener(new ListDataListener() {
+            @Override
+            public void intervalAdded(ListDataEvent e) { contentsChanged(e); }
+            @Override
+            public void intervalRemoved(ListDataEvent e) { contentsChanged(e); }
+            @Override
+            public void contentsChanged(ListDataEvent e) {
+                // the products behind every slot may have moved, rebind them all on the next layout
+                for (ShopCard card : cards) {
+                    card.product = null;
+                }
+                revalidate();
+                repaint();
+            }
+        });
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        if (getParent() instanceof JViewport parent) {
+            viewport = parent;
+            viewport.addChangeListener(viewportListener);
+        }
+    }
+
+    @Override
+    public void removeNotify() {
+        if (viewport != null) {
+            viewport.removeChangeListener(viewportListener);
+            viewport = null;
+        }
+        super.removeNotify();
+    }
+
+    private int rowCount() {
+        return (model.getSize() + columns - 1) / columns;
+    }
+
+    private int rowStride() {
+        return rowHeight + spacing;
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        int width = viewport != null ? viewport.getExtentSize().width : columns * 300;
+        return new Dimension(width, Math.max(0, rowCount() * rowStride() - spacing));
+    }
+
+    @Override
+    public void doLayout() {
+        Rectangle visible = getVisibleRect();
+        int rows = rowCount();
+        if (rows == 0 || visible.height <= 0) {
+            for (ShopCard card : cards) {
+                card.setVisible(false);
+            }
+            return;
+        }
+
+        // one extra row so a partially visible row at each edge is always covered
+        int poolSize = ((visible.height + rowStride() - 1) / rowStride() + 1) * columns;
+        if (cards.size() != poolSize) {
+            resizePool(poolSize);
+        }
+
+        int firstRow = Math.max(0, visible.y / rowStride());
+        int lastRow = Math.min(rows - 1, (visible.y + visible.height) / rowStride());
+        int firstIndex = firstRow * columns;
+        int endIndex = Math.min(model.getSize(), (lastRow + 1) * columns);
+        int columnWidth = (getWidth() - spacing * (columns - 1)) / columns;
+
+        boolean[] used = new boolean[cards.size()];
+        for (int index = firstIndex; index < endIndex; index++) {
+            int slot = index % cards.size();
+            ShopCard card = cards.get(slot);
+            used[slot] = true;
+
+            Product product = model.getElementAt(index);
+            if (card.getProduct() != product) {
+                try {
+                    card.setProduct(product);
+                } catch (SQLException e) {
+                    DatabaseBridge.databaseError("Error whilst displaying product [" + product.getProductCode() + "]", e);
+                }
+            }
+
+            int row = index / columns;
+            int column = index % columns;
+            card.setBounds(column * (columnWidth + spacing), row * rowStride(), columnWidth, rowHeight);
+            card.setVisible(true);
+        }
+
+        for (int slot = 0; slot < cards.size(); slot++) {
+            if (!used[slot]) {
+                cards.get(slot).setVisible(false);
+            }
+        }
+    }
+
+    private void resizePool(int poolSize) {
+        while (cards.size() < poolSize) {
+            ShopCard card = new ShopCard();
+            card.setVisible(false);
+            cards.add(card);
+            add(card);
+        }
+        while (cards.size() > poolSize) {
+            remove(cards.remove(cards.size() - 1));
+        }
+        // slots map to different products now
+        for (ShopCard card : cards) {
+            card.product = null;
+        }
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return 24;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return true;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+}
@@ -2,9 +2,11 @@ package gui.staff;
 
 import controllers.AppContext;
 import db.DatabaseBridge;
+import db.DatabaseWorker;
 import entity.user.Person;
 import gui.components.TabbedGUIContainer;
 import org.jdesktop.swingx.prompt.PromptSupport;
+import utils.GUI;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
@@ -50,17 +52,11 @@ public class ManagerScreen extends JPanel implements TabbedGUIContainer.TabPanel
                 int confirm = JOptionPane.showConfirmDialog(AppContext.getWindow(), "Are you sure you want to dismiss " + user.getFullName(), "Confirm Action", JOptionPane.YES_NO_OPTION);
 
                 if (confirm == 0) {
-                    DatabaseBridge db = DatabaseBridge.instance();
-                    try {
-                        db.openConnection();
-                        Person.updateUserRole(person, Person.Role.USER);
-                    } catch (SQLException ex) {
-                        throw new RuntimeException(ex);
-                    } finally {
-                        db.closeConnection();
-                    }
-
-                    refresh();
+                    fireButton.setEnabled(false);
+                    DatabaseWorker.submit(() -> Person.updateUserRole(person, Person.Role.USER), done -> refresh(), ex -> {
+                        JOptionPane.showMessageDialog(AppContext.getWindow(), "Could not dismiss " + user.getFullName() + ": " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                        refresh();
+                    });
                 }
             });
         }
@@ -130,14 +126,13 @@ public class ManagerScreen extends JPanel implements TabbedGUIContainer.TabPanel
         JButton search = new JButton("Promote");
 
         search.addActionListener((e) -> {
-            DatabaseBridge db = DatabaseBridge.instance();
-
-            try {
-                db.openConnection();
-                Person newStaffMember = Person.getPersonByEmail(emailBox.getText());
+            String email = emailBox.getText();
+            search.setEnabled(false);
 
+            DatabaseWorker.submit(() -> Person.getPersonByEmail(email), newStaffMember -> {
+                search.setEnabled(true);
                 if (newStaffMember == null) {
-                    JOptionPane.showMessageDialog(AppContext.getWindow(), "Could not find user with the email "+ emailBox.getText(), "User not Found", JOptionPane.ERROR_MESSAGE);
+                    JOptionPane.showMessageDialog(AppContext.getWindow(), "Could not find user with the email "+ email, "User not Found", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
                 StringBuilder sb = new StringBuilder();
@@ -146,50 +141,59 @@ public class ManagerScreen extends JPanel implements TabbedGUIContainer.TabPanel
                 sb.append(" to the role of staff?");
 
                 int confirm = JOptionPane.showConfirmDialog(AppContext.getWindow(), sb.toString(), "Confirm Action", JOptionPane.YES_NO_OPTION);
-                if (confirm == 0) {
-                    Person.updateUserRole(newStaffMember, Person.Role.STAFF);
+                if (confirm != 0) {
+                    return;
                 }
 
                 emailBox.setText("");
-
-            } catch (SQLException ex) {
-                DatabaseBridge.databaseError("Error finding user by email ["+ emailBox.getText()+"] to promote them to staff", ex);
-            } finally {
-                db.closeConnection();
-            }
-            refresh();
+                DatabaseWorker.submit(() -> Person.updateUserRole(newStaffMember, Person.Role.STAFF), done -> refresh(), ex -> {
+                    JOptionPane.showMessageDialog(AppContext.getWindow(), "Could not promote " + newStaffMember.getFullName() + ": " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                });
+            }, ex -> {
+                // already logged by the worker
+                search.setEnabled(true);
+                JOptionPane.showMessageDialog(AppContext.getWindow(), "Error finding user by email ["+ email +"]", "Error", JOptionPane.ERROR_MESSAGE);
+            });
         });
         return search;
     }
 
     private void refresh() {
         contentPanel.removeAll();
+        contentPanel.add(GUI.createLoadingPlaceholder("Loading staff..."), gbc);
+        revalidate();
+        repaint();
 
-        DatabaseBridge db = DatabaseBridge.instance();
-
-        List<Person> personList = new ArrayList<>();
-        try {
-            db.openConnection();
-            PreparedStatement query = db.prepareStatement("SELECT Person.PersonId FROM Person JOIN team005.Role R on Person.PersonId = R.personId WHERE R.role != 'USER'");
+        DatabaseWorker.submit(ManagerScreen::loadStaff, personList -> {
+            contentPanel.removeAll();
+            personList.forEach(this::addUser);
+
+            revalidate();
+            repaint();
+        }, e -> {
+            contentPanel.removeAll();
+            contentPanel.add(new JLabel("Failed to fetch all staff: " + e.getMessage()), gbc);
+            revalidate();
+            repaint();
+        });
+    }
 
+    /**
+     * Runs on a DatabaseWorker thread, so it must not touch any components
+     */
+    private static List<Person> loadStaff() throws SQLException {
+        List<Integer> staffIds = new ArrayList<>();
+        try (PreparedStatement query = DatabaseBridge.instance().prepareStatement("SELECT Person.PersonId FROM Person JOIN Role R on Person.PersonId = R.personId WHERE R.role != 'USER'")) {
             ResultSet rs = query.executeQuery();
 
             while (rs.next()) {
-                Person them = Person.getPersonByID(rs.getInt("PersonId"));
-                assert them != null;
-                personList.add(them);
+                staffIds.add(rs.getInt("PersonId"));
             }
         } catch (SQLException e) {
             DatabaseBridge.databaseError("Failed to fetch all persons", e);
-            throw new RuntimeException();
-        } finally {
-            db.closeConnection();
+            throw e;
         }
-
-        personList.forEach(this::addUser);
-
-        revalidate();
-        repaint();
+        return new ArrayList<>(Person.getPersonsByIds(staffIds).values());
     }
 
     private void addUser(Person user) {
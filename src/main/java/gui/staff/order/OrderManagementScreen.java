@@ -2,11 +2,15 @@ package gui.staff.order;
 
 import controllers.AppContext;
 import db.DatabaseBridge;
+import db.DatabaseWorker;
+import db.KeysetQuery;
 import entity.order.Order;
+import entity.order.OrderFulfillment;
 import entity.order.OrderLine;
+import entity.order.OrderSummary;
 import entity.product.Product;
-import entity.user.Person;
 import gui.components.CurrencyCellRenderer;
+import gui.components.PagedTableModel;
 import gui.components.TabbedGUIContainer;
 
 import javax.swing.*;
@@ -14,18 +18,16 @@ import javax.swing.border.EmptyBorder;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.table.DefaultTableModel;
-import javax.swing.table.TableModel;
-import javax.swing.table.TableRowSorter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.sql.PreparedStatement;
-import java.sql.SQLException;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
+import utils.GUI;
+
 import static utils.GUI.setEnabledRecursively;
 
 public class OrderManagementScreen extends JPanel implements TabbedGUIContainer.TabPanel {
@@ -33,8 +35,25 @@ public class OrderManagementScreen extends JPanel implements TabbedGUIContainer.
     private final String[] orderLineColumns = new String[]{"Product", "Brand", "Name", "Quantity", "SubTotal"};
     // the related product code, the brand and product name, the quantity, and the derived line-cost.
 
-    private List<Order> orders;
-    private Object[][] orderData;
+    // the orders awaiting fulfillment, a page at a time, sorted by the database
+    private static final KeysetQuery orderQuery = new KeysetQuery(
+            Order.SUMMARY_SELECT,
+            Order.SUMMARY_FROM,
+            "`Order`.status = ?",
+            Order.SUMMARY_GROUP_BY,
+            "`Order`.orderId",
+            new String[]{"`Order`.orderId", "`Order`.date", "CONCAT(Person.forename, ' ', Person.surname)", "Person.email", null, null, "`Order`.status"},
+            rs -> {
+                OrderSummary o = Order.summaryFromResultSet(rs);
+                return new Object[]{o.orderId(), o.date().toString(), o.customerName(), o.email(), o.address(),
+                        o.hasPayment() ? "VALID" : "NONE", o.status()};
+            }
+    );
+
+    private final PagedTableModel orderModel = new PagedTableModel(orderQuery,
+            new Object[]{Order.OrderStatus.CONFIRMED.toString()}, orderViewColumns,
+            new Class<?>[]{Integer.class, String.class, String.class, String.class, String.class, String.class, Object.class},
+            100, 20);
 
     private final JPanel orderViewContainer;
     private JTable orderList;
@@ -49,7 +68,8 @@ public class OrderManagementScreen extends JPanel implements TabbedGUIContainer.
         // jtable with all orders, status screen below which displays the full order when the row is selected
         // basic filters at the top
 
-        orderData = loadData();
+        orderModel.setOnPageFailed(e -> JOptionPane.showMessageDialog(AppContext.getWindow(),
+                "Could not load orders: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE));
 
         GridBagLayout gbl = new GridBagLayout();
         GridBagConstraints gbc = new GridBagConstraints();
@@ -97,6 +117,7 @@ public class OrderManagementScreen extends JPanel implements TabbedGUIContainer.
         gbc.weighty = 1;
         orderViewContainer = new JPanel();
         orderViewContainer.setLayout(new GridBagLayout());
+        orderViewContainer.add(GUI.createLoadingPlaceholder("Loading orders..."));
         add(orderViewContainer, gbc);
         refreshData();
 
@@ -182,47 +203,33 @@ public class OrderManagementScreen extends JPanel implements TabbedGUIContainer.
                     return;
                 }
 
-                // for each orderline, deduct it's stock, break if negative
-                // mark order as fulfilled
-
-                DatabaseBridge db = DatabaseBridge.instance();
-                try {
-                    db.openConnection();
-                    db.setAutoCommit(false);
-
-                    for (OrderLine l : lastSelectedOrder.getItemsList()) {
-                        if (!l.fulfill())
-                            throw new IllegalStateException();
-                    }
-
-                    Order.updateOrderStatus(getCurrentSelectedOrderID(), Order.OrderStatus.FULFILLED);
-                    db.commit();
-                } catch (IllegalStateException error) {
-                    try {
-                        db.rollback();
-                    } catch (SQLException ex) {
-                        DatabaseBridge.databaseError("Could not clean up", ex);
-                    }
-                    JOptionPane.showMessageDialog(AppContext.getWindow(), "Could not fulfill order: Not enough stock held", "Error", JOptionPane.WARNING_MESSAGE);
-                } catch (SQLException error) {
-                    DatabaseBridge.databaseError("Could not fulfill order", error);
-                    try {
-                        db.rollback();
-                    } catch (SQLException ex) {
-                        DatabaseBridge.databaseError("Could not clean up", ex);
-                    }
-                    JOptionPane.showMessageDialog(AppContext.getWindow(), "Could not fulfill order: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-                } finally {
-                    try {
-                        db.setAutoCommit(true);
-                    } catch (SQLException error) {
-                        DatabaseBridge.databaseError("Could not clean up", error);
-                    }
-                    db.closeConnection();
+                // deduct the stock for every line in one conditional batch, nothing changes if any line is short
+                Order order = lastSelectedOrder;
+                if (order == null) {
+                    return; // still loading its contents
                 }
-                AppContext.queueStoreReload = true;
-                refreshData();
-                resetState();
+                setEnabledRecursively(orderControls, false);
+                DatabaseWorker.submit(() -> {
+                    OrderFulfillment.fulfill(order);
+                    return null;
+                }, done -> {
+                    refreshData();
+                    resetState();
+                }, error -> {
+                    if (error instanceof Order.OrderHasInsufficientStockException insufficientStock) {
+                        StringBuilder message = new StringBuilder("Could not fulfill order: Not enough stock held for");
+                        for (OrderLine l : insufficientStock.getFailedLines()) {
+                            message.append("\n    ").append(l.getProductCode()).append(" (x").append(l.getQuantity()).append(")");
+                        }
+                        JOptionPane.showMessageDialog(AppContext.getWindow(), message.toString(), "Error", JOptionPane.WARNING_MESSAGE);
+                    } else if (error instanceof IllegalStateException) {
+                        JOptionPane.showMessageDialog(AppContext.getWindow(), "Could not fulfill order: " + error.getMessage(), "Error", JOptionPane.WARNING_MESSAGE);
+                    } else {
+                        JOptionPane.showMessageDialog(AppContext.getWindow(), "Could not fulfill order: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                    refreshData();
+                    resetState();
+                });
             }
         });
 
@@ -232,20 +239,22 @@ public class OrderManagementScreen extends JPanel implements TabbedGUIContainer.
         deleteOrder.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                DatabaseBridge db = DatabaseBridge.instance();
-                try {
-                    db.openConnection();
-                    PreparedStatement deleteOrder = db.prepareStatement("DELETE FROM `Order` WHERE orderId=?");
-                    deleteOrder.setInt(1, getCurrentSelectedOrderID());
-                    deleteOrder.executeUpdate();
-                } catch (SQLException error) {
-                    DatabaseBridge.databaseError("Could not delete order", error);
+                int orderId = getCurrentSelectedOrderID();
+                setEnabledRecursively(orderControls, false);
+                DatabaseWorker.submit(() -> {
+                    try (PreparedStatement deleteOrder = DatabaseBridge.instance().prepareStatement("DELETE FROM `Order` WHERE orderId=?")) {
+                        deleteOrder.setInt(1, orderId);
+                        deleteOrder.executeUpdate();
+                    }
+                    return null;
+                }, done -> {
+                    refreshData();
+                    resetState();
+                }, error -> {
                     JOptionPane.showMessageDialog(AppContext.getWindow(), "Could not delete order: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-                } finally {
-                    db.closeConnection();
-                }
-                refreshData();
-                resetState();
+                    refreshData();
+                    resetState();
+                });
             }
         });
 
@@ -274,21 +283,29 @@ public class OrderManagementScreen extends JPanel implements TabbedGUIContainer.
         repaint();
     }
 
+    /**
+     * Counts the orders again and drops every loaded page, the table itself is kept so its scroll position and sort
+     * survive a refresh
+     */
     private void refreshData() {
+        orderModel.refresh(() -> {
+            if (orderList == null) {
+                showOrders();
+            }
+        });
+    }
+
+    private void showOrders() {
         orderViewContainer.removeAll();
-        orderData = loadData();
 
-        // Create a new JTable with the updated order data
-        orderList = new JTable(new OrderViewTableModel(orderData, orderViewColumns));
+        orderList = new JTable(orderModel);
         JScrollPane scrollPane = new JScrollPane(orderList);
         orderList.setRowHeight(24);
 
-        // Set up a sorter for the JTable to allow sorting by date in ascending order
-        TableRowSorter<TableModel> sorter = new TableRowSorter<TableModel>(orderList.getModel());
+        // sorted by the database, oldest orders first to begin with
+        PagedTableModel.Sorter sorter = new PagedTableModel.Sorter(orderModel);
         orderList.setRowSorter(sorter);
-        List<RowSorter.SortKey> sortKeys = new ArrayList<>(1);
-        sortKeys.add(new RowSorter.SortKey(1, SortOrder.ASCENDING));
-        sorter.setSortKeys(sortKeys);
+        sorter.setSortKeys(List.of(new RowSorter.SortKey(1, SortOrder.ASCENDING)));
 
         // Configure the GridBagConstraints for placing the JTable in the order view container
         GridBagConstraints gbc = new GridBagConstraints();
@@ -303,7 +320,8 @@ public class OrderManagementScreen extends JPanel implements TabbedGUIContainer.
         orderList.getSelectionModel().addListSelectionListener(new ListSelectionListener() {
             @Override
             public void valueChanged(ListSelectionEvent event) {
-                if (orderList.getSelectedRow() != -1 && orderList.getSelectedRow() != lastSelectedRow) {
+                if (orderList.getSelectedRow() != -1 && orderList.getSelectedRow() != lastSelectedRow
+                        && orderList.getValueAt(orderList.getSelectedRow(), 0) != null) {
                     lastSelectedRow = orderList.getSelectedRow();
                     updateSingleOrderView(getCurrentSelectedOrderID());
                     setEnabledRecursively(orderControls, true);
@@ -320,21 +338,17 @@ public class OrderManagementScreen extends JPanel implements TabbedGUIContainer.
     }
 
     private void updateSingleOrderView(int orderID) {
-        {
-            for (Order o : orders) {
-                if (o.getOrderId() == orderID) {
-                    lastSelectedOrder = o;
-                    break;
-                }
+        // the order itself is only loaded once it is selected, its lines come with their products
+        lastSelectedOrder = null;
+        orderTotal.setText("<html><b>Total:</b> loading...</html>");
+        DatabaseWorker.submit(() -> {
+            Order order = Order.getOrderWithID(orderID);
+            if (order == null) {
+                throw new Order.OrderNotFoundException("Failed to find order with orderId [" + orderID + "]");
             }
-        }
-        assert(lastSelectedOrder != null);
 
-        List<OrderLine> ol = lastSelectedOrder.getItemsList();
-        Object[][] orderMatrix = new Object[ol.size()][orderLineColumns.length];
-        float totalCost = 0;
-        try {
-            DatabaseBridge.instance().openConnection();
+            List<OrderLine> ol = order.getItemsList();
+            Object[][] orderMatrix = new Object[ol.size()][orderLineColumns.length];
             int i = 0;
             for (OrderLine l : ol) {
                 Product p = l.getItem();
@@ -348,17 +362,27 @@ public class OrderManagementScreen extends JPanel implements TabbedGUIContainer.
 
                 orderMatrix[i][2] = p.getName();
                 orderMatrix[i][3] = l.getQuantity();
-
-                float subTotal = (float) (l.getQuantity() * p.getPrice());
-                totalCost += subTotal;
-                orderMatrix[i][4] = subTotal;
+                orderMatrix[i][4] = (float) (double) l.getSubtotal();
 
                 i++;
             }
-        } catch (SQLException e) {
+            return new SelectedOrder(order, orderMatrix);
+        }, selected -> {
+            if (lastSelectedRow != -1 && getCurrentSelectedOrderID() == selected.order().getOrderId()) {
+                lastSelectedOrder = selected.order();
+                showOrderContents(selected.rows());
+            }
+        }, e -> {
             JOptionPane.showMessageDialog(AppContext.getWindow(), "Could not show order contents: " + e.getMessage(), "Internal Error", JOptionPane.ERROR_MESSAGE);
-        } finally {
-            DatabaseBridge.instance().closeConnection();
+        });
+    }
+
+    private record SelectedOrder(Order order, Object[][] rows) { }
+
+    private void showOrderContents(Object[][] orderMatrix) {
+        float totalCost = 0;
+        for (Object[] row : orderMatrix) {
+            totalCost += (float) row[4];
         }
 
         orderContents.setModel(new OrderViewTableModel(orderMatrix, orderLineColumns));
@@ -377,48 +401,6 @@ public class OrderManagementScreen extends JPanel implements TabbedGUIContainer.
         repaint();
     }
 
-    private Object[][] loadData() {
-        Object[][] orderData;
-
-        // will need to query a customer payment and address for each order
-        DatabaseBridge db = DatabaseBridge.instance();
-        try {
-            db.openConnection();
-            orders = Order.getOrdersWithStatus(Order.OrderStatus.CONFIRMED);
-
-            if (orders.isEmpty()) {
-                return new Object[0][orderViewColumns.length];
-            }
-            orderData = new Object[orders.size()][orderViewColumns.length];
-
-            for (int i = 0; i < orders.size(); i++) {
-                Order o = orders.get(i);
-                orderData[i][0] = o.getOrderId();
-                orderData[i][1] = o.getDate().toString();
-
-                Person p = Person.getPersonByID(o.getCustomerID());
-                orderData[i][2] = p.getFullName();
-                orderData[i][3] = p.getEmail();
-                orderData[i][4] = p.getAddress().toString();
-
-                if (p.getBankDetailsId() == -1) {
-                    orderData[i][5] = "NONE";
-                } else {
-                    orderData[i][5] = "VALID";
-                }
-
-                orderData[i][6] = o.getStatus();
-            }
-
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        } finally {
-            db.closeConnection();
-        }
-
-        return orderData;
-    }
-
     @Override
     public void setNotebookContainer(TabbedGUIContainer cont) {
 
@@ -2,6 +2,8 @@ package gui.staff.stock;
 
 import controllers.AppContext;
 import db.DatabaseBridge;
+import db.DatabaseWorker;
+import entity.product.CatalogCache;
 import entity.product.Component;
 import entity.product.Controller;
 import entity.product.Locomotive;
@@ -125,132 +127,135 @@ class CreateProductPanel extends JPanel {
     }
 
     private void createNewProduct() {
-        DatabaseBridge db = DatabaseBridge.instance();
-        try {
-            db.openConnection();
-            db.setAutoCommit(false);
+        // validate and read the whole form here on the EDT, the inserts themselves run in the background
+        StringBuilder validationErrorMessage = new StringBuilder();
+        String productType = Objects.requireNonNull(getSelectedButtonFromGroup(productTypeRadioGroup));
+        boolean valid = validateProductForm(validationErrorMessage);
+        if (valid && productType.equals(componentText)) {
+            valid = validateComponentForm(validationErrorMessage);
+        } else if (valid && productType.equals(boxedSetText)) {
+            valid = validateBoxedSetForm(validationErrorMessage);
+        }
+        if (!valid) {
+            JOptionPane.showMessageDialog(
+                    AppContext.getWindow(),
+                    "Could not insert new product: " + validationErrorMessage,
+                    "Invalid Form Input",
+                    JOptionPane.ERROR_MESSAGE);
+            setProductCreationEnabled(true);
+            return;
+        }
 
-            StringBuilder validationErrorMessage = new StringBuilder();
+        String productCode = productCodeInput.getText();
+        String name = nameInput.getText();
+        int stock = Math.toIntExact(((Long) stockInput.getValue()));
+        double price = (Double) priceInput.getValue();
 
-            if (!validateProductForm(validationErrorMessage)) {
-                throw new IllegalStateException(validationErrorMessage.toString());
-            }
+        String componentType = getSelectedButtonFromGroup(componentTypeRadioGroup);
+        String brand = brandInput.getText();
+        String era = eraInput.getText();
+        Component.Gauge gauge = (Component.Gauge) gaugeInput.getSelectedItem();
+        Track.Curvature curvature = (Track.Curvature) curvatureInput.getSelectedItem();
+        Locomotive.PriceBracket priceBracket = (Locomotive.PriceBracket) locomotiveInput.getSelectedItem();
+        Controller.ControlType controlType = (Controller.ControlType) controllerInput.getSelectedItem();
 
-            // Product table
-            {
-                PreparedStatement newProduct = db.prepareStatement("INSERT INTO Product VALUES (?,?,?,?)");
-                newProduct.setString(1, productCodeInput.getText());
-                newProduct.setString(2, nameInput.getText());
-                newProduct.setInt(3, Math.toIntExact(((Long) stockInput.getValue())));
-                newProduct.setDouble(4, (Double) priceInput.getValue());
-                newProduct.executeUpdate();
-            }
+        List<Object[]> boxedSetContent = new ArrayList<>();
+        for (int i = 0; i < boxedSetContentSelection.getRowCount(); i++) {
+            int quantity = (Integer) boxedSetContentSelection.getValueAt(i, 2);
+            if (quantity == 0) continue;
+            boxedSetContent.add(new Object[]{boxedSetContentSelection.getValueAt(i, 0), quantity});
+        }
 
-            switch (Objects.requireNonNull(getSelectedButtonFromGroup(productTypeRadioGroup))) {
-                case componentText:
-                    if (!validateComponentForm(validationErrorMessage)) {
-                        throw new IllegalStateException(validationErrorMessage.toString());
-                    }
+        DatabaseWorker.submit(() -> {
+            DatabaseBridge db = DatabaseBridge.instance();
+            db.setAutoCommit(false);
+            try {
+                // Product table
+                try (PreparedStatement newProduct = db.prepareStatement("INSERT INTO Product VALUES (?,?,?,?)")) {
+                    newProduct.setString(1, productCode);
+                    newProduct.setString(2, name);
+                    newProduct.setInt(3, stock);
+                    newProduct.setDouble(4, price);
+                    newProduct.executeUpdate();
+                }
 
-                    //System.out.println("Component");
-                    {
-                        PreparedStatement newComponent = db.prepareStatement("INSERT INTO Component VALUES (?,?,?,?)");
-                        newComponent.setString(1, productCodeInput.getText());
-                        newComponent.setString(2, brandInput.getText());
-                        newComponent.setString(3, eraInput.getText());
-                        newComponent.setString(4, ((Component.Gauge) Objects.requireNonNull(gaugeInput.getSelectedItem())).toString());
-                        newComponent.executeUpdate();
-                    }
+                switch (productType) {
+                    case componentText:
+                        try (PreparedStatement newComponent = db.prepareStatement("INSERT INTO Component VALUES (?,?,?,?)")) {
+                            newComponent.setString(1, productCode);
+                            newComponent.setString(2, brand);
+                            newComponent.setString(3, era);
+                            newComponent.setString(4, Objects.requireNonNull(gauge).toString());
+                            newComponent.executeUpdate();
+                        }
 
-                    switch (Objects.requireNonNull(getSelectedButtonFromGroup(componentTypeRadioGroup))) {
-                        case trackText:
-                            //System.out.println("track");
-                            {
-                                PreparedStatement newTrack = db.prepareStatement("INSERT INTO Track VALUES (?,?)");
-                                newTrack.setString(1, productCodeInput.getText());
-                                newTrack.setString(2, ((Track.Curvature) Objects.requireNonNull(curvatureInput.getSelectedItem())).toString());
-                                newTrack.executeUpdate();
-                            }
-                            break;
-                        case locomotiveText:
-                            //System.out.println("locomotive");
-                            {
-                                PreparedStatement newLocomotive = db.prepareStatement("INSERT INTO Locomotive VALUES (?,?)");
-                                newLocomotive.setString(1, productCodeInput.getText());
-                                newLocomotive.setString(2, ((Locomotive.PriceBracket) Objects.requireNonNull(locomotiveInput.getSelectedItem())).toString());
-                                newLocomotive.executeUpdate();
-                            }
-                            break;
-                        case controllerText:
-                            //System.out.println("controller");
-                            {
-                                PreparedStatement newController = db.prepareStatement("INSERT INTO Controller VALUES (?,?)");
-                                newController.setString(1, productCodeInput.getText());
-                                newController.setString(2, ((Controller.ControlType) Objects.requireNonNull(controllerInput.getSelectedItem())).toString());
-                                newController.executeUpdate();
+                        switch (Objects.requireNonNull(componentType)) {
+                            case trackText:
+                                try (PreparedStatement newTrack = db.prepareStatement("INSERT INTO Track VALUES (?,?)")) {
+                                    newTrack.setString(1, productCode);
+                                    newTrack.setString(2, Objects.requireNonNull(curvature).toString());
+                                    newTrack.executeUpdate();
+                                }
+                                break;
+                            case locomotiveText:
+                                try (PreparedStatement newLocomotive = db.prepareStatement("INSERT INTO Locomotive VALUES (?,?)")) {
+                                    newLocomotive.setString(1, productCode);
+                                    newLocomotive.setString(2, Objects.requireNonNull(priceBracket).toString());
+                                    newLocomotive.executeUpdate();
+                                }
+                                break;
+                            case controllerText:
+                                try (PreparedStatement newController = db.prepareStatement("INSERT INTO Controller VALUES (?,?)")) {
+                                    newController.setString(1, productCode);
+                                    newController.setString(2, Objects.requireNonNull(controlType).toString());
+                                    newController.executeUpdate();
+                                }
+                                break;
+                            default:
+                                break;
+                        }
+                        break;
+                    case boxedSetText:
+                        try (PreparedStatement newBoxSetItem = db.prepareStatement("INSERT INTO BoxedSetContent VALUES (?,?,?)")) {
+                            newBoxSetItem.setString(1, productCode);
+                            for (Object[] content : boxedSetContent) {
+                                newBoxSetItem.setString(2, (String) content[0]);
+                                newBoxSetItem.setInt(3, (Integer) content[1]);
+                                newBoxSetItem.addBatch();
                             }
-                            break;
-                        default:
-                            break;
-                    }
-                    break;
-                case boxedSetText:
-                    if (!validateBoxedSetForm(validationErrorMessage)) {
-                        throw new IllegalStateException(validationErrorMessage.toString());
-                    }
-                    //System.out.println("Boxed set");
-                    {
-                        PreparedStatement newBoxSetItem = db.prepareStatement("INSERT INTO BoxedSetContent VALUES (?,?,?)");
-                        newBoxSetItem.setString(1, productCodeInput.getText());
-
-                        for (int i = 0; i < boxedSetContentSelection.getRowCount(); i++) {
-                            int quantity = (Integer) boxedSetContentSelection.getValueAt(i, 2);
-                            if (quantity == 0) continue;
-
-                            newBoxSetItem.setString(2, (String) boxedSetContentSelection.getValueAt(i, 0));
-                            newBoxSetItem.setInt(3, quantity);
-                            newBoxSetItem.executeUpdate();
+                            newBoxSetItem.executeBatch();
                         }
-                    }
-                    break;
-            }
+                        break;
+                }
 
-            db.commit();
-            db.setAutoCommit(true);
+                db.commit();
+            } catch (Throwable e) {
+                try {
+                    db.rollback();
+                } catch (Throwable i) {
+                    DatabaseBridge.databaseError("Product creation rollbackerror", i);
+                }
+                throw e;
+            } finally {
+                db.setAutoCommit(true);
+            }
+            CatalogCache.refresh(productCode);
+            return null;
+        }, done -> {
             JOptionPane.showMessageDialog(
                     AppContext.getWindow(),
                     "Added new product to stock",
                     "Success",
                     JOptionPane.INFORMATION_MESSAGE);
-        } catch (IllegalStateException e) {
-            try {
-                db.rollback();
-            } catch (Throwable i) {
-                DatabaseBridge.databaseError("Product creation rollbackerror", i);
-            }
-            JOptionPane.showMessageDialog(
-                    AppContext.getWindow(),
-                    "Could not insert new product: " + e.getMessage(),
-                    "Invalid Form Input",
-                    JOptionPane.ERROR_MESSAGE);
-        } catch (Throwable e) {
-            DatabaseBridge.databaseError("Product creation error", e);
-            try {
-                db.rollback();
-            } catch (Throwable i) {
-                DatabaseBridge.databaseError("Product creation rollbackerror", i);
-            }
+            alterEvent.run();
+        }, e -> {
             JOptionPane.showMessageDialog(
                     AppContext.getWindow(),
                     "Could not insert new product entry.",
                     "Stock Insertion Error",
                     JOptionPane.ERROR_MESSAGE);
-        } finally {
-            db.closeConnection();
-        }
-
-        AppContext.queueStoreReload = true;
-        SwingUtilities.invokeLater(alterEvent);
+            alterEvent.run();
+        });
     }
 
     private boolean validateProductForm(StringBuilder message) {
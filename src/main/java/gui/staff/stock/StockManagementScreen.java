@@ -3,22 +3,22 @@ package gui.staff.stock;
 import controllers.AppContext;
 import db.DatabaseBridge;
 import db.DatabaseOperation;
+import db.DatabaseWorker;
+import entity.product.CatalogCache;
 import entity.product.Product;
 import gui.components.ButtonColumn;
 import gui.components.CurrencyCellRenderer;
+import gui.components.PagedTableModel;
 import gui.components.TabbedGUIContainer;
+import utils.GUI;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
-import javax.swing.table.TableModel;
-import javax.swing.table.TableRowSorter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.List;
 
 public class StockManagementScreen extends JPanel implements TabbedGUIContainer.TabPanel {
@@ -28,7 +28,8 @@ public class StockManagementScreen extends JPanel implements TabbedGUIContainer.
 
     JPanel productCreationContainer;
 
-    Object[][] productData;
+    private StockManagementTableModel productModel;
+    private JTable productTable;
 
     public StockManagementScreen() {
         GridBagLayout gbl = new GridBagLayout();
@@ -86,10 +87,10 @@ public class StockManagementScreen extends JPanel implements TabbedGUIContainer.
         gbc.gridy++;
         gbc.weighty = 0.6;
 
+        // the form is created once the product list has loaded, it needs the products for boxed sets
         productCreationContainer = new JPanel();
         GridBagLayout gbl2 = new GridBagLayout();
         productCreationContainer.setLayout(gbl2);
-        createProductForm();
         JScrollPane pccScroll = new JScrollPane(productCreationContainer,
                 JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED,
                 JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
@@ -97,66 +98,81 @@ public class StockManagementScreen extends JPanel implements TabbedGUIContainer.
     }
 
     private void createProductForm() {
-        productCreationContainer.removeAll();
-        GridBagConstraints gbc2 = new GridBagConstraints();
-        gbc2.fill = GridBagConstraints.BOTH;
-        gbc2.weighty = 1;
-        gbc2.weightx = 1;
-        CreateProductPanel cpp = new CreateProductPanel(productData, new Runnable() {
-            @Override
-            public void run() {
-                updateStockView();
+        // the boxed set builder lists every product, the catalog cache already holds them
+        DatabaseWorker.submit(() -> {
+            List<Product> products = CatalogCache.getAll();
+            Object[][] data = new Object[products.size()][columns.length];
+            for (int i = 0; i < products.size(); i++) {
+                Product product = products.get(i);
+                data[i][0] = product.getProductCode();
+                data[i][1] = product.getName();
+                data[i][2] = product.getPrice();
+                data[i][3] = product.getStockLevel();
             }
+            return data;
+        }, productData -> {
+            productCreationContainer.removeAll();
+            GridBagConstraints gbc2 = new GridBagConstraints();
+            gbc2.fill = GridBagConstraints.BOTH;
+            gbc2.weighty = 1;
+            gbc2.weightx = 1;
+            CreateProductPanel cpp = new CreateProductPanel(productData, new Runnable() {
+                @Override
+                public void run() {
+                    updateStockView();
+                }
+            });
+            productCreationContainer.add(cpp, gbc2);
+
+            revalidate();
+            repaint();
+        }, e -> {
+            productCreationContainer.removeAll();
+            productCreationContainer.add(new JLabel("Could not load products: " + e.getMessage(), SwingConstants.CENTER));
+            revalidate();
+            repaint();
         });
-        productCreationContainer.add(cpp, gbc2);
     }
 
+    /**
+     * Reads the product table again, the table itself is kept so its scroll position and sort survive
+     */
     private void updateStockView() {
-        viewContainer.removeAll();
-        createStockView(viewContainer);
+        productModel.refresh(this::onProductsCounted);
         createProductForm();
-
-        revalidate();
-        repaint();
     }
 
     private void createStockView(JPanel container) {
-//        container.setMinimumSize(new Dimension(0, 100));
-        try {
-            DatabaseBridge.instance().openConnection();
-            PreparedStatement countQuery = DatabaseBridge.instance().prepareStatement("SELECT COUNT(*) FROM Product;");
-            ResultSet res = countQuery.executeQuery();
-            int count = -1;
-            if (res.next()) {
-                count = res.getInt(1);
-            } else {
-                throw new RuntimeException("Could not get product data");
-            }
-
-            ResultSet products = Product.getAllProducts();
-            assert products != null;
-            productData = new Object[count][columns.length];
-            int index = 0;
-            while (true) {
-                productData[index][0] = products.getString("productCode");
-                productData[index][1] = products.getString("name");
-                productData[index][2] = products.getDouble("price");
-                productData[index][3] = products.getInt("stockLevel");
-                if (!products.next()) break;
-                index++;
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        } finally {
-            DatabaseBridge.instance().closeConnection();
-        }
+        container.add(GUI.createLoadingPlaceholder("Loading products..."));
 
-        JTable jt = new JTable(new StockManagementTableModel(productData, columns, new Runnable() {
+        productModel = new StockManagementTableModel(columns, new Runnable() {
             @Override
             public void run() {
                 createProductForm();
             }
-        }));
+        });
+        productModel.setOnPageFailed(e -> JOptionPane.showMessageDialog(AppContext.getWindow(),
+                "Could not load products: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE));
+        productModel.refresh(this::onProductsCounted);
+        createProductForm();
+    }
+
+    /**
+     * Swaps the loading placeholder for the table the first time the products have been counted
+     */
+    private void onProductsCounted() {
+        if (productTable != null) return;
+
+        viewContainer.removeAll();
+        showStockView(viewContainer);
+
+        revalidate();
+        repaint();
+    }
+
+    private void showStockView(JPanel container) {
+        JTable jt = new JTable(productModel);
+        productTable = jt;
         jt.setRowHeight(24);
         jt.getColumnModel().getColumn(2).setCellRenderer(new CurrencyCellRenderer());
         ButtonColumn.setButtonColumn(jt.getColumn("Delete Item"), new ButtonColumn.TextFunction() {
@@ -167,57 +183,51 @@ public class StockManagementScreen extends JPanel implements TabbedGUIContainer.
         }, new ButtonColumn.ActionFunction() {
             @Override
             public void onClick(int row, int column) {
-                DatabaseBridge db = DatabaseBridge.instance();
-                try {
-                    db.openConnection();
-
-                    String productCode = (String)jt.getValueAt(row, 0);
-
-                    PreparedStatement isProductReferencedInOrders = db.prepareStatement("SELECT COUNT(1) FROM OrderLine WHERE productCode=? AND quantity>0;");
-                    isProductReferencedInOrders.setString(1, productCode);
-                    ResultSet res = isProductReferencedInOrders.executeQuery();
-                    if (res.next()) {
-                        String confirmMessage;
-                        if (res.getInt(1) != 0) {
-                            confirmMessage = "This product is referenced in past or present orders, deleting it will modify them...";
-                        } else {
-                            confirmMessage = "Are you sure? This product is not referenced in any orders.";
-                        }
-                        int deleteConfirm = JOptionPane.showConfirmDialog(AppContext.getWindow(), confirmMessage, "Dangerous Action", JOptionPane.YES_NO_OPTION);
-                        if (deleteConfirm == JOptionPane.NO_OPTION) {
-                            return;
-                        }
+                String productCode = (String)jt.getValueAt(row, 0);
+                if (productCode == null) {
+                    return; // the row has not loaded yet
+                }
+                DatabaseWorker.submit(() -> {
+                    try (PreparedStatement isProductReferencedInOrders = DatabaseBridge.instance().prepareStatement("SELECT COUNT(1) FROM OrderLine WHERE productCode=? AND quantity>0;")) {
+                        isProductReferencedInOrders.setString(1, productCode);
+                        ResultSet res = isProductReferencedInOrders.executeQuery();
+                        return res.next() && res.getInt(1) != 0;
+                    }
+                }, isReferenced -> {
+                    String confirmMessage;
+                    if (isReferenced) {
+                        confirmMessage = "This product is referenced in past or present orders, deleting it will modify them...";
+                    } else {
+                        confirmMessage = "Are you sure? This product is not referenced in any orders.";
+                    }
+                    int deleteConfirm = JOptionPane.showConfirmDialog(AppContext.getWindow(), confirmMessage, "Dangerous Action", JOptionPane.YES_NO_OPTION);
+                    if (deleteConfirm != JOptionPane.YES_OPTION) {
+                        return;
                     }
 
-                    // THIS CODE WORKS BUT I DO NOT WANT STUFF TO BE DELETED RIGHT NOW, WE NEED TO TEST THE APP
-                    PreparedStatement productDeletion = db.prepareStatement("DELETE FROM Product WHERE productCode=?;");
-                    productDeletion.setString(1, productCode);
-                    productDeletion.executeUpdate();
-                    JOptionPane.showMessageDialog(AppContext.getWindow(), "Deleted '" + productCode + "' from products.", "Success", JOptionPane.INFORMATION_MESSAGE);
-                    SwingUtilities.invokeLater(new Runnable() {
-                        @Override
-                        public void run() {
-                            StockManagementScreen.this.updateStockView();
+                    DatabaseWorker.submit(() -> {
+                        try (PreparedStatement productDeletion = DatabaseBridge.instance().prepareStatement("DELETE FROM Product WHERE productCode=?;")) {
+                            productDeletion.setString(1, productCode);
+                            productDeletion.executeUpdate();
                         }
+                        CatalogCache.remove(productCode);
+                        return null;
+                    }, deleted -> {
+                        JOptionPane.showMessageDialog(AppContext.getWindow(), "Deleted '" + productCode + "' from products.", "Success", JOptionPane.INFORMATION_MESSAGE);
+                        StockManagementScreen.this.updateStockView();
+                    }, e -> {
+                        JOptionPane.showMessageDialog(AppContext.getWindow(), "Could not delete item: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
                     });
-                }
-                catch (SQLException e) {
+                }, e -> {
                     JOptionPane.showMessageDialog(AppContext.getWindow(), "Could not delete item: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-                    throw new RuntimeException(e);
-                } finally {
-                    db.closeConnection();
-                }
-                AppContext.queueStoreReload = true;
+                });
             }
         });
 
-        TableRowSorter<TableModel> sorter = new TableRowSorter<TableModel>(jt.getModel());
+        // sorted by the database, only the first key is used
+        PagedTableModel.Sorter sorter = new PagedTableModel.Sorter(productModel);
         jt.setRowSorter(sorter);
-        List<RowSorter.SortKey> sortKeys = new ArrayList<>(3);
-        sortKeys.add(new RowSorter.SortKey(1, SortOrder.ASCENDING));
-        sortKeys.add(new RowSorter.SortKey(2, SortOrder.ASCENDING));
-        sortKeys.add(new RowSorter.SortKey(3, SortOrder.ASCENDING));
-        sorter.setSortKeys(sortKeys);
+        sorter.setSortKeys(List.of(new RowSorter.SortKey(1, SortOrder.ASCENDING)));
 
         JScrollPane scrollPane = new JScrollPane(jt);
         container.add(scrollPane);
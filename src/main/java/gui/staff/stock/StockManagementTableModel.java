@@ -2,95 +2,86 @@ package gui.staff.stock;
 
 import controllers.AppContext;
 import db.DatabaseBridge;
+import db.DatabaseWorker;
+import db.KeysetQuery;
+import entity.product.CatalogCache;
+import gui.components.PagedTableModel;
 
 import javax.swing.*;
-import javax.swing.table.AbstractTableModel;
 import java.sql.PreparedStatement;
-import java.sql.SQLException;
 
-class StockManagementTableModel extends AbstractTableModel {
-
-    private Object[][] productData;
-    private String[] columns;
+/**
+ * The product table of the stock screen, read a page at a time and sorted by the database. Edits are written to the
+ * database straight away and shown once they have been.
+ */
+class StockManagementTableModel extends PagedTableModel {
+    private static final KeysetQuery productQuery = new KeysetQuery(
+            "productCode, name, price, stockLevel",
+            "Product",
+            null,
+            null,
+            "productCode",
+            new String[]{"productCode", "name", "price", "stockLevel", null},
+            rs -> new Object[]{rs.getString("productCode"), rs.getString("name"), rs.getDouble("price"), rs.getInt("stockLevel"), null}
+    );
 
     private Runnable editHook;
 
-    public StockManagementTableModel(Object[][] productData, String[] columns, Runnable editHook) {
-        this.productData = productData;
-        this.columns = columns;
+    public StockManagementTableModel(String[] columns, Runnable editHook) {
+        super(productQuery, new Object[0], columns,
+                new Class<?>[]{String.class, String.class, Double.class, Integer.class, String.class}, 100, 20);
         this.editHook = editHook;
     }
 
-    @Override
-    public int getRowCount() {
-        return this.productData.length;
-    }
-
-    @Override
-    public int getColumnCount() {
-        return this.columns.length;
-    }
-
-    @Override
-    public Object getValueAt(int rowIndex, int columnIndex) {
-        return this.productData[rowIndex][columnIndex];
-    }
-
-    @Override
-    public String getColumnName(int columnIndex) {
-        return this.columns[columnIndex];
-    }
-
     @Override
     public void setValueAt(Object value, int rowIndex, int columnIndex) {
-        DatabaseBridge db = DatabaseBridge.instance();
-        PreparedStatement update;
-        try {
-            db.openConnection();
-            switch (columnIndex) {
-                case 1: // name
-                    update = db.prepareStatement("UPDATE Product SET name=? WHERE productCode=?");
-                    update.setString(1, (String)value);
-                    break;
-                case 2: // price
-                    update = db.prepareStatement("UPDATE Product SET price=? WHERE productCode=?");
-                    update.setDouble(1, (double)value);
-                    break;
-                case 3: // stock
-                    update = db.prepareStatement("UPDATE Product SET stockLevel=? WHERE productCode=?");
-                    update.setInt(1, (int)value);
-                    break;
-                default:
-                    return;
-            }
-
-            update.setString(2, (String)productData[rowIndex][0]);
-            update.executeUpdate();
-            this.productData[rowIndex][columnIndex] = value;
-
-            SwingUtilities.invokeLater(this.editHook);
-        } catch (SQLException e) {
-            DatabaseBridge.databaseError("Could not edit stock", e);
-        } finally {
-            db.closeConnection();
+        String sql;
+        switch (columnIndex) {
+            case 1: // name
+                sql = "UPDATE Product SET name=? WHERE productCode=?";
+                break;
+            case 2: // price
+                sql = "UPDATE Product SET price=? WHERE productCode=?";
+                break;
+            case 3: // stock
+                sql = "UPDATE Product SET stockLevel=? WHERE productCode=?";
+                break;
+            default:
+                return;
         }
-
-        AppContext.queueStoreReload = true;
+        Object[] row = getRow(rowIndex);
+        if (row == null) {
+            return; // not loaded, so it cannot have been edited
+        }
+        String productCode = (String)row[0];
+        int generation = getGeneration();
+
+        // the cell shows the new value once it has been written
+        DatabaseWorker.submit(() -> {
+            try (PreparedStatement update = DatabaseBridge.instance().prepareStatement(sql)) {
+                switch (columnIndex) {
+                    case 1 -> update.setString(1, (String)value);
+                    case 2 -> update.setDouble(1, (double)value);
+                    case 3 -> update.setInt(1, (int)value);
+                }
+                update.setString(2, productCode);
+                update.executeUpdate();
+            }
+            CatalogCache.refresh(productCode);
+            return null;
+        }, updated -> {
+            // re-sorted or refreshed meanwhile, rowIndex may be another product now and the reload shows the edit
+            if (generation == getGeneration()) {
+                setLoadedValue(rowIndex, columnIndex, value);
+            }
+            this.editHook.run();
+        }, e -> {
+            JOptionPane.showMessageDialog(AppContext.getWindow(), "Could not edit stock: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        });
     }
 
     @Override
     public boolean isCellEditable(int rowIndex, int columnIndex) {
         return ! (columnIndex == 0);// || columnIndex == 4);
     }
-
-    @Override
-    public Class getColumnClass(int columnIndex) {
-        switch (columnIndex) {
-            case 0: return String.class;
-            case 1: return String.class;
-            case 2: return Double.class;
-            case 3: return Integer.class;
-            default: return String.class;
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,523 @@
+package tools;
+
+import db.DatabaseBridge;
+import db.DatabaseOperation;
+import org.apache.commons.validator.routines.checkdigit.LuhnCheckDigit;
+import utils.CipherEngine;
+import utils.Crypto;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.InvalidKeyException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+/**
+ * Re-encrypts the card number and security code of every BankDetails row, for changing how bank details are
+ * encrypted (from the legacy AES-CBC format to AES-GCM, a new key derivation, a new password) without taking the shop
+ * down for long:
+ * <ul>
+ *     <li>one thread streams the rows in paymentId order through a forward-only cursor, never holding more than a
+ *     few batches in memory</li>
+ *     <li>--workers threads decrypt and re-encrypt a batch each, with CipherEngine</li>
+ *     <li>one thread writes the batches back in order, each as one JDBC batch and transaction, and only where the row
+ *     still holds what was read (a customer may change their card meanwhile, that row is left alone and counted)</li>
+ *     <li>after every batch the last paymentId written goes to the --checkpoint file, a run that stopped half way
+ *     carries on from there</li>
+ * </ul>
+ * Bank details are encrypted with a key derived from their owner's password, which is only stored as a bcrypt hash,
+ * so the keys have to come from somewhere: a KeySource. From the command line that is --password, the password of
+ * everyone to re-encrypt (the people DataGenerator made share one), and --new-password to move them to another one,
+ * which updates their password hash in the same transaction. Rows whose owner has another password are skipped and
+ * stay readable as they are.
+ * <br><br>
+ * Running it again is harmless, someone moved to the new password by an earlier run is recognised by their password
+ * hash and only gets fresh IVs. Run it with ./gradlew reencryptBankDetails -Pargs='--password=Generated1!', --help
+ * lists every setting.
+ */
+public final class BankDetailReencryption {
+    public static final String USAGE = """
+            Usage: BankDetailReencryption --password=... [--name=value ...]
+              --password=...          Password of the people whose bank details are re-encrypted
+              --new-password=...      Password to move them to, their bank details are re-encrypted under the same
+                                      password (with fresh IVs) when not given
+              --workers=<cores>       Threads decrypting and re-encrypting
+              --batch=500             Rows per JDBC batch and transaction
+              --checkpoint=reencrypt.checkpoint
+                                      Progress file, a run carries on from the one it finds
+              --restart=false         Start from the first row whatever the checkpoint says
+              --report=10             Seconds between progress reports
+            The database is chosen with -Ddb.profile, -Ddb.url and so on, see README.md""";
+
+    private static final String SELECT_ROWS = """
+            SELECT b.paymentId, b.cardNumber, b.securityCode, p.password
+            FROM BankDetails b LEFT JOIN Person p ON p.paymentId = b.paymentId
+            WHERE b.paymentId > ?
+            ORDER BY b.paymentId""";
+    private static final String UPDATE_ROW = "UPDATE BankDetails SET cardNumber = ?, securityCode = ? "
+            + "WHERE paymentId = ? AND cardNumber = ? AND securityCode = ?";
+    private static final String UPDATE_PASSWORD = "UPDATE Person SET password = ? WHERE paymentId = ?";
+    // checked for every row, compiled once
+    private static final Pattern CARD_NUMBER = Pattern.compile("\\d{12,19}");
+    private static final Pattern SECURITY_CODE = Pattern.compile("\\d{3,4}");
+
+    /**
+     * What a run does, see USAGE for the meaning and default of each setting
+     */
+    public static final class Settings {
+        String password;
+        String newPassword;
+        int workers = Runtime.getRuntime().availableProcessors();
+        int batchSize = 500;
+        Path checkpoint = Path.of("reencrypt.checkpoint");
+        boolean restart = false;
+        int reportSeconds = 10;
+
+        /**
+         * @param args Settings as --name=value, anything not given keeps its default
+         * @return The settings, checked
+         * @throws IllegalArgumentException If a setting is unknown, malformed or out of range
+         */
+        public static Settings parse(String... args) {
+            Settings s = new Settings();
+            for (String arg : args) {
+                int equals = arg.indexOf('=');
+                if (!arg.startsWith("--") || equals < 0) {
+                    throw new IllegalArgumentException("Expected --name=value but got [" + arg + "]");
+                }
+                String name = arg.substring(2, equals);
+                String value = arg.substring(equals + 1);
+                try {
+                    switch (name) {
+                        case "password" -> s.password = value;
+                        case "new-password" -> s.newPassword = value;
+                        case "workers" -> s.workers = Integer.parseInt(value);
+                        case "batch" -> s.batchSize = Integer.parseInt(value);
+                        case "checkpoint" -> s.checkpoint = Path.of(value);
+                        case "restart" -> s.restart = Boolean.parseBoolean(value);
+                        case "report" -> s.reportSeconds = Integer.parseInt(value);
+                        default -> throw new IllegalArgumentException("Unknown setting [--" + name + "]");
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid value for --" + name + " [" + value + "]", e);
+                }
+            }
+            s.check();
+            return s;
+        }
+
+        private void check() {
+            if (password == null || password.isEmpty()) {
+                throw new IllegalArgumentException("--password is required");
+            }
+            if (newPassword != null && newPassword.isEmpty()) {
+                throw new IllegalArgumentException("--new-password cannot be empty");
+            }
+            if (workers < 1 || batchSize < 1 || reportSeconds < 1) {
+                throw new IllegalArgumentException("--workers, --batch and --report must be at least 1");
+            }
+        }
+    }
+
+    /**
+     * The keys of a row's owner
+     * @param oldKey What the row is encrypted with now
+     * @param newKey What it is to be encrypted with, may be the same key
+     * @param newPasswordHash What the owner's password hash becomes, or null to leave it
+     */
+    public record Keys(byte[] oldKey, byte[] newKey, String newPasswordHash) { }
+
+    /**
+     * Where the keys of each row come from, called from the worker threads
+     */
+    @FunctionalInterface
+    public interface KeySource {
+        /**
+         * @param paymentId The row
+         * @param passwordHash The bcrypt hash of the owner's password, or null if nobody owns the row
+         * @return The keys, or null to skip the row
+         */
+        Keys keysFor(int paymentId, String passwordHash);
+    }
+
+    /**
+     * Everyone with one known password, optionally moving to another. bcrypt is only checked once per distinct hash,
+     * which for generated people is once in total.
+     */
+    public static final class PasswordKeySource implements KeySource {
+        private final String password;
+        private final String newPassword;
+        private final Keys toNew;
+        private final Keys alreadyNew;
+        private final ConcurrentHashMap<String, Keys> byHash = new ConcurrentHashMap<>();
+        private static final Keys NONE = new Keys(null, null, null);
+
+        public PasswordKeySource(String password, String newPassword) {
+            this.password = password;
+            this.newPassword = newPassword == null ? password : newPassword;
+            byte[] oldKey = Crypto.deriveEncryptionKey(password);
+            byte[] newKey = newPassword == null ? oldKey : Crypto.deriveEncryptionKey(newPassword);
+            this.toNew = new Keys(oldKey, newKey, newPassword == null ? null : Crypto.hashString(newPassword));
+            // someone moved by an earlier run that stopped before its checkpoint, re-encrypting them again is harmless
+            this.alreadyNew = new Keys(newKey, newKey, null);
+        }
+
+        @Override
+        public Keys keysFor(int paymentId, String passwordHash) {
+            if (passwordHash == null) {
+                return null;
+            }
+            Keys keys = byHash.computeIfAbsent(passwordHash, hash -> {
+                if (Crypto.verifyString(password, hash)) {
+                    return toNew;
+                }
+                return !newPassword.equals(password) && Crypto.verifyString(newPassword, hash) ? alreadyNew : NONE;
+            });
+            return keys == NONE ? null : keys;
+        }
+    }
+
+    /**
+     * What a run did
+     */
+    public record Summary(long read, long reencrypted, long skipped, long unreadable, long conflicts, double seconds) {
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d rows read, %d re-encrypted, %d skipped (no key), %d unreadable, "
+                    + "%d changed meanwhile, in %.1f s (%.0f rows/s)", read, reencrypted, skipped, unreadable,
+                    conflicts, seconds, seconds == 0 ? 0 : read / seconds);
+        }
+    }
+
+    private record Row(int paymentId, String cardNumber, String securityCode, String passwordHash) { }
+
+    private enum Outcome { REENCRYPTED, SKIPPED, UNREADABLE }
+
+    private record Result(Row row, Outcome outcome, String cardNumber, String securityCode, String passwordHash) { }
+
+    /**
+     * The rows of one batch being re-encrypted, end marks the end of the rows
+     */
+    private record Chunk(CompletableFuture<List<Result>> results, boolean end) { }
+
+    private final Settings settings;
+    private final KeySource keySource;
+    private final DatabaseBridge db;
+
+    private long read, reencrypted, skipped, unreadable, conflicts;
+
+    public BankDetailReencryption(Settings settings, KeySource keySource, DatabaseBridge db) {
+        this.settings = settings;
+        this.keySource = keySource;
+        this.db = db;
+    }
+
+    /**
+     * Re-encrypts every row after the checkpoint
+     * @return What was done
+     * @throws SQLException If reading or writing failed, everything up to the checkpoint is kept
+     * @throws IOException If the checkpoint could not be read or written
+     */
+    public Summary run() throws SQLException, IOException {
+        long start = System.nanoTime();
+        int after = settings.restart ? 0 : readCheckpoint();
+        if (after > 0) {
+            log("Carrying on after paymentId " + after + " from " + settings.checkpoint);
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(settings.workers, runnable -> {
+            Thread thread = new Thread(runnable, "Reencryption-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // a few batches ahead of the writer at most, the reader waits for it otherwise
+        BlockingQueue<Chunk> pending = new ArrayBlockingQueue<>(settings.workers * 2);
+        AtomicReference<Exception> writeFailure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                write(pending, start);
+            } catch (Exception e) {
+                writeFailure.set(e);
+                // let the reader notice rather than block on a full queue
+                pending.clear();
+            }
+        }, "Reencryption-writer");
+        writer.start();
+
+        try {
+            readInto(pending, workers, after, writeFailure);
+        } finally {
+            try {
+                pending.put(new Chunk(null, true));
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            workers.shutdownNow();
+        }
+
+        Exception failure = writeFailure.get();
+        if (failure instanceof SQLException e) throw e;
+        if (failure instanceof IOException e) throw e;
+        if (failure != null) throw new IllegalStateException("Writing re-encrypted rows failed", failure);
+
+        writeCheckpoint(Integer.MAX_VALUE);
+        return summary(start);
+    }
+
+    private void readInto(BlockingQueue<Chunk> pending, ExecutorService workers, int after,
+                          AtomicReference<Exception> writeFailure) throws SQLException {
+        db.openConnection();
+        try (PreparedStatement rows = db.prepareStatement(SELECT_ROWS)) {
+            // MySQL only streams a result set with this fetch size, any other driver takes it as a hint
+            rows.setFetchSize(db.getConfig().getUrl().startsWith("jdbc:mysql:") ? Integer.MIN_VALUE : settings.batchSize);
+            rows.setInt(1, after);
+
+            List<Row> batch = new ArrayList<>(settings.batchSize);
+            int previous = after;
+            try (ResultSet rs = rows.executeQuery()) {
+                while (rs.next() && writeFailure.get() == null) {
+                    int paymentId = rs.getInt("paymentId");
+                    // bank details shared by several people (not something the app does) are only done once
+                    if (paymentId == previous) continue;
+                    previous = paymentId;
+                    batch.add(new Row(paymentId, rs.getString("cardNumber"), rs.getString("securityCode"),
+                            rs.getString("password")));
+                    if (batch.size() == settings.batchSize) {
+                        submit(pending, workers, batch);
+                        batch = new ArrayList<>(settings.batchSize);
+                    }
+                }
+            }
+            if (!batch.isEmpty() && writeFailure.get() == null) {
+                submit(pending, workers, batch);
+            }
+        } finally {
+            db.closeConnection();
+        }
+    }
+
+    private void submit(BlockingQueue<Chunk> pending, ExecutorService workers, List<Row> batch) {
+        CompletableFuture<List<Result>> results = CompletableFuture.supplyAsync(() -> reencrypt(batch), workers);
+        try {
+            pending.put(new Chunk(results, false));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading rows", e);
+        }
+    }
+
+    private List<Result> reencrypt(List<Row> batch) {
+        List<Result> results = new ArrayList<>(batch.size());
+        // key sources hand out the same few keys over and over, one engine each
+        Map<byte[], CipherEngine> engines = new IdentityHashMap<>();
+        for (Row row : batch) {
+            Keys keys = keySource.keysFor(row.paymentId(), row.passwordHash());
+            if (keys == null) {
+                results.add(new Result(row, Outcome.SKIPPED, null, null, null));
+                continue;
+            }
+            try {
+                CipherEngine from = engine(engines, keys.oldKey());
+                String cardNumber = from.decryptOrNull(row.cardNumber());
+                String securityCode = from.decryptOrNull(row.securityCode());
+                if (!isPlausible(cardNumber, securityCode)) {
+                    results.add(new Result(row, Outcome.UNREADABLE, null, null, null));
+                    continue;
+                }
+                String[] encrypted = engine(engines, keys.newKey()).encryptAll(cardNumber, securityCode);
+                results.add(new Result(row, Outcome.REENCRYPTED, encrypted[0], encrypted[1], keys.newPasswordHash()));
+            } catch (InvalidKeyException e) {
+                // the key source handed out something that is not an AES key, nothing will work
+                throw new IllegalStateException("Key source gave an invalid key for paymentId " + row.paymentId(), e);
+            }
+        }
+        return results;
+    }
+
+    private static CipherEngine engine(Map<byte[], CipherEngine> engines, byte[] key) throws InvalidKeyException {
+        CipherEngine engine = engines.get(key);
+        if (engine == null) {
+            // rows still in the legacy format are what this job is for, whatever crypto.strictReads says
+            engine = new CipherEngine(key, CipherEngine.Format.GCM, false);
+            engines.put(key, engine);
+        }
+        return engine;
+    }
+
+    /**
+     * A wrong key can still decrypt with valid padding, what BankDetail accepts tells that apart from the real thing
+     */
+    private static boolean isPlausible(String cardNumber, String securityCode) {
+        return cardNumber != null && securityCode != null
+                && CARD_NUMBER.matcher(cardNumber).matches() && LuhnCheckDigit.LUHN_CHECK_DIGIT.isValid(cardNumber)
+                && SECURITY_CODE.matcher(securityCode).matches();
+    }
+
+    private void write(BlockingQueue<Chunk> pending, long start) throws Exception {
+        db.openConnection();
+        try (PreparedStatement update = db.prepareStatement(UPDATE_ROW);
+             PreparedStatement password = db.prepareStatement(UPDATE_PASSWORD)) {
+            db.setAutoCommit(false);
+            long lastReport = System.nanoTime();
+            while (true) {
+                Chunk chunk = pending.take();
+                if (chunk.end()) break;
+                List<Result> results = chunk.results().join();
+                writeBatch(update, password, results);
+                writeCheckpoint(results.get(results.size() - 1).row().paymentId());
+
+                if (System.nanoTime() - lastReport >= settings.reportSeconds * 1_000_000_000L) {
+                    lastReport = System.nanoTime();
+                    log(summary(start).toString());
+                }
+            }
+        } catch (Exception e) {
+            db.rollback();
+            throw e;
+        } finally {
+            db.setAutoCommit(true);
+            db.closeConnection();
+        }
+    }
+
+    private void writeBatch(PreparedStatement update, PreparedStatement password, List<Result> results) throws SQLException {
+        List<Result> changed = new ArrayList<>();
+        for (Result result : results) {
+            read++;
+            switch (result.outcome()) {
+                case SKIPPED -> skipped++;
+                case UNREADABLE -> unreadable++;
+                case REENCRYPTED -> {
+                    update.setString(1, result.cardNumber());
+                    update.setString(2, result.securityCode());
+                    update.setInt(3, result.row().paymentId());
+                    update.setString(4, result.row().cardNumber());
+                    update.setString(5, result.row().securityCode());
+                    update.addBatch();
+                    changed.add(result);
+                }
+            }
+        }
+        if (changed.isEmpty()) return;
+
+        int[] counts = update.executeBatch();
+        boolean passwords = false;
+        for (int i = 0; i < counts.length; i++) {
+            Result result = changed.get(i);
+            if (counts[i] == 0) {
+                conflicts++;
+                continue;
+            }
+            reencrypted++;
+            // only once the card is under the new key, or its owner could no longer read it
+            if (result.passwordHash() != null) {
+                password.setString(1, result.passwordHash());
+                password.setInt(2, result.row().paymentId());
+                password.addBatch();
+                passwords = true;
+            }
+        }
+        if (passwords) {
+            password.executeBatch();
+        }
+        db.commit();
+    }
+
+    private Summary summary(long start) {
+        return new Summary(read, reencrypted, skipped, unreadable, conflicts, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * @return The last paymentId written by an earlier run, 0 if there was none
+     */
+    private int readCheckpoint() throws IOException {
+        if (!Files.exists(settings.checkpoint)) {
+            return 0;
+        }
+        Properties checkpoint = new Properties();
+        try (Reader reader = Files.newBufferedReader(settings.checkpoint, StandardCharsets.UTF_8)) {
+            checkpoint.load(reader);
+        }
+        int after = Integer.parseInt(checkpoint.getProperty("lastPaymentId", "0"));
+        if (after == Integer.MAX_VALUE) {
+            log("The last run finished, starting from the first row again");
+            return 0;
+        }
+        return after;
+    }
+
+    /**
+     * Written next to the checkpoint and moved over it, so a crash leaves either the old or the new one
+     */
+    private void writeCheckpoint(int lastPaymentId) throws IOException {
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty("lastPaymentId", String.valueOf(lastPaymentId));
+        Path temp = settings.checkpoint.resolveSibling(settings.checkpoint.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            checkpoint.store(writer, lastPaymentId == Integer.MAX_VALUE ? "BankDetails re-encryption, finished"
+                    : "BankDetails re-encryption, rows up to lastPaymentId are done");
+        }
+        Files.move(temp, settings.checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void log(String message) {
+        System.out.println("[BankDetailReencryption] " + message);
+    }
+
+    public static void main(String[] args) {
+        if (List.of(args).contains("--help")) {
+            System.out.println(USAGE);
+            return;
+        }
+
+        Settings settings;
+        try {
+            settings = Settings.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        DatabaseBridge db = DatabaseBridge.instance();
+        DatabaseOperation.setConnection(db);
+        log("Re-encrypting bank details in " + db.getConfig());
+
+        try {
+            KeySource keys = new PasswordKeySource(settings.password, settings.newPassword);
+            log("Done: " + new BankDetailReencryption(settings, keys, db).run());
+        } catch (SQLException e) {
+            DatabaseBridge.databaseError("Re-encryption failed, run it again to carry on from the checkpoint", e);
+            System.exit(1);
+        } catch (IOException e) {
+            log("Could not use the checkpoint " + settings.checkpoint + ": " + e.getMessage());
+            System.exit(1);
+        } finally {
+            db.shutdown();
+        }
+    }
+}
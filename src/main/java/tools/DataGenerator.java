@@ -0,0 +1,773 @@
+package tools;
+
+import db.DatabaseBridge;
+import db.DatabaseOperation;
+import entity.Address;
+import entity.order.Order;
+import entity.product.BoxedSet;
+import entity.product.Component;
+import entity.product.Controller;
+import entity.product.Locomotive;
+import entity.product.Product;
+import entity.product.Track;
+import entity.user.Person;
+import org.javatuples.Pair;
+import utils.CipherEngine;
+import utils.Crypto;
+
+import java.security.InvalidKeyException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Fills a database with synthetic but plausible data for performance work:
+ * <ul>
+ *     <li>tracks, locomotives, controllers and rolling stock from a handful of brands, gauges and eras</li>
+ *     <li>track packs holding a few kinds of track of one gauge</li>
+ *     <li>train sets holding a locomotive, a controller, rolling stock and track packs of one gauge, and now and
+ *     then an earlier train set as well, so boxed sets are nested up to three levels deep</li>
+ *     <li>customers, staff and managers, each with an address, a role and usually encrypted bank details</li>
+ *     <li>an order history spread over the last few years, mostly one or two lines per order, popular products and
+ *     regular customers turning up far more often than the rest</li>
+ * </ul>
+ * Every value is drawn from one Random seeded with --seed, so the same settings always produce the same rows. Rows
+ * go to the database in JDBC batches of --batch rows, committed batch by batch.
+ * <br><br>
+ * It writes to whichever database DatabaseConfig points at and expects the tables to be empty of generated rows,
+ * generated product codes have a G after the type letter (e.g. RG00042) so they never clash with hand-made ones.
+ * Run it with ./gradlew generateData -Pargs='--orders=100000 --seed=7', --help lists every setting.
+ */
+public final class DataGenerator {
+    public static final String USAGE = """
+            Usage: DataGenerator [--name=value ...]
+              --seed=1                Seed of every random choice, the same seed and settings give the same rows
+              --tracks=3500           Number of each kind of component
+              --locomotives=1500
+              --controllers=500
+              --rolling-stock=3000
+              --track-packs=700       Boxed sets of tracks
+              --train-sets=800        Boxed sets of components and track packs
+              --persons=5000          People, including the staff and managers below
+              --staff=50
+              --managers=5
+              --bank-details=0.7      Share of people with a card on file
+              --password=Generated1!  Password of every generated person, to log in as any of them
+              --orders=100000
+              --mean-lines=2.5        Average number of lines per order
+              --max-lines=12
+              --until=<today>         Day of the newest order, yyyy-MM-dd, pass it to repeat a run on another day
+              --days=730              Days of order history before --until
+              --batch=1000            Rows per JDBC batch and transaction
+            The database is chosen with -Ddb.profile, -Ddb.url and so on, see README.md""";
+
+    private static final String[] BRANDS = {"Hornby", "Bachmann", "Peco", "Dapol", "Graham Farish", "Kato", "Heljan"};
+    private static final String[] CONTROLLER_BRANDS = {"Gaugemaster", "Hornby", "Bachmann", "ESU"};
+    private static final String[] LOCOMOTIVE_CLASSES = {"Class 08", "Class 20", "Class 37", "Class 47", "Class 55",
+            "Class 66", "Class 90", "A4 Mallard", "A3 Flying Scotsman", "Castle Class", "Black Five", "Terrier",
+            "Jinty", "Britannia", "Merchant Navy"};
+    private static final String[] LIVERIES = {"BR Green", "BR Blue", "LNER Apple Green", "GWR Green", "Intercity",
+            "Railfreight", "EWS", "Virgin", "Weathered"};
+    private static final String[] ROLLING_STOCK = {"Mk1 Coach", "Mk2 Coach", "Mk3 Coach", "Pullman Car", "Box Van",
+            "Brake Van", "Tank Wagon", "Hopper Wagon", "Open Wagon", "Flat Wagon", "Parcels Van"};
+    private static final String[] CONTROLLER_NAMES = {"Power Controller", "Twin Track Controller", "Combi",
+            "Digital Command Station", "Handset", "Select"};
+    private static final String[] SET_NAMES = {"Express", "Freight", "Mainline", "Branch Line", "Coal Train",
+            "Sleeper", "Pullman", "Goods Yard", "Starter"};
+    private static final String[] FORENAMES = {"Oliver", "Amelia", "George", "Isla", "Harry", "Ava", "Jack", "Mia",
+            "Noah", "Grace", "Leo", "Freya", "Arthur", "Lily", "Muhammad", "Emily", "Oscar", "Sophia", "Charlie",
+            "Poppy", "Sam", "Priya", "Tom", "Zara"};
+    private static final String[] SURNAMES = {"Smith", "Jones", "Taylor", "Brown", "Williams", "Wilson", "Johnson",
+            "Davies", "Patel", "Robinson", "Wright", "Thompson", "Evans", "Walker", "White", "Roberts", "Green",
+            "Hall", "Khan", "Clarke", "Hughes", "Lewis"};
+    private static final String[] STREETS = {"High Street", "Station Road", "Church Lane", "Mill Road", "Victoria Street",
+            "Park Avenue", "Railway Terrace", "Queens Road", "Brunel Way", "Stephenson Close"};
+    private static final String[][] CITIES = {{"Sheffield", "S"}, {"Leeds", "LS"}, {"Manchester", "M"},
+            {"York", "YO"}, {"Derby", "DE"}, {"Birmingham", "B"}, {"Crewe", "CW"}, {"Swindon", "SN"}};
+    private static final String POSTCODE_LETTERS = "ABDEFGHJLNPQRSTUWXYZ";
+    private static final Component.Gauge[] MODEL_GAUGES = {Component.Gauge.OOGAUGE, Component.Gauge.OOGAUGE,
+            Component.Gauge.OOGAUGE, Component.Gauge.NGAUGE, Component.Gauge.TTGUAGE};
+
+    /**
+     * What a run creates, see USAGE for the meaning and default of each setting
+     */
+    public static final class Settings {
+        long seed = 1;
+        int tracks = 3500;
+        int locomotives = 1500;
+        int controllers = 500;
+        int rollingStock = 3000;
+        int trackPacks = 700;
+        int trainSets = 800;
+        int persons = 5000;
+        int staff = 50;
+        int managers = 5;
+        double bankDetails = 0.7;
+        String password = "Generated1!";
+        int orders = 100_000;
+        double meanLines = 2.5;
+        int maxLines = 12;
+        LocalDate until = LocalDate.now();
+        int days = 730;
+        int batchSize = 1000;
+
+        /**
+         * @param args Settings as --name=value, anything not given keeps its default
+         * @return The settings, checked
+         * @throws IllegalArgumentException If a setting is unknown, malformed or out of range
+         */
+        public static Settings parse(String... args) {
+            Settings s = new Settings();
+            for (String arg : args) {
+                int equals = arg.indexOf('=');
+                if (!arg.startsWith("--") || equals < 0) {
+                    throw new IllegalArgumentException("Expected --name=value but got [" + arg + "]");
+                }
+                String name = arg.substring(2, equals);
+                String value = arg.substring(equals + 1);
+                try {
+                    switch (name) {
+                        case "seed" -> s.seed = Long.parseLong(value);
+                        case "tracks" -> s.tracks = Integer.parseInt(value);
+                        case "locomotives" -> s.locomotives = Integer.parseInt(value);
+                        case "controllers" -> s.controllers = Integer.parseInt(value);
+                        case "rolling-stock" -> s.rollingStock = Integer.parseInt(value);
+                        case "track-packs" -> s.trackPacks = Integer.parseInt(value);
+                        case "train-sets" -> s.trainSets = Integer.parseInt(value);
+                        case "persons" -> s.persons = Integer.parseInt(value);
+                        case "staff" -> s.staff = Integer.parseInt(value);
+                        case "managers" -> s.managers = Integer.parseInt(value);
+                        case "bank-details" -> s.bankDetails = Double.parseDouble(value);
+                        case "password" -> s.password = value;
+                        case "orders" -> s.orders = Integer.parseInt(value);
+                        case "mean-lines" -> s.meanLines = Double.parseDouble(value);
+                        case "max-lines" -> s.maxLines = Integer.parseInt(value);
+                        case "until" -> s.until = LocalDate.parse(value);
+                        case "days" -> s.days = Integer.parseInt(value);
+                        case "batch" -> s.batchSize = Integer.parseInt(value);
+                        default -> throw new IllegalArgumentException("Unknown setting [--" + name + "]");
+                    }
+                } catch (NumberFormatException | DateTimeParseException e) {
+                    throw new IllegalArgumentException("Invalid value for --" + name + " [" + value + "]", e);
+                }
+            }
+            s.check();
+            return s;
+        }
+
+        private void check() {
+            // product codes have five digits after the type letter and the G
+            for (int count : new int[]{tracks, locomotives, controllers, rollingStock, trackPacks, trainSets}) {
+                if (count < 0 || count > 99_999) {
+                    throw new IllegalArgumentException("Each kind of product must number between 0 and 99999");
+                }
+            }
+            if (persons < 0 || orders < 0 || staff < 0 || managers < 0 || staff + managers > persons) {
+                throw new IllegalArgumentException("Staff and managers are part of --persons, and no count can be negative");
+            }
+            if (trackPacks > 0 && tracks == 0) {
+                throw new IllegalArgumentException("Track packs need --tracks");
+            }
+            if (trainSets > 0 && (locomotives == 0 || controllers == 0)) {
+                throw new IllegalArgumentException("Train sets need --locomotives and --controllers");
+            }
+            if (orders > 0 && (persons - staff - managers == 0
+                    || tracks + locomotives + controllers + rollingStock + trackPacks + trainSets == 0)) {
+                throw new IllegalArgumentException("Orders need customers and products");
+            }
+            if (bankDetails < 0 || bankDetails > 1) {
+                throw new IllegalArgumentException("--bank-details is a share between 0 and 1");
+            }
+            if (meanLines < 1 || maxLines < 1 || days < 1 || batchSize < 1) {
+                throw new IllegalArgumentException("--mean-lines, --max-lines, --days and --batch must be at least 1");
+            }
+        }
+    }
+
+    /**
+     * How much a run wrote
+     */
+    public record Summary(int products, int boxedSetContents, int persons, int bankDetails, int orders,
+                          int orderLines, long elapsedMillis) {
+        @Override
+        public String toString() {
+            return products + " products (" + boxedSetContents + " boxed set contents), " + persons + " persons ("
+                    + bankDetails + " with bank details), " + orders + " orders (" + orderLines + " lines) in "
+                    + elapsedMillis + "ms";
+        }
+    }
+
+    private final Settings settings;
+    private final Random random;
+    private final DatabaseBridge db;
+
+    private final Map<Component.Gauge, List<Track>> tracks = new EnumMap<>(Component.Gauge.class);
+    private final Map<Component.Gauge, List<Component>> rollingStock = new EnumMap<>(Component.Gauge.class);
+    private final Map<Component.Gauge, List<BoxedSet>> trackPacks = new EnumMap<>(Component.Gauge.class);
+    private final List<Locomotive> locomotives = new ArrayList<>();
+    private final List<Controller> controllers = new ArrayList<>();
+    private final List<BoxedSet> trainSets = new ArrayList<>();
+    // every product, most popular first
+    private final List<Product> catalog = new ArrayList<>();
+    // ids of the generated persons with the USER role, most regular first
+    private final List<Integer> customers = new ArrayList<>();
+
+    private int boxedSetContents = 0;
+    private int bankDetailRows = 0;
+    private int orderLines = 0;
+
+    /**
+     * @param settings What to create
+     * @param db The database to write to, DatabaseOperation must have been given it as well
+     */
+    public DataGenerator(Settings settings, DatabaseBridge db) {
+        this.settings = settings;
+        this.random = new Random(settings.seed);
+        this.db = db;
+    }
+
+    /**
+     * Creates everything, products first, then persons, then orders. Each batch is committed on its own, so a failed
+     * run leaves the batches before the failure in the database.
+     * @return What was written
+     * @throws SQLException If a batch could not be written
+     */
+    public Summary run() throws SQLException {
+        long start = System.nanoTime();
+
+        createCatalog();
+        db.openConnection();
+        try {
+            db.setAutoCommit(false);
+            writeProducts();
+            log("Wrote " + catalog.size() + " products");
+            writePersons();
+            log("Wrote " + settings.persons + " persons");
+        } catch (SQLException e) {
+            DatabaseBridge.databaseError("Failed to write generated data", e);
+            db.rollback();
+            throw e;
+        } finally {
+            db.setAutoCommit(true);
+            db.closeConnection();
+        }
+        writeOrders();
+        log("Wrote " + settings.orders + " orders");
+
+        return new Summary(catalog.size(), boxedSetContents, settings.persons, bankDetailRows, settings.orders,
+                orderLines, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // Catalog
+
+    private void createCatalog() {
+        for (int i = 0; i < settings.tracks; i++) {
+            Component.Gauge gauge = pick(MODEL_GAUGES);
+            Track.Curvature curvature = random.nextDouble() < 0.4 ? Track.Curvature.STRAIGHT : pick(Track.Curvature.values());
+            String name = (curvature == Track.Curvature.STRAIGHT ? "Straight" : "Curve " + curvature.name().toLowerCase().replace('_', ' '))
+                    + " " + (random.nextBoolean() ? "Single" : "Double") + " Track";
+            Track track = new Track(code('R', i), name, stock(), price(2, 25), pick(BRANDS), era(), gauge, curvature);
+            tracks.computeIfAbsent(gauge, g -> new ArrayList<>()).add(track);
+            catalog.add(track);
+        }
+        for (int i = 0; i < settings.locomotives; i++) {
+            Locomotive.PriceBracket bracket = pick(Locomotive.PriceBracket.values());
+            double price = switch (bracket) {
+                case ANALOGUE -> price(45, 110);
+                case DCC_READY -> price(90, 180);
+                case DCC_FITTED -> price(130, 240);
+                case DCC_SOUND -> price(200, 420);
+            };
+            Locomotive locomotive = new Locomotive(code('L', i), pick(LOCOMOTIVE_CLASSES) + " " + pick(LIVERIES),
+                    stock(), price, pick(BRANDS), era(), pick(MODEL_GAUGES), bracket);
+            locomotives.add(locomotive);
+            catalog.add(locomotive);
+        }
+        for (int i = 0; i < settings.controllers; i++) {
+            Controller.ControlType type = random.nextDouble() < 0.6 ? Controller.ControlType.ANALOG : Controller.ControlType.DIGITAL;
+            Controller controller = new Controller(code('C', i), pick(CONTROLLER_NAMES) + " " + (i % 9 + 1), stock(),
+                    type == Controller.ControlType.ANALOG ? price(30, 120) : price(110, 380), pick(CONTROLLER_BRANDS), era(), type);
+            controllers.add(controller);
+            catalog.add(controller);
+        }
+        for (int i = 0; i < settings.rollingStock; i++) {
+            Component.Gauge gauge = pick(MODEL_GAUGES);
+            Component wagon = new Component(code('S', i), pick(ROLLING_STOCK) + " " + pick(LIVERIES), stock(),
+                    price(12, 85), pick(BRANDS), era(), gauge);
+            rollingStock.computeIfAbsent(gauge, g -> new ArrayList<>()).add(wagon);
+            catalog.add(wagon);
+        }
+
+        List<Component.Gauge> trackGauges = new ArrayList<>(tracks.keySet());
+        for (int i = 0; i < settings.trackPacks; i++) {
+            Component.Gauge gauge = trackGauges.get(random.nextInt(trackGauges.size()));
+            List<Pair<Component, Integer>> contents = new ArrayList<>();
+            for (Track track : distinct(tracks.get(gauge), 2 + random.nextInt(5))) {
+                contents.add(new Pair<>(track, 1 + random.nextInt(track.getCurvature() == Track.Curvature.STRAIGHT ? 8 : 4)));
+            }
+            BoxedSet pack = boxedSet(code('P', i), "Track Pack " + (char) ('A' + i % 6) + " " + gaugeName(gauge),
+                    contents, List.of());
+            trackPacks.computeIfAbsent(gauge, g -> new ArrayList<>()).add(pack);
+            catalog.add(pack);
+        }
+
+        for (int i = 0; i < settings.trainSets; i++) {
+            Locomotive locomotive = locomotives.get(random.nextInt(locomotives.size()));
+            Component.Gauge gauge = locomotive.getGauge();
+
+            List<Pair<Component, Integer>> components = new ArrayList<>();
+            components.add(new Pair<>(locomotive, 1));
+            components.add(new Pair<>(controllers.get(random.nextInt(controllers.size())), 1));
+            for (Component wagon : distinct(rollingStock.getOrDefault(gauge, List.of()), 2 + random.nextInt(4))) {
+                components.add(new Pair<>(wagon, 1 + (random.nextDouble() < 0.3 ? 1 : 0)));
+            }
+            for (Track track : distinct(tracks.getOrDefault(gauge, List.of()), random.nextInt(3))) {
+                components.add(new Pair<>(track, 2 + random.nextInt(4)));
+            }
+
+            List<Pair<BoxedSet, Integer>> sets = new ArrayList<>();
+            for (BoxedSet pack : distinct(trackPacks.getOrDefault(gauge, List.of()), 1 + random.nextInt(2))) {
+                sets.add(new Pair<>(pack, 1));
+            }
+            // now and then an expansion of an earlier set of the same gauge, the only reference back is to sets
+            // made before this one so there are never cycles
+            if (i > 0 && random.nextDouble() < 0.1) {
+                BoxedSet earlier = trainSets.get(random.nextInt(trainSets.size()));
+                if (gauge == ((Locomotive) earlier.getComponents().get(0).getValue0()).getGauge()) {
+                    sets.add(new Pair<>(earlier, 1));
+                }
+            }
+
+            BoxedSet set = boxedSet(code('M', i), pick(SET_NAMES) + " Train Set " + gaugeName(gauge), components, sets);
+            trainSets.add(set);
+            catalog.add(set);
+        }
+
+        // which products sell best has nothing to do with the order they were made in
+        Collections.shuffle(catalog, random);
+    }
+
+    /**
+     * A boxed set priced a little below its contents
+     */
+    private BoxedSet boxedSet(String code, String name, List<Pair<Component, Integer>> components,
+                              List<Pair<BoxedSet, Integer>> sets) {
+        double contentPrice = 0;
+        for (Pair<Component, Integer> c : components) {
+            contentPrice += c.getValue0().getPrice() * c.getValue1();
+        }
+        for (Pair<BoxedSet, Integer> s : sets) {
+            contentPrice += s.getValue0().getPrice() * s.getValue1();
+        }
+        double price = Math.max(1, Math.floor(contentPrice * (0.8 + random.nextDouble() * 0.1))) - 0.01;
+        return new BoxedSet(code, name, stock(), price, components, sets);
+    }
+
+    private void writeProducts() throws SQLException {
+        try (PreparedStatement product = db.prepareStatement("INSERT INTO Product VALUES (?,?,?,?)");
+             PreparedStatement component = db.prepareStatement("INSERT INTO Component VALUES (?,?,?,?)");
+             PreparedStatement track = db.prepareStatement("INSERT INTO Track VALUES (?,?)");
+             PreparedStatement locomotive = db.prepareStatement("INSERT INTO Locomotive VALUES (?,?)");
+             PreparedStatement controller = db.prepareStatement("INSERT INTO Controller VALUES (?,?)");
+             PreparedStatement content = db.prepareStatement("INSERT INTO BoxedSetContent VALUES (?,?,?)")) {
+            // parents before children, the foreign keys are checked per statement
+            Batch components = new Batch(product, component, track, locomotive, controller);
+            for (Product p : catalog) {
+                if (!(p instanceof Component c)) continue;
+
+                addProduct(product, c);
+                component.setString(1, c.getProductCode());
+                component.setString(2, c.getBrand());
+                component.setString(3, c.getEra());
+                component.setString(4, c.getGauge().toString());
+                component.addBatch();
+
+                if (c instanceof Track t) {
+                    track.setString(1, t.getProductCode());
+                    track.setString(2, t.getCurvature().toString());
+                    track.addBatch();
+                } else if (c instanceof Locomotive l) {
+                    locomotive.setString(1, l.getProductCode());
+                    locomotive.setString(2, l.getPriceBracket().toString());
+                    locomotive.addBatch();
+                } else if (c instanceof Controller k) {
+                    controller.setString(1, k.getProductCode());
+                    controller.setString(2, k.getControlType().toString());
+                    controller.addBatch();
+                }
+                components.added();
+            }
+            components.flush();
+
+            // track packs before the train sets that hold them, and train sets in the order they were made
+            List<BoxedSet> sets = new ArrayList<>();
+            trackPacks.values().forEach(sets::addAll);
+            sets.addAll(trainSets);
+
+            Batch boxedSets = new Batch(product, content);
+            for (BoxedSet set : sets) {
+                addProduct(product, set);
+                for (Pair<Component, Integer> c : set.getComponents()) {
+                    addContent(content, set, c.getValue0(), c.getValue1());
+                }
+                for (Pair<BoxedSet, Integer> s : set.getBoxedSets()) {
+                    addContent(content, set, s.getValue0(), s.getValue1());
+                }
+                boxedSets.added();
+            }
+            boxedSets.flush();
+        }
+    }
+
+    /**
+     * Statements filled row by row and sent together, in the order given so parents are always written before their
+     * children, and committed every batchSize rows
+     */
+    private final class Batch {
+        private final PreparedStatement[] statements;
+        private int rows = 0;
+
+        Batch(PreparedStatement... statements) {
+            this.statements = statements;
+        }
+
+        void added() throws SQLException {
+            if (++rows == settings.batchSize) {
+                flush();
+            }
+        }
+
+        void flush() throws SQLException {
+            if (rows == 0) return;
+            for (PreparedStatement statement : statements) {
+                statement.executeBatch();
+            }
+            db.commit();
+            rows = 0;
+        }
+    }
+
+    private void addProduct(PreparedStatement product, Product p) throws SQLException {
+        product.setString(1, p.getProductCode());
+        product.setString(2, p.getName());
+        product.setInt(3, p.getStockLevel());
+        product.setDouble(4, p.getPrice());
+        product.addBatch();
+    }
+
+    private void addContent(PreparedStatement content, BoxedSet set, Product item, int quantity) throws SQLException {
+        content.setString(1, set.getProductCode());
+        content.setString(2, item.getProductCode());
+        content.setInt(3, quantity);
+        content.addBatch();
+        boxedSetContents++;
+    }
+
+    // Persons
+
+    private void writePersons() throws SQLException {
+        // hashing and key derivation are made to be slow (bcrypt cost 12, 65536 PBKDF2 rounds), so every generated
+        // person shares one password and they are done once rather than thousands of times
+        String passwordHash = Crypto.hashString(settings.password);
+        byte[] encryptionKey = Crypto.deriveEncryptionKey(settings.password);
+        Set<String> addresses = new HashSet<>();
+
+        try (PreparedStatement address = db.prepareStatement("INSERT INTO Address VALUES (?,?,?,?)");
+             PreparedStatement card = db.prepareStatement("INSERT INTO BankDetails (cardName, cardHolderName, cardNumber, expiryDate, securityCode) VALUES (?, ?, ?, ?, ?)",
+                     Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement person = db.prepareStatement("INSERT INTO Person VALUES (default,?,?,?,?,?,?,?)", Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement role = db.prepareStatement("INSERT INTO Role VALUES (?,?)")) {
+            for (int first = 0; first < settings.persons; first += settings.batchSize) {
+                int count = Math.min(settings.batchSize, settings.persons - first);
+                List<Person> people = new ArrayList<>(count);
+                List<Boolean> hasCard = new ArrayList<>(count);
+
+                for (int i = first; i < first + count; i++) {
+                    String forename = pick(FORENAMES);
+                    String surname = pick(SURNAMES);
+                    String[] city = CITIES[random.nextInt(CITIES.length)];
+                    Address home;
+                    do {
+                        home = new Address(String.valueOf(1 + random.nextInt(300)), pick(STREETS), city[0], postcode(city[1]));
+                    } while (!addresses.add(home.getHouseNumber() + "|" + home.getPostcode()));
+
+                    address.setString(1, home.getHouseNumber());
+                    address.setString(2, home.getStreetName());
+                    address.setString(3, home.getCityName());
+                    address.setString(4, home.getPostcode());
+                    address.addBatch();
+
+                    String email = (forename + "." + surname + "." + (i + 1) + "@example.com").toLowerCase();
+                    people.add(new Person(forename, surname, email, passwordHash, home.getHouseNumber(), home.getPostcode()));
+
+                    boolean withCard = random.nextDouble() < settings.bankDetails;
+                    hasCard.add(withCard);
+                    if (withCard) {
+                        addCard(card, forename + " " + surname, encryptionKey);
+                    }
+                }
+                address.executeBatch();
+
+                List<Integer> paymentIds = new ArrayList<>();
+                if (hasCard.contains(true)) {
+                    card.executeBatch();
+                    paymentIds = generatedKeys(card);
+                }
+
+                int nextCard = 0;
+                for (int i = 0; i < count; i++) {
+                    Object[] fields = people.get(i).getFields().toArray();
+                    for (int f = 0; f < 6; f++) {
+                        person.setString(f + 1, (String) fields[f]); // forename, surname, email, password, housename, postcode
+                    }
+                    if (hasCard.get(i)) {
+                        person.setInt(7, paymentIds.get(nextCard++));
+                    } else {
+                        person.setNull(7, Types.INTEGER);
+                    }
+                    person.addBatch();
+                }
+                person.executeBatch();
+                List<Integer> personIds = generatedKeys(person);
+
+                for (int i = 0; i < count; i++) {
+                    int index = first + i;
+                    Person.Role r = index < settings.managers ? Person.Role.MANAGER
+                            : index < settings.managers + settings.staff ? Person.Role.STAFF
+                            : Person.Role.USER;
+                    role.setInt(1, personIds.get(i));
+                    role.setString(2, r.toString());
+                    role.addBatch();
+                    if (r == Person.Role.USER) {
+                        customers.add(personIds.get(i));
+                    }
+                }
+                role.executeBatch();
+                db.commit();
+            }
+        }
+
+        // the customers who order most often have nothing to do with when they registered
+        Collections.shuffle(customers, random);
+    }
+
+    private void addCard(PreparedStatement card, String holder, byte[] encryptionKey) throws SQLException {
+        boolean visa = random.nextDouble() < 0.6;
+        StringBuilder number = new StringBuilder(visa ? "4" : String.valueOf(51 + random.nextInt(5)));
+        while (number.length() < 15) {
+            number.append(random.nextInt(10));
+        }
+        number.append(luhnCheckDigit(number));
+        String securityCode = String.format("%03d", random.nextInt(1000));
+        LocalDate expiry = settings.until.withDayOfMonth(1).plusMonths(1 + random.nextInt(48));
+
+        try {
+            String[] encrypted = CipherEngine.forKey(encryptionKey).encryptAll(number.toString(), securityCode);
+            card.setString(1, visa ? "Visa" : "Mastercard");
+            card.setString(2, holder.toUpperCase());
+            card.setString(3, encrypted[0]);
+            card.setDate(4, java.sql.Date.valueOf(expiry));
+            card.setString(5, encrypted[1]);
+            card.addBatch();
+            bankDetailRows++;
+        } catch (InvalidKeyException e) {
+            // the key was derived just now with the same code the app logs in with
+            Crypto.cryptoError("Error whilst encrypting a generated card number, encryption key was invalid", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * The digit that makes a card number pass the Luhn check, like BankDetail requires
+     */
+    private static int luhnCheckDigit(CharSequence payload) {
+        int sum = 0;
+        for (int i = payload.length() - 1, position = 0; i >= 0; i--, position++) {
+            int digit = payload.charAt(i) - '0';
+            if (position % 2 == 0) {
+                digit *= 2;
+                if (digit > 9) digit -= 9;
+            }
+            sum += digit;
+        }
+        return (10 - sum % 10) % 10;
+    }
+
+    private static List<Integer> generatedKeys(PreparedStatement statement) throws SQLException {
+        List<Integer> keys = new ArrayList<>();
+        // keys come back in batch order, one per inserted row
+        ResultSet rs = statement.getGeneratedKeys();
+        while (rs.next()) {
+            keys.add(rs.getInt(1));
+        }
+        return keys;
+    }
+
+    // Orders
+
+    /**
+     * Orders are made oldest first, so order ids grow with their dates like they do in the shop, and written with
+     * Order.createOrders() one batch at a time
+     */
+    private void writeOrders() throws SQLException {
+        long first = settings.until.minusDays(settings.days).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long span = settings.until.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli() - first;
+
+        List<Order> batch = new ArrayList<>(settings.batchSize);
+        for (int i = 0; i < settings.orders; i++) {
+            Date date = new Date(first + (long) ((i + random.nextDouble()) * span / settings.orders));
+            long age = ChronoUnit.DAYS.between(date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate(), settings.until);
+
+            Order order = new Order(customers.get(skewed(customers.size(), 2)), date, status(age));
+            for (int line = lineCount(); line > 0; line--) {
+                // addItem() merges repeats of a product into one line, like the basket does
+                order.addItem(catalog.get(skewed(catalog.size(), 3)), random.nextDouble() < 0.8 ? 1 : 2 + random.nextInt(3));
+            }
+            orderLines += order.getItemsList().size();
+            batch.add(order);
+
+            if (batch.size() == settings.batchSize || i == settings.orders - 1) {
+                Order.createOrders(batch);
+                batch = new ArrayList<>(settings.batchSize);
+                if ((i + 1) % (settings.batchSize * 10) == 0) {
+                    log("Wrote " + (i + 1) + " of " + settings.orders + " orders");
+                }
+            }
+        }
+    }
+
+    /**
+     * Old orders have been fulfilled, recent ones are still being worked through
+     */
+    private Order.OrderStatus status(long ageDays) {
+        double r = random.nextDouble();
+        if (ageDays > 14) return Order.OrderStatus.FULFILLED;
+        if (ageDays > 3) return r < 0.7 ? Order.OrderStatus.FULFILLED : Order.OrderStatus.CONFIRMED;
+        return r < 0.6 ? Order.OrderStatus.PENDING : Order.OrderStatus.CONFIRMED;
+    }
+
+    /**
+     * Geometrically distributed with the configured mean, most orders have one or two lines and a few have many
+     */
+    private int lineCount() {
+        if (settings.meanLines <= 1) return 1;
+        double p = 1 / settings.meanLines;
+        int extra = (int) (Math.log(1 - random.nextDouble()) / Math.log(1 - p));
+        return Math.min(settings.maxLines, 1 + extra);
+    }
+
+    // Helpers
+
+    /**
+     * An index below size, the larger the skew the more often the first few come up (skew 1 is uniform)
+     */
+    private int skewed(int size, double skew) {
+        return Math.min(size - 1, (int) (size * Math.pow(random.nextDouble(), skew)));
+    }
+
+    private <T> T pick(T[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    /**
+     * Up to count different elements of the list, in random order
+     */
+    private <T> List<T> distinct(List<T> from, int count) {
+        List<T> picked = new ArrayList<>();
+        Set<Integer> used = new HashSet<>();
+        count = Math.min(count, from.size());
+        while (picked.size() < count) {
+            int i = random.nextInt(from.size());
+            if (used.add(i)) {
+                picked.add(from.get(i));
+            }
+        }
+        return picked;
+    }
+
+    private static String code(char type, int i) {
+        return String.format("%cG%05d", type, i);
+    }
+
+    private static String gaugeName(Component.Gauge gauge) {
+        return switch (gauge) {
+            case OOGAUGE -> "OO";
+            case TTGUAGE -> "TT";
+            case NGAUGE -> "N";
+            case NONE -> "";
+        };
+    }
+
+    private int stock() {
+        // about one in twenty products is sold out
+        return random.nextDouble() < 0.05 ? 0 : 1 + random.nextInt(200);
+    }
+
+    private double price(int min, int max) {
+        return min + random.nextInt(max - min + 1) - 0.01 * random.nextInt(2);
+    }
+
+    private String era() {
+        int from = 1 + random.nextInt(10);
+        int to = Math.min(11, from + random.nextInt(3));
+        return from == to ? String.valueOf(from) : from + "-" + to;
+    }
+
+    private String postcode(String area) {
+        return area + (1 + random.nextInt(20)) + " " + (1 + random.nextInt(9))
+                + POSTCODE_LETTERS.charAt(random.nextInt(POSTCODE_LETTERS.length()))
+                + POSTCODE_LETTERS.charAt(random.nextInt(POSTCODE_LETTERS.length()));
+    }
+
+    private static void log(String message) {
+        System.out.println("[DataGenerator] " + message);
+    }
+
+    public static void main(String[] args) {
+        if (List.of(args).contains("--help")) {
+            System.out.println(USAGE);
+            return;
+        }
+
+        Settings settings;
+        try {
+            settings = Settings.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        DatabaseBridge db = DatabaseBridge.instance();
+        DatabaseOperation.setConnection(db);
+        log("Writing to " + db.getConfig());
+        if (db.getConfig().getUrl().startsWith("jdbc:h2:mem:")) {
+            log("The database is in memory and is gone when this exits, set db.url to a file database to keep it");
+        }
+
+        try {
+            log("Done: " + new DataGenerator(settings, db).run());
+        } catch (SQLException e) {
+            DatabaseBridge.databaseError("Data generation failed", e);
+            System.exit(1);
+        } finally {
+            db.shutdown();
+        }
+    }
+}
@@ -0,0 +1,553 @@
+package tools;
+
+import controllers.AppContext;
+import controllers.AuthenticationService;
+import controllers.OrderController;
+import db.DatabaseBridge;
+import db.DatabaseOperation;
+import entity.order.Order;
+import entity.order.OrderFulfillment;
+import entity.order.OrderSummary;
+import entity.product.CatalogCache;
+import entity.product.Product;
+import entity.user.Person;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Simulates many kiosks and staff terminals sharing one database, without Swing, by running the same controller and
+ * entity calls as the screens do, each wrapped in openConnection()/closeConnection() like a DatabaseWorker task:
+ * <ul>
+ *     <li>a customer kiosk logs someone in with AuthenticationService.login (more than -Dauth.maxPending logins at
+ *     once count as failed), browses the catalog, adds products to the basket with Order.addItem, often checks out
+ *     with OrderController.checkout, sometimes looks at their order history, and logs out</li>
+ *     <li>a staff terminal lists the orders awaiting fulfillment, opens one and fulfills it with OrderFulfillment</li>
+ * </ul>
+ * Every kiosk has its own AppContext session and its own thread. Between actions each one waits a random think time.
+ * The run is repeated for every number of kiosks given (--kiosks=10,20,40), after a warm-up each time, and reports
+ * the throughput and latency percentiles of every operation, so the point where the database saturates shows up as
+ * throughput levelling off while the percentiles climb.
+ * <br><br>
+ * Customers are the people DataGenerator made (emails at example.com with bank details), logging in with its
+ * password. Pass --generate to generate them first in the same JVM, which is the only way to use the embedded
+ * in-memory database; --gen-name=value is given to DataGenerator as --name=value.
+ */
+public final class LoadDriver {
+    public static final String USAGE = """
+            Usage: LoadDriver [--name=value ...]
+              --kiosks=10,20,40       Customer kiosks running at once, one run per number
+              --staff=2               Staff terminals fulfilling orders during every run
+              --duration=60           Seconds measured per run
+              --warmup=10             Seconds run before measuring
+              --think=1000            Mean think time between actions in milliseconds, 0 for none
+              --browses=4             Mean catalog views per visit
+              --add-ratio=0.6         Chance a catalog view ends with a product added to the basket
+              --checkout-ratio=0.7    Chance a visit with a full basket checks out
+              --history-ratio=0.2     Chance a visit looks at the customer's order history
+              --customers=1000        How many generated customers to log in as
+              --password=Generated1!  Their password
+              --seed=1                Seed of the kiosks' random choices
+              --generate              Run DataGenerator first, --gen-orders=20000 passes --orders=20000 to it
+            The database is chosen with -Ddb.profile, -Ddb.url and so on, see README.md""";
+
+    private static final String CUSTOMER_QUERY = """
+            SELECT Person.email FROM Person
+            JOIN Role ON Role.personId = Person.PersonId
+            WHERE Role.role = 'USER' AND Person.paymentId IS NOT NULL AND Person.email LIKE '%@example.com'
+            ORDER BY Person.PersonId LIMIT ?""";
+    // orders listed per page, like OrderManagementScreen
+    private static final int QUEUE_PAGE = 100;
+
+    /**
+     * How the kiosks behave, see USAGE for the meaning and default of each setting
+     */
+    public static final class Settings {
+        int[] kiosks = {10, 20, 40};
+        int staff = 2;
+        int durationSeconds = 60;
+        int warmupSeconds = 10;
+        int thinkMillis = 1000;
+        double browses = 4;
+        double addRatio = 0.6;
+        double checkoutRatio = 0.7;
+        double historyRatio = 0.2;
+        int customers = 1000;
+        String password = "Generated1!";
+        long seed = 1;
+        boolean generate = false;
+        List<String> generatorArgs = new ArrayList<>();
+
+        /**
+         * @param args Settings as --name=value, anything not given keeps its default
+         * @return The settings, checked
+         * @throws IllegalArgumentException If a setting is unknown, malformed or out of range
+         */
+        public static Settings parse(String... args) {
+            Settings s = new Settings();
+            for (String arg : args) {
+                if (arg.equals("--generate")) {
+                    s.generate = true;
+                    continue;
+                }
+                int equals = arg.indexOf('=');
+                if (!arg.startsWith("--") || equals < 0) {
+                    throw new IllegalArgumentException("Expected --name=value but got [" + arg + "]");
+                }
+                String name = arg.substring(2, equals);
+                String value = arg.substring(equals + 1);
+                if (name.startsWith("gen-")) {
+                    s.generate = true;
+                    s.generatorArgs.add("--" + name.substring("gen-".length()) + "=" + value);
+                    continue;
+                }
+                try {
+                    switch (name) {
+                        case "kiosks" -> s.kiosks = Arrays.stream(value.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+                        case "staff" -> s.staff = Integer.parseInt(value);
+                        case "duration" -> s.durationSeconds = Integer.parseInt(value);
+                        case "warmup" -> s.warmupSeconds = Integer.parseInt(value);
+                        case "think" -> s.thinkMillis = Integer.parseInt(value);
+                        case "browses" -> s.browses = Double.parseDouble(value);
+                        case "add-ratio" -> s.addRatio = Double.parseDouble(value);
+                        case "checkout-ratio" -> s.checkoutRatio = Double.parseDouble(value);
+                        case "history-ratio" -> s.historyRatio = Double.parseDouble(value);
+                        case "customers" -> s.customers = Integer.parseInt(value);
+                        case "password" -> s.password = value;
+                        case "seed" -> s.seed = Long.parseLong(value);
+                        default -> throw new IllegalArgumentException("Unknown setting [--" + name + "]");
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid value for --" + name + " [" + value + "]", e);
+                }
+            }
+            s.check();
+            // the generated persons have to be able to log in with the password the kiosks use
+            s.generatorArgs.add("--password=" + s.password);
+            return s;
+        }
+
+        private void check() {
+            if (kiosks.length == 0 || Arrays.stream(kiosks).anyMatch(k -> k < 0) || staff < 0
+                    || Arrays.stream(kiosks).allMatch(k -> k == 0) && staff == 0) {
+                throw new IllegalArgumentException("Run at least one kiosk or staff terminal, and no negative numbers");
+            }
+            if (durationSeconds < 1 || warmupSeconds < 0 || thinkMillis < 0 || customers < 1 || browses < 1) {
+                throw new IllegalArgumentException("--duration, --customers and --browses must be at least 1, "
+                        + "--warmup and --think at least 0");
+            }
+            for (double ratio : new double[]{addRatio, checkoutRatio, historyRatio}) {
+                if (ratio < 0 || ratio > 1) {
+                    throw new IllegalArgumentException("Ratios are chances between 0 and 1");
+                }
+            }
+        }
+    }
+
+    /**
+     * The result of an operation that is not an error but did not go through either, e.g. another terminal
+     * fulfilled the order first. It is counted as failed rather than as an error.
+     */
+    private static final class Rejected extends Exception {
+        Rejected(String message) {
+            super(message);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Operation<T> {
+        T run() throws Exception;
+    }
+
+    /**
+     * The latencies of one operation during a run, every sample is kept so the percentiles are exact
+     */
+    private static final class OperationStats {
+        private long[] samples = new long[1024];
+        private int count = 0;
+        private int failed = 0;
+        private int errors = 0;
+        private String firstError = null;
+
+        synchronized void record(long nanos, Throwable error) {
+            if (count == samples.length) {
+                samples = Arrays.copyOf(samples, count * 2);
+            }
+            samples[count++] = nanos;
+            if (error instanceof Rejected) {
+                failed++;
+            } else if (error != null) {
+                errors++;
+                if (firstError == null) {
+                    firstError = error.getClass().getSimpleName() + ": " + error.getMessage();
+                }
+            }
+        }
+
+        synchronized int count() {
+            return count;
+        }
+
+        /**
+         * @param p Between 0 and 1
+         * @return The nearest-rank percentile in milliseconds
+         */
+        synchronized double percentile(double p) {
+            if (count == 0) return 0;
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            return sorted[Math.max(0, (int) Math.ceil(p * count) - 1)] / 1e6;
+        }
+
+        synchronized String row(String name, double seconds) {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            double mean = count == 0 ? 0 : Arrays.stream(sorted).average().orElse(0) / 1e6;
+            return String.format(Locale.ROOT, "%-14s %8d %7d %7d %9.1f %9.1f %8.1f %8.1f %8.1f %8.1f",
+                    name, count, failed, errors, count / seconds, mean,
+                    percentile(0.50), percentile(0.95), percentile(0.99),
+                    count == 0 ? 0 : sorted[count - 1] / 1e6);
+        }
+    }
+
+    /**
+     * Everything measured in one run
+     */
+    private static final class Run {
+        private final Map<String, OperationStats> operations = new LinkedHashMap<>();
+        private final long measureFrom;
+        private final long end;
+
+        Run(long measureFrom, long end) {
+            this.measureFrom = measureFrom;
+            this.end = end;
+            for (String name : List.of("login", "browse", "add-item", "checkout", "history", "logout",
+                    "order-queue", "order-view", "fulfill")) {
+                operations.put(name, new OperationStats());
+            }
+        }
+
+        boolean isOver() {
+            return System.nanoTime() >= end;
+        }
+    }
+
+    private final Settings settings;
+    private final DatabaseBridge db;
+    private List<String> customers;
+
+    public LoadDriver(Settings settings, DatabaseBridge db) {
+        this.settings = settings;
+        this.db = db;
+    }
+
+    /**
+     * Runs once per number of kiosks and prints a report after each run, then a summary of all of them
+     * @throws SQLException If the customers could not be read
+     * @throws InterruptedException If interrupted while waiting for a run to finish
+     */
+    public void runAll() throws SQLException, InterruptedException {
+        customers = loadCustomers();
+        if (customers.isEmpty()) {
+            throw new IllegalStateException("There are no generated customers with bank details, run DataGenerator "
+                    + "against this database first or pass --generate");
+        }
+        log("Logging in as " + customers.size() + " customers");
+
+        List<String> summary = new ArrayList<>();
+        summary.add(String.format(Locale.ROOT, "%7s %6s %9s %12s %12s %12s", "kiosks", "staff", "ops/s",
+                "login p95", "browse p95", "checkout p95"));
+        for (int kiosks : settings.kiosks) {
+            Run run = run(kiosks);
+            double seconds = settings.durationSeconds;
+            int total = run.operations.values().stream().mapToInt(OperationStats::count).sum();
+            summary.add(String.format(Locale.ROOT, "%7d %6d %9.1f %12.1f %12.1f %12.1f", kiosks, settings.staff,
+                    total / seconds, run.operations.get("login").percentile(0.95),
+                    run.operations.get("browse").percentile(0.95), run.operations.get("checkout").percentile(0.95)));
+        }
+
+        log("Summary, latencies in ms");
+        summary.forEach(System.out::println);
+    }
+
+    private List<String> loadCustomers() throws SQLException {
+        List<String> emails = new ArrayList<>();
+        db.openConnection();
+        try (PreparedStatement query = db.prepareStatement(CUSTOMER_QUERY)) {
+            query.setInt(1, settings.customers);
+            ResultSet rs = query.executeQuery();
+            while (rs.next()) {
+                emails.add(rs.getString("email"));
+            }
+            return emails;
+        } catch (SQLException e) {
+            DatabaseBridge.databaseError("Failed to read the generated customers", e);
+            throw e;
+        } finally {
+            db.closeConnection();
+        }
+    }
+
+    private Run run(int kiosks) throws InterruptedException {
+        log("Running " + kiosks + " kiosks and " + settings.staff + " staff terminals for "
+                + settings.warmupSeconds + "s warm-up and " + settings.durationSeconds + "s measured");
+
+        long start = System.nanoTime();
+        long measureFrom = start + settings.warmupSeconds * 1_000_000_000L;
+        Run run = new Run(measureFrom, measureFrom + settings.durationSeconds * 1_000_000_000L);
+
+        if (db.getQueryStats() != null) {
+            db.getQueryStats().reset();
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < kiosks; i++) {
+            Random random = new Random(settings.seed * 31 + i);
+            threads.add(new Thread(() -> customerKiosk(run, random), "kiosk-" + i));
+        }
+        for (int i = 0; i < settings.staff; i++) {
+            Random random = new Random(settings.seed * 31 - i - 1);
+            threads.add(new Thread(() -> staffTerminal(run, random), "staff-" + i));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        System.out.printf(Locale.ROOT, "%-14s %8s %7s %7s %9s %9s %8s %8s %8s %8s%n", "operation", "count",
+                "failed", "errors", "ops/s", "mean ms", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        run.operations.forEach((name, stats) -> System.out.println(stats.row(name, settings.durationSeconds)));
+        run.operations.forEach((name, stats) -> {
+            if (stats.firstError != null) {
+                log("First " + name + " error: " + stats.firstError);
+            }
+        });
+        log("Pool since start: " + db.getPoolStats());
+        if (db.getQueryStats() != null) {
+            // includes the warm-up
+            log(db.getQueryStats().dump());
+        }
+        return run;
+    }
+
+    // Customer kiosk
+
+    private void customerKiosk(Run run, Random random) {
+        AppContext.setThreadSession(new AppContext.Session());
+        try {
+            while (!run.isOver()) {
+                think(random);
+                visit(run, random);
+            }
+        } finally {
+            AppContext.setThreadSession(null);
+        }
+    }
+
+    private void visit(Run run, Random random) {
+        String email = customers.get(random.nextInt(customers.size()));
+
+        // the same steps as the Login screen, the service opens the connections it needs itself
+        Person user = measured(run, "login", () -> {
+            AuthenticationService.Authenticated authenticated;
+            try {
+                authenticated = AuthenticationService.login(email, settings.password).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof AuthenticationService.BusyException) {
+                    throw new Rejected(e.getCause().getMessage());
+                }
+                throw e;
+            }
+            if (authenticated == null) {
+                throw new Rejected("Could not log in as " + email);
+            }
+            AppContext.setEncryptionKey(authenticated.encryptionKey());
+            AppContext.setCurrentUser(authenticated.user());
+            OrderController.newOrder();
+            return authenticated.user();
+        });
+        if (user == null) return;
+
+        try {
+            int browses = geometric(random, settings.browses);
+            for (int i = 0; i < browses && !run.isOver(); i++) {
+                think(random);
+                List<Product> catalog = timed(run, "browse", CatalogCache::getAll);
+                if (catalog == null || catalog.isEmpty() || random.nextDouble() >= settings.addRatio) continue;
+
+                Product product = catalog.get(random.nextInt(catalog.size()));
+                if (product.getStockLevel() < 1) continue;
+                timed(run, "add-item", () -> {
+                    OrderController.getCurrentOrder().addItem(product, 1);
+                    return null;
+                });
+            }
+
+            if (!run.isOver() && !OrderController.getCurrentOrder().getItemsList().isEmpty()
+                    && random.nextDouble() < settings.checkoutRatio) {
+                think(random);
+                timed(run, "checkout", () -> {
+                    try {
+                        OrderController.getCurrentOrder().checkStock();
+                    } catch (Order.OrderHasInsufficientStockException e) {
+                        throw new Rejected(e.getMessage());
+                    }
+                    if (!OrderController.checkout()) {
+                        throw new Rejected("Bank details of " + email + " are missing or invalid");
+                    }
+                    return null;
+                });
+            }
+
+            if (!run.isOver() && random.nextDouble() < settings.historyRatio) {
+                think(random);
+                timed(run, "history", () -> user.getOrderHistory(null, 10));
+            }
+        } finally {
+            timed(run, "logout", () -> {
+                AppContext.logOut();
+                return null;
+            });
+        }
+    }
+
+    // Staff terminal
+
+    private void staffTerminal(Run run, Random random) {
+        while (!run.isOver()) {
+            think(random);
+            List<OrderSummary> queue = timed(run, "order-queue", () -> {
+                Order.countOrdersWithStatus(Order.OrderStatus.CONFIRMED);
+                return Order.getOrderSummaries(OrderSummary.Sort.DATE, true, 0, QUEUE_PAGE, Order.OrderStatus.CONFIRMED);
+            });
+            if (queue == null || queue.isEmpty() || run.isOver()) continue;
+
+            think(random);
+            int orderId = queue.get(random.nextInt(queue.size())).orderId();
+            Order order = timed(run, "order-view", () -> Order.getOrderWithID(orderId));
+            if (order == null || run.isOver()) continue;
+
+            think(random);
+            timed(run, "fulfill", () -> {
+                try {
+                    OrderFulfillment.fulfill(order);
+                } catch (Order.OrderHasInsufficientStockException e) {
+                    throw new Rejected(e.getMessage());
+                } catch (IllegalStateException e) {
+                    // another terminal got to it first
+                    throw new Rejected(e.getMessage());
+                }
+                return null;
+            });
+        }
+    }
+
+    // Helpers
+
+    /**
+     * Runs an operation with a connection open, like DatabaseWorker does, and records how long it took if the run
+     * is being measured
+     * @return What the operation returned, or null if it failed
+     */
+    private <T> T timed(Run run, String name, Operation<T> operation) {
+        return measured(run, name, () -> {
+            try {
+                db.openConnection();
+                return operation.run();
+            } finally {
+                db.closeConnection();
+            }
+        });
+    }
+
+    /**
+     * Like timed, for operations that open the connections they need themselves
+     */
+    private <T> T measured(Run run, String name, Operation<T> operation) {
+        long start = System.nanoTime();
+        T result = null;
+        Throwable error = null;
+        try {
+            result = operation.run();
+        } catch (Exception e) {
+            error = e;
+        }
+        if (start >= run.measureFrom) {
+            run.operations.get(name).record(System.nanoTime() - start, error);
+        }
+        return error == null ? result : null;
+    }
+
+    private void think(Random random) {
+        if (settings.thinkMillis == 0) return;
+        long millis = (long) (-Math.log(1 - random.nextDouble()) * settings.thinkMillis);
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * At least one, with the given mean
+     */
+    private static int geometric(Random random, double mean) {
+        if (mean <= 1) return 1;
+        return 1 + (int) (Math.log(1 - random.nextDouble()) / Math.log(1 - 1 / mean));
+    }
+
+    private static void log(String message) {
+        System.out.println("[LoadDriver] " + message);
+    }
+
+    public static void main(String[] args) {
+        if (List.of(args).contains("--help")) {
+            System.out.println(USAGE);
+            return;
+        }
+
+        Settings settings;
+        try {
+            settings = Settings.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        DatabaseBridge db = DatabaseBridge.instance();
+        DatabaseOperation.setConnection(db);
+        log("Running against " + db.getConfig());
+
+        try {
+            if (settings.generate) {
+                log("Generated " + new DataGenerator(DataGenerator.Settings.parse(settings.generatorArgs.toArray(String[]::new)), db).run());
+            }
+            // every kiosk starts with the catalog loaded, like the Shop screen does before anyone logs in
+            db.openConnection();
+            try {
+                log("Catalog of " + CatalogCache.getAll().size() + " products loaded");
+            } finally {
+                db.closeConnection();
+            }
+            new LoadDriver(settings, db).runAll();
+        } catch (SQLException | IllegalStateException | IllegalArgumentException e) {
+            DatabaseBridge.databaseError("Load test failed", e);
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            db.shutdown();
+        }
+    }
+}
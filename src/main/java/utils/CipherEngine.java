@@ -0,0 +1,444 @@
+package utils;
+
+import javax.crypto.*;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Encrypts and decrypts fields such as card numbers, without looking up the cipher, building the key and seeding a
+ * random for every field. There are two formats, both Base64 as strings:
+ * <ul>
+ *     <li>GCM, what is written: a version byte (2), a marker byte, a 12 byte random nonce, then AES/GCM ciphertext
+ *     with its 16 byte tag. The tag tells a wrong key (or tampered data) apart for certain, and the JDK runs GCM on
+ *     the CPU's AES and carry-less multiply instructions where there are any.</li>
+ *     <li>CBC, the legacy format with no header: a 16 byte random IV, then AES/CBC/PKCS5Padding ciphertext. A wrong
+ *     key shows only as bad padding, and only most of the time. It is still read, and written by engines asking for
+ *     it.</li>
+ * </ul>
+ * Data that starts with the GCM header is GCM, and if it fails to authenticate that is always a WrongKeyException,
+ * it is never tried as CBC. Data without the header is read as CBC, where a wrong key comes through as garbage about
+ * once in 256 tries. A legacy IV starts with the header once in 65536 fields; such a field cannot be read, run
+ * BankDetailReencryption over it with the key it was written with. Strict reads (-Dcrypto.strictReads=true, or the
+ * constructor), for once every row has been re-encrypted, reject data without the header with an
+ * UnsupportedFormatException naming its version byte instead.
+ * <br>
+ * An engine holds one key. Every thread gets its own Ciphers and scratch buffers, each field still needs a fresh IV
+ * or nonce so the cipher is initialised per field, but that is cheap next to Cipher.getInstance. IVs and nonces come
+ * from one shared SecureRandom. Use {@link #forKey(byte[])} when the key comes from AppContext, it keeps the last
+ * engine per thread, and the *All methods to work through several fields (a card number and its security code, a
+ * page of rows) at once.
+ */
+public final class CipherEngine {
+    /**
+     * How fields are written
+     */
+    public enum Format {
+        /** Legacy, IV then AES/CBC/PKCS5Padding */
+        CBC,
+        /** Version 2, header, nonce then AES/GCM with a tag */
+        GCM
+    }
+
+    /**
+     * The data was encrypted with another key (or tampered with), only GCM data can tell for certain
+     */
+    public static class WrongKeyException extends InvalidKeyException {
+        public WrongKeyException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The data is not in a format this engine reads: an unknown version, or legacy data while reads are strict
+     */
+    public static class UnsupportedFormatException extends GeneralSecurityException {
+        public UnsupportedFormatException(String message) {
+            super(message);
+        }
+    }
+
+    public static final byte VERSION_GCM = 2;
+    private static final byte MARKER = (byte) 0xC7;
+    private static final int HEADER_LENGTH = 2;
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_LENGTH = 16;
+    private static final int IV_LENGTH = 16;
+    private static final int BLOCK_SIZE = 16;
+
+    private static final boolean STRICT_READS = Boolean.getBoolean("crypto.strictReads");
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+    private static final ThreadLocal<CipherEngine> LAST_ENGINE = new ThreadLocal<>();
+
+    /**
+     * What a thread reuses between fields, never shared between threads
+     */
+    private static final class Scratch {
+        private final Cipher cbc = cipher("AES/CBC/PKCS5Padding");
+        private final Cipher gcm = cipher("AES/GCM/NoPadding");
+        private final byte[] iv = new byte[IV_LENGTH];
+        private final byte[] nonce = new byte[NONCE_LENGTH];
+        private byte[] output = new byte[256];
+
+        private static Cipher cipher(String transformation) {
+            try {
+                return Cipher.getInstance(transformation);
+            } catch (NoSuchPaddingException | NoSuchAlgorithmException e) {
+                // Again, this one should rarely get raised
+                Crypto.cryptoError(transformation + " is not available on this system", e);
+                throw new RuntimeException(transformation + " is not supported on this system");
+            }
+        }
+
+        private byte[] output(int length) {
+            if (output.length < length) {
+                output = new byte[Math.max(length, output.length * 2)];
+            }
+            return output;
+        }
+    }
+
+    private final byte[] keyBytes;
+    private final SecretKeySpec key;
+    private final Format format;
+    private final boolean strictReads;
+
+    /**
+     * An engine writing GCM, reading legacy data too unless crypto.strictReads is set
+     * @param key An AES key of 16, 24 or 32 bytes, e.g. from Crypto.deriveEncryptionKey
+     * @throws InvalidKeyException If the key is missing or has another length
+     */
+    public CipherEngine(byte[] key) throws InvalidKeyException {
+        this(key, Format.GCM);
+    }
+
+    /**
+     * @param key An AES key of 16, 24 or 32 bytes, e.g. from Crypto.deriveEncryptionKey
+     * @param format What encrypt writes, an engine writing CBC always reads it
+     * @throws InvalidKeyException If the key is missing or has another length
+     */
+    public CipherEngine(byte[] key, Format format) throws InvalidKeyException {
+        this(key, format, format == Format.GCM && STRICT_READS);
+    }
+
+    /**
+     * @param key An AES key of 16, 24 or 32 bytes, e.g. from Crypto.deriveEncryptionKey
+     * @param format What encrypt writes
+     * @param strictReads Whether data without the GCM header is rejected rather than read as CBC, see the class
+     *                    description
+     * @throws InvalidKeyException If the key is missing or has another length
+     */
+    public CipherEngine(byte[] key, Format format, boolean strictReads) throws InvalidKeyException {
+        if (key == null || !(key.length == 16 || key.length == 24 || key.length == 32)) {
+            InvalidKeyException e = new InvalidKeyException("Invalid AES key length: "
+                    + (key == null ? "no key" : key.length + " bytes"));
+            Crypto.cryptoError("Encryption key was invalid", e);
+            throw e;
+        }
+        this.keyBytes = key.clone();
+        this.key = new SecretKeySpec(this.keyBytes, "AES");
+        this.format = format;
+        this.strictReads = strictReads;
+    }
+
+    /**
+     * The engine this thread used last if it has the same key, otherwise a new one writing GCM which then becomes
+     * the last
+     * @param key An AES key of 16, 24 or 32 bytes
+     * @return An engine for the key
+     * @throws InvalidKeyException If the key is missing or has another length
+     */
+    public static CipherEngine forKey(byte[] key) throws InvalidKeyException {
+        CipherEngine last = LAST_ENGINE.get();
+        if (last != null && key != null && MessageDigest.isEqual(last.keyBytes, key)) {
+            return last;
+        }
+        CipherEngine engine = new CipherEngine(key);
+        LAST_ENGINE.set(engine);
+        return engine;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public boolean readsStrictly() {
+        return strictReads;
+    }
+
+    /**
+     * @param plaintextLength Bytes to encrypt
+     * @return Bytes the encrypted field takes in this engine's format, before Base64
+     */
+    public int encryptedLength(int plaintextLength) {
+        return format == Format.GCM
+                ? HEADER_LENGTH + NONCE_LENGTH + plaintextLength + TAG_LENGTH
+                : IV_LENGTH + (plaintextLength / BLOCK_SIZE + 1) * BLOCK_SIZE;
+    }
+
+    /**
+     * @param encoded A field as stored
+     * @return The format it was written in, telling GCM by its header only
+     */
+    public static Format formatOf(String encoded) {
+        byte[] encrypted = Base64.getDecoder().decode(encoded);
+        return hasGcmHeader(encrypted, encrypted.length) ? Format.GCM : Format.CBC;
+    }
+
+    /**
+     * Encrypts the remaining bytes of plaintext, writing the encrypted field at the position of out
+     * @param plaintext Read up to its limit
+     * @param out Needs at least encryptedLength(plaintext.remaining()) bytes remaining
+     * @return The bytes written to out
+     * @throws InvalidKeyException If the cipher refuses the key
+     */
+    public int encrypt(ByteBuffer plaintext, ByteBuffer out) throws InvalidKeyException {
+        Scratch scratch = SCRATCH.get();
+        try {
+            Cipher cipher = initEncrypt(scratch);
+            int header;
+            if (format == Format.GCM) {
+                out.put(VERSION_GCM).put(MARKER).put(scratch.nonce);
+                header = HEADER_LENGTH + NONCE_LENGTH;
+            } else {
+                out.put(scratch.iv);
+                header = IV_LENGTH;
+            }
+            return header + cipher.doFinal(plaintext, out);
+        } catch (GeneralSecurityException e) {
+            throw failed(e);
+        }
+    }
+
+    /**
+     * Decrypts the remaining bytes of encrypted, a field in either format, writing the plaintext at the position of out
+     * @param encrypted Read up to its limit
+     * @param out Needs at least encrypted.remaining() bytes remaining
+     * @return The bytes written to out
+     * @throws InvalidKeyException If the cipher refuses the key, a WrongKeyException if the field is GCM under
+     * another key
+     * @throws IllegalArgumentException If the data is in no format this engine reads
+     */
+    public int decrypt(ByteBuffer encrypted, ByteBuffer out) throws InvalidKeyException {
+        Scratch scratch = SCRATCH.get();
+        int start = encrypted.position();
+        int length = encrypted.remaining();
+        try {
+            if (length >= HEADER_LENGTH + NONCE_LENGTH + TAG_LENGTH
+                    && encrypted.get(start) == VERSION_GCM && encrypted.get(start + 1) == MARKER) {
+                try {
+                    encrypted.position(start + HEADER_LENGTH).get(scratch.nonce);
+                    scratch.gcm.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, scratch.nonce));
+                    return scratch.gcm.doFinal(encrypted, out);
+                } catch (AEADBadTagException e) {
+                    throw wrongKey();
+                }
+            }
+            if (strictReads) {
+                throw unsupported(length == 0 ? -1 : encrypted.get(start));
+            }
+            if (!hasCbcLength(length)) {
+                throw new IllegalBlockSizeException("Encrypted data is neither GCM nor CBC");
+            }
+            encrypted.get(scratch.iv);
+            scratch.cbc.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(scratch.iv));
+            return scratch.cbc.doFinal(encrypted, out);
+        } catch (GeneralSecurityException e) {
+            throw failed(e);
+        }
+    }
+
+    /**
+     * @param plaintext The string to be encrypted
+     * @return The field in this engine's format, Base64-encoded
+     * @throws InvalidKeyException If the cipher refuses the key
+     */
+    public String encrypt(String plaintext) throws InvalidKeyException {
+        Scratch scratch = SCRATCH.get();
+        byte[] input = plaintext.getBytes(StandardCharsets.UTF_8);
+        byte[] encrypted = new byte[encryptedLength(input.length)];
+        try {
+            Cipher cipher = initEncrypt(scratch);
+            int header;
+            if (format == Format.GCM) {
+                encrypted[0] = VERSION_GCM;
+                encrypted[1] = MARKER;
+                System.arraycopy(scratch.nonce, 0, encrypted, HEADER_LENGTH, NONCE_LENGTH);
+                header = HEADER_LENGTH + NONCE_LENGTH;
+            } else {
+                System.arraycopy(scratch.iv, 0, encrypted, 0, IV_LENGTH);
+                header = IV_LENGTH;
+            }
+            // straight behind the header, no second array to stitch together
+            cipher.doFinal(input, 0, input.length, encrypted, header);
+        } catch (GeneralSecurityException e) {
+            throw failed(e);
+        }
+        return Base64.getEncoder().encodeToString(encrypted);
+    }
+
+    /**
+     * @param encoded What {@link #encrypt(String)} or Crypto.encryptString returned, in either format
+     * @return The original string
+     * @throws InvalidKeyException If the cipher refuses the key, a WrongKeyException if the field is GCM under
+     * another key
+     * @throws IllegalArgumentException If the data is in no format this engine reads
+     */
+    public String decrypt(String encoded) throws InvalidKeyException {
+        Scratch scratch = SCRATCH.get();
+        byte[] encrypted = Base64.getDecoder().decode(encoded);
+        try {
+            int length = decrypt(scratch, encrypted);
+            return new String(scratch.output, 0, length, StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException e) {
+            throw failed(e);
+        }
+    }
+
+    /**
+     * Like {@link #decrypt(String)}, for bulk work where some fields are expected not to be under this key, nothing
+     * is logged. A wrong key for a CBC field still comes out right about once in 256 tries, check what comes back is
+     * plausible.
+     * @param encoded What {@link #encrypt(String)} or Crypto.encryptString returned, in either format
+     * @return The original string, or null if it did not decrypt with this key or is not encrypted data at all
+     */
+    public String decryptOrNull(String encoded) {
+        Scratch scratch = SCRATCH.get();
+        try {
+            int length = decrypt(scratch, Base64.getDecoder().decode(encoded));
+            return new String(scratch.output, 0, length, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException | GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param plaintexts The fields to encrypt, null ones stay null
+     * @return The encrypted fields in the same order
+     * @throws InvalidKeyException If the cipher refuses the key
+     */
+    public String[] encryptAll(String... plaintexts) throws InvalidKeyException {
+        String[] encrypted = new String[plaintexts.length];
+        for (int i = 0; i < plaintexts.length; i++) {
+            encrypted[i] = plaintexts[i] == null ? null : encrypt(plaintexts[i]);
+        }
+        return encrypted;
+    }
+
+    /**
+     * @param encoded The fields to decrypt, null ones stay null
+     * @return The decrypted fields in the same order
+     * @throws InvalidKeyException If the cipher refuses the key, a WrongKeyException if a field is GCM under
+     * another key
+     */
+    public String[] decryptAll(String... encoded) throws InvalidKeyException {
+        String[] decrypted = new String[encoded.length];
+        for (int i = 0; i < encoded.length; i++) {
+            decrypted[i] = encoded[i] == null ? null : decrypt(encoded[i]);
+        }
+        return decrypted;
+    }
+
+    /**
+     * Picks a fresh IV or nonce into the scratch buffers and initialises the cipher of this engine's format with it
+     */
+    private Cipher initEncrypt(Scratch scratch) throws GeneralSecurityException {
+        if (format == Format.GCM) {
+            RANDOM.nextBytes(scratch.nonce);
+            scratch.gcm.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, scratch.nonce));
+            return scratch.gcm;
+        }
+        RANDOM.nextBytes(scratch.iv);
+        scratch.cbc.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(scratch.iv));
+        return scratch.cbc;
+    }
+
+    /**
+     * Decrypts a whole field into scratch.output, see the class description for how the format is told
+     * @return The length of the plaintext
+     */
+    private int decrypt(Scratch scratch, byte[] encrypted) throws GeneralSecurityException {
+        int length = encrypted.length;
+        byte[] output = scratch.output(length);
+        if (hasGcmHeader(encrypted, length)) {
+            try {
+                int offset = HEADER_LENGTH + NONCE_LENGTH;
+                scratch.gcm.init(Cipher.DECRYPT_MODE, key,
+                        new GCMParameterSpec(TAG_LENGTH * 8, encrypted, HEADER_LENGTH, NONCE_LENGTH));
+                return scratch.gcm.doFinal(encrypted, offset, length - offset, output, 0);
+            } catch (AEADBadTagException e) {
+                throw wrongKey();
+            }
+        }
+        if (strictReads) {
+            throw unsupported(length == 0 ? -1 : encrypted[0]);
+        }
+        if (!hasCbcLength(length)) {
+            throw new IllegalBlockSizeException("Encrypted data is neither GCM nor CBC");
+        }
+        scratch.cbc.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(encrypted, 0, IV_LENGTH));
+        return scratch.cbc.doFinal(encrypted, IV_LENGTH, length - IV_LENGTH, output, 0);
+    }
+
+    private static boolean hasGcmHeader(byte[] encrypted, int length) {
+        return length >= HEADER_LENGTH + NONCE_LENGTH + TAG_LENGTH
+                && encrypted[0] == VERSION_GCM && encrypted[1] == MARKER;
+    }
+
+    private static boolean hasCbcLength(int length) {
+        return length >= IV_LENGTH + BLOCK_SIZE && length % BLOCK_SIZE == 0;
+    }
+
+    /**
+     * @param version The first byte of the data, -1 if there is none
+     */
+    private static UnsupportedFormatException unsupported(int version) {
+        return new UnsupportedFormatException("Encrypted data has no known version (first byte "
+                + (version == -1 ? "missing" : String.valueOf(version & 0xFF))
+                + "), legacy CBC data is not read with -Dcrypto.strictReads=true");
+    }
+
+    private static WrongKeyException wrongKey() {
+        return new WrongKeyException("The data was encrypted with another key, or has been tampered with");
+    }
+
+    /**
+     * Logs and maps a failure the way Crypto always has: a refused key is rethrown, anything else is unchecked
+     */
+    private static RuntimeException failed(GeneralSecurityException e) throws InvalidKeyException {
+        if (e instanceof WrongKeyException wrongKey) {
+            Crypto.cryptoError(wrongKey.getMessage());
+            throw wrongKey;
+        }
+        if (e instanceof UnsupportedFormatException) {
+            Crypto.cryptoError(e.getMessage());
+            return new IllegalArgumentException(e.getMessage(), e);
+        }
+        if (e instanceof InvalidKeyException invalidKey) {
+            Crypto.cryptoError("Encryption key was invalid", e);
+            throw invalidKey;
+        }
+        if (e instanceof InvalidAlgorithmParameterException) {
+            // This should never be raised because the IV and nonce lengths are hardcoded
+            Crypto.cryptoError("Algorithm parameter of SecretKeySpec was invalid", e);
+            return new RuntimeException("Algorithm parameter of SecretKeySpec was invalid");
+        }
+        if (e instanceof ShortBufferException) {
+            return new IllegalArgumentException("Output buffer is too small", e);
+        }
+        // a wrong key for a CBC field usually ends up here, the padding of the last block does not come out right
+        Crypto.cryptoError("Encryption block size was not padded correctly", e);
+        return new RuntimeException("Encryption block size was not padded correctly");
+    }
+}
@@ -3,18 +3,11 @@ package utils;
 import at.favre.lib.crypto.bcrypt.BCrypt;
 
 import javax.crypto.*;
-import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
-import javax.crypto.spec.SecretKeySpec;
-import java.io.UnsupportedEncodingException;
-import java.nio.charset.StandardCharsets;
-import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.KeySpec;
-import java.util.Base64;
 
 /**
  * Static utility class for abstracting hash algorithm implementation
@@ -88,79 +81,28 @@ public final class Crypto {
     }
 
     /**
-     * Encrypts a given input string using AES encryption with CBC mode and PKCS5 padding
+     * Encrypts a given input string using AES in GCM mode, in the versioned format CipherEngine describes
      * @param input The string to be encrypted
      * @param key   The encryption key used for AES encryption
      * @return A Base64-encoded string representing the encrypted data
      * @throws InvalidKeyException If the provided encryption key is invalid
+     * @see CipherEngine For several fields or rows at once
      */
     public static String encryptString(String input, byte[] key) throws InvalidKeyException {
-        try {
-            SecureRandom secureRandom = new SecureRandom();
-            byte[] iv = new byte[16];
-            secureRandom.nextBytes(iv);
-            IvParameterSpec ivspec = new IvParameterSpec(iv);
-
-            SecretKeySpec secretKeySpec = new SecretKeySpec(key, "AES");
-
-            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-            cipher.init(Cipher.ENCRYPT_MODE, secretKeySpec, ivspec);
-
-            byte[] cipherText = cipher.doFinal(input.getBytes(StandardCharsets.UTF_8));
-            byte[] encryptedData = new byte[iv.length + cipherText.length];
-            System.arraycopy(iv, 0, encryptedData, 0, iv.length);
-            System.arraycopy(cipherText, 0, encryptedData, iv.length, cipherText.length);
-
-            return Base64.getEncoder().encodeToString(encryptedData);
-        } catch(InvalidAlgorithmParameterException e) {
-            // This should never be raised because AES is hardcoded
-            cryptoError("Algorithm parameter of SecretKeySpec was invalid", e);
-            throw new RuntimeException("Algorithm parameter of SecretKeySpec was invalid");
-        } catch(InvalidKeyException e) {
-            cryptoError("Encryption key was invalid", e);
-            throw e;
-        } catch (NoSuchPaddingException | NoSuchAlgorithmException e) {
-            // Again, this one should rarely get raised
-            cryptoError("AES/CBC/PKCS5Padding is not available on this system", e);
-            throw new RuntimeException("AES/CBC/PKCS5Padding is not supported on this system");
-        } catch (IllegalBlockSizeException | BadPaddingException e) {
-            // Should never be raised
-            cryptoError("Encryption block size was not padded correctly", e);
-            throw new RuntimeException("Encryption block size was not padded correctly");
-        }
+        return CipherEngine.forKey(key).encrypt(input);
     }
 
-    public static String decryptString(String input, byte[] key) throws InvalidKeyException{
-        try {
-            byte[] encryptedData = Base64.getDecoder().decode(input);
-            byte[] iv = new byte[16];
-            System.arraycopy(encryptedData, 0, iv, 0, iv.length);
-            IvParameterSpec ivspec = new IvParameterSpec(iv);
-            SecretKeySpec secretKeySpec = new SecretKeySpec(key, "AES");
-
-            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-            cipher.init(Cipher.DECRYPT_MODE, secretKeySpec, ivspec);
-
-            byte[] cipherText = new byte[encryptedData.length - 16];
-            System.arraycopy(encryptedData, 16, cipherText, 0, cipherText.length);
-
-            byte[] decryptedText = cipher.doFinal(cipherText);
-            return new String(decryptedText, StandardCharsets.UTF_8);
-        }catch(InvalidAlgorithmParameterException e) {
-            // This should never be raised because AES is hardcoded
-            cryptoError("Algorithm parameter of SecretKeySpec was invalid", e);
-            throw new RuntimeException("Algorithm parameter of SecretKeySpec was invalid");
-        } catch(InvalidKeyException e) {
-            cryptoError("Encryption key was invalid", e);
-            throw e;
-        } catch (NoSuchPaddingException | NoSuchAlgorithmException e) {
-            // Again, this one should rarely get raised
-            cryptoError("AES/CBC/PKCS5Padding is not available on this system", e);
-            throw new RuntimeException("AES/CBC/PKCS5Padding is not supported on this system");
-        } catch (IllegalBlockSizeException | BadPaddingException e) {
-            // Should never be raised
-            cryptoError("Encryption block size was not padded correctly", e);
-            throw new RuntimeException("Encryption block size was not padded correctly");
-        }
+    /**
+     * Decrypts what encryptString returned, now or in the legacy AES/CBC format (unless -Dcrypto.strictReads=true)
+     * @param input The Base64-encoded encrypted data
+     * @param key   The encryption key the input was encrypted with
+     * @return The original string
+     * @throws InvalidKeyException If the provided encryption key is invalid, a CipherEngine.WrongKeyException if the
+     * data is AES-GCM encrypted with another key
+     * @throws IllegalArgumentException If the data is in no format CipherEngine reads
+     * @see CipherEngine For several fields or rows at once
+     */
+    public static String decryptString(String input, byte[] key) throws InvalidKeyException {
+        return CipherEngine.forKey(key).decrypt(input);
     }
 }
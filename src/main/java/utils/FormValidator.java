@@ -0,0 +1,205 @@
+package utils;
+
+import org.apache.commons.validator.routines.checkdigit.LuhnCheckDigit;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The rules for what people type into the registration, profile and payment forms, in one place. The patterns are
+ * compiled once, not on every String.matches call, and a whole form is checked in one pass that collects an error
+ * for every field that has one, so a form can show them all at once. check() does a single field, for validating as
+ * the user types.
+ * <br><br>
+ * Everything is static and thread-safe, so it can also check imported records on many threads.
+ */
+public final class FormValidator {
+    private FormValidator() {}
+
+    /**
+     * Every field the rules know, in the order forms show them
+     */
+    public enum Field {
+        FORENAME("Forename"),
+        SURNAME("Surname"),
+        EMAIL("Email"),
+        PASSWORD("Password"),
+        PASSWORD_CONFIRMATION("Password confirmation"),
+        HOUSE_NUMBER("House number"),
+        STREET_NAME("Street name"),
+        CITY_NAME("City name"),
+        POSTCODE("Postcode"),
+        CARD_NAME("Card name"),
+        CARD_HOLDER_NAME("Card holder name"),
+        CARD_NUMBER("Card number"),
+        EXPIRY_DATE("Expiry date"),
+        SECURITY_CODE("Security code");
+
+        private final String label;
+
+        Field(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * The errors of one form, at most one per field
+     */
+    public static final class Result {
+        private final Map<Field, String> errors = new EnumMap<>(Field.class);
+
+        private Result check(Field field, String value) {
+            String error = FormValidator.check(field, value);
+            if (error != null) {
+                errors.put(field, error);
+            }
+            return this;
+        }
+
+        public boolean isValid() {
+            return errors.isEmpty();
+        }
+
+        /**
+         * @return The error of the field, or null if it has none
+         */
+        public String errorFor(Field field) {
+            return errors.get(field);
+        }
+
+        /**
+         * @return field -> error, in form order
+         */
+        public Map<Field, String> getErrors() {
+            return Collections.unmodifiableMap(errors);
+        }
+
+        /**
+         * @return Every error, one per line
+         */
+        @Override
+        public String toString() {
+            return String.join("\n", errors.values());
+        }
+    }
+
+    private static final Pattern EMAIL = Pattern.compile(
+            "^[a-zA-Z0-9_+&*-]+(?:\\.[a-zA-Z0-9_+&*-]+)*@(?:[a-zA-Z0-9-]+\\.)+[a-zA-Z]{2,7}$");
+    private static final Pattern POSTCODE = Pattern.compile("^([a-zA-Z0-9]{6})|([a-zA-Z0-9]{2,3} [a-zA-Z0-9]{3})$");
+    // a number, a lower and an upper case letter and one of @#$%^&+=!(), 8 to 20 characters in all
+    private static final Pattern PASSWORD = Pattern.compile(
+            "^(?=.*[0-9])(?=.*[a-z])(?=.*[A-Z])(?=.*[@#$%^&+=!()]).{8,20}$");
+    private static final Pattern EXPIRY_DATE = Pattern.compile("^\\d{4}-\\d{2}-\\d{2}$"); // 2024-01-01
+    private static final DateTimeFormatter EXPIRY_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    /**
+     * One field on its own. The password confirmation has to be compared with the password, use
+     * checkPasswordConfirmation() for it, here it only has to be filled in.
+     * @param field What the value is
+     * @param value What was typed, null counts as empty
+     * @return What is wrong with it, or null if nothing is
+     */
+    public static String check(Field field, String value) {
+        if (value == null || value.isEmpty()) {
+            return field.getLabel() + " is a compulsory field";
+        }
+        return switch (field) {
+            case EMAIL -> EMAIL.matcher(value).matches() ? null : "Invalid email";
+            case POSTCODE -> POSTCODE.matcher(value).matches() ? null : "Invalid postcode";
+            case PASSWORD -> isPassword(value) ? null : "Password must be 8 to 20 characters long and contain at least "
+                    + "one number, one uppercase letter, one lowercase letter and one of @#$%^&+=!()";
+            case CARD_NUMBER -> LuhnCheckDigit.LUHN_CHECK_DIGIT.isValid(value) ? null
+                    : "Card number invalid, failed Luhn check";
+            case EXPIRY_DATE -> checkExpiryDate(value);
+            case SECURITY_CODE -> value.length() == 3 || value.length() == 4 ? null
+                    : "Security code was an invalid length";
+            default -> null;
+        };
+    }
+
+    /**
+     * @return What is wrong with the confirmation, or null if it matches the password
+     */
+    public static String checkPasswordConfirmation(String password, String confirmation) {
+        String error = check(Field.PASSWORD_CONFIRMATION, confirmation);
+        if (error == null && !confirmation.equals(password)) {
+            error = "Passwords do not match";
+        }
+        return error;
+    }
+
+    public static Result personalDetails(String forename, String surname, String email, String houseNumber,
+                                         String streetName, String cityName, String postCode) {
+        return new Result()
+                .check(Field.FORENAME, forename)
+                .check(Field.SURNAME, surname)
+                .check(Field.EMAIL, email)
+                .check(Field.HOUSE_NUMBER, houseNumber)
+                .check(Field.STREET_NAME, streetName)
+                .check(Field.CITY_NAME, cityName)
+                .check(Field.POSTCODE, postCode);
+    }
+
+    /**
+     * The personal details with a password, as the Register form asks for them
+     */
+    public static Result registration(String forename, String surname, String email, String password,
+                                      String passwordConfirmation, String houseNumber, String streetName,
+                                      String cityName, String postCode) {
+        Result result = personalDetails(forename, surname, email, houseNumber, streetName, cityName, postCode)
+                .check(Field.PASSWORD, password);
+        String confirmation = checkPasswordConfirmation(password, passwordConfirmation);
+        if (confirmation != null) {
+            result.errors.put(Field.PASSWORD_CONFIRMATION, confirmation);
+        }
+        return result;
+    }
+
+    /**
+     * @param expiryDate yyyy-MM-dd
+     */
+    public static Result bankDetails(String cardName, String cardNumber, String cardHolderName, String expiryDate,
+                                     String securityCode) {
+        return new Result()
+                .check(Field.CARD_NAME, cardName)
+                .check(Field.CARD_HOLDER_NAME, cardHolderName)
+                .check(Field.CARD_NUMBER, cardNumber)
+                .check(Field.EXPIRY_DATE, expiryDate)
+                .check(Field.SECURITY_CODE, securityCode);
+    }
+
+    public static boolean isEmail(String email) {
+        return email != null && EMAIL.matcher(email).matches();
+    }
+
+    public static boolean isPostcode(String postcode) {
+        return postcode != null && POSTCODE.matcher(postcode).matches();
+    }
+
+    public static boolean isPassword(String password) {
+        return password != null && PASSWORD.matcher(password).matches();
+    }
+
+    private static String checkExpiryDate(String expiryDate) {
+        if (!EXPIRY_DATE.matcher(expiryDate).matches()) {
+            return "Expiry date was an invalid format";
+        }
+        LocalDate date;
+        try {
+            date = LocalDate.parse(expiryDate, EXPIRY_FORMAT);
+        } catch (DateTimeParseException e) {
+            // the right shape but no such day, e.g. 2024-13-01
+            return "Expiry date was an invalid format";
+        }
+        return date.isBefore(LocalDate.now()) ? "Card is expired" : null;
+    }
+}
@@ -73,6 +73,29 @@ public final class GUI {
         return panel;
     }
 
+    /**
+     * A placeholder to show in place of content that is still being loaded in the background
+     * @param message What is being loaded, e.g. "Loading products..."
+     * @return A JPanel with the message above an indeterminate progress bar
+     */
+    public static JPanel createLoadingPlaceholder(String message) {
+        JPanel panel = new JPanel();
+        panel.setLayout(new GridBagLayout());
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        gbc.insets = new Insets(6, 6, 6, 6);
+
+        panel.add(new JLabel(message), gbc);
+
+        gbc.gridy++;
+        JProgressBar progress = new JProgressBar();
+        progress.setIndeterminate(true);
+        panel.add(progress, gbc);
+
+        return panel;
+    }
+
     public static void setEnabledRecursively(Component panel, boolean status) {
         panel.setEnabled(status);
         for (Component cp : ((Container)panel).getComponents()) {
@@ -0,0 +1,111 @@
+-- The schema of the kiosk, as documented in README.md, for the embedded profile (H2 in MySQL mode).
+-- Every statement is safe to run against an existing schema. Foreign keys are left unnamed because H2 wants
+-- constraint names to be unique across the whole schema, unlike MySQL.
+
+CREATE TABLE IF NOT EXISTS `Address` (
+    `houseNumber` varchar(20) NOT NULL,
+    `streetName` varchar(45) NOT NULL,
+    `cityName` varchar(45) NOT NULL,
+    `postCode` varchar(45) NOT NULL,
+    PRIMARY KEY (`houseNumber`,`postCode`)
+);
+
+CREATE TABLE IF NOT EXISTS `BankDetails` (
+    `paymentId` int NOT NULL AUTO_INCREMENT,
+    `cardName` varchar(45) NOT NULL,
+    `cardNumber` text NOT NULL,
+    `expiryDate` date NOT NULL,
+    `securityCode` text NOT NULL,
+    `cardHolderName` varchar(45) NOT NULL,
+    PRIMARY KEY (`paymentId`)
+);
+
+CREATE TABLE IF NOT EXISTS `Person` (
+    `PersonId` int NOT NULL AUTO_INCREMENT,
+    `forename` varchar(45) NOT NULL,
+    `surname` varchar(45) NOT NULL,
+    `email` varchar(60) NOT NULL,
+    `password` varchar(255) NOT NULL,
+    `houseName` varchar(20) NOT NULL,
+    `postCode` varchar(45) NOT NULL,
+    `paymentId` int DEFAULT NULL,
+    PRIMARY KEY (`PersonId`),
+    FOREIGN KEY (`houseName`, `postCode`) REFERENCES `Address` (`houseNumber`, `postCode`),
+    FOREIGN KEY (`paymentId`) REFERENCES `BankDetails` (`paymentId`) ON DELETE SET NULL ON UPDATE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS `person_email_idx` ON `Person` (`email`);
+
+CREATE TABLE IF NOT EXISTS `Role` (
+    `personId` int NOT NULL,
+    `role` varchar(15) NOT NULL,
+    PRIMARY KEY (`personId`,`role`),
+    FOREIGN KEY (`personId`) REFERENCES `Person` (`PersonId`) ON DELETE CASCADE ON UPDATE CASCADE
+);
+
+CREATE TABLE IF NOT EXISTS `Product` (
+    `productCode` varchar(20) NOT NULL,
+    `name` varchar(45) NOT NULL,
+    `stockLevel` int NOT NULL,
+    `price` decimal(10,2) NOT NULL,
+    PRIMARY KEY (`productCode`)
+);
+
+CREATE TABLE IF NOT EXISTS `Order` (
+    `orderId` int NOT NULL AUTO_INCREMENT,
+    `personId` int NOT NULL,
+    `date` datetime NOT NULL,
+    `status` varchar(20) NOT NULL,
+    PRIMARY KEY (`orderId`),
+    FOREIGN KEY (`personId`) REFERENCES `Person` (`PersonId`)
+);
+
+CREATE INDEX IF NOT EXISTS `order_status_date_idx` ON `Order` (`status`, `date`);
+
+CREATE TABLE IF NOT EXISTS `OrderLine` (
+    `orderId` int NOT NULL,
+    `productCode` varchar(20) NOT NULL,
+    `quantity` int NOT NULL,
+    PRIMARY KEY (`orderId`,`productCode`),
+    FOREIGN KEY (`orderId`) REFERENCES `Order` (`orderId`) ON DELETE CASCADE,
+    FOREIGN KEY (`productCode`) REFERENCES `Product` (`productCode`) ON DELETE CASCADE
+);
+
+CREATE TABLE IF NOT EXISTS `BoxedSetContent` (
+    `boxSetProductCode` varchar(20) NOT NULL,
+    `contentProductCode` varchar(20) NOT NULL,
+    `quantity` int NOT NULL DEFAULT '0',
+    PRIMARY KEY (`boxSetProductCode`,`contentProductCode`),
+    FOREIGN KEY (`boxSetProductCode`) REFERENCES `Product` (`productCode`) ON DELETE CASCADE,
+    FOREIGN KEY (`contentProductCode`) REFERENCES `Product` (`productCode`) ON DELETE CASCADE
+);
+
+CREATE TABLE IF NOT EXISTS `Component` (
+    `productCode` varchar(20) NOT NULL,
+    `brand` varchar(45) NOT NULL,
+    `era` varchar(8) NOT NULL,
+    `gauge` varchar(45) NOT NULL,
+    PRIMARY KEY (`productCode`),
+    FOREIGN KEY (`productCode`) REFERENCES `Product` (`productCode`) ON DELETE CASCADE ON UPDATE CASCADE
+);
+
+CREATE TABLE IF NOT EXISTS `Locomotive` (
+    `productCode` varchar(20) NOT NULL,
+    `priceBracket` varchar(30) NOT NULL,
+    PRIMARY KEY (`productCode`),
+    FOREIGN KEY (`productCode`) REFERENCES `Component` (`productCode`) ON DELETE CASCADE ON UPDATE CASCADE
+);
+
+CREATE TABLE IF NOT EXISTS `Track` (
+    `productCode` varchar(20) NOT NULL,
+    `curvature` varchar(45) NOT NULL,
+    PRIMARY KEY (`productCode`),
+    FOREIGN KEY (`productCode`) REFERENCES `Component` (`productCode`) ON DELETE CASCADE
+);
+
+CREATE TABLE IF NOT EXISTS `Controller` (
+    `productCode` varchar(20) NOT NULL,
+    `controlType` varchar(45) NOT NULL,
+    PRIMARY KEY (`productCode`),
+    FOREIGN KEY (`productCode`) REFERENCES `Component` (`productCode`) ON DELETE CASCADE ON UPDATE CASCADE
+);